@@ -1,12 +1,21 @@
 package edu.montana.csci.csci468.bytecode;
 
+import edu.montana.csci.csci468.parser.CatscriptType;
+import edu.montana.csci.csci468.parser.expressions.FunctionCallExpression;
+import edu.montana.csci.csci468.parser.expressions.IdentifierExpression;
+import edu.montana.csci.csci468.parser.statements.AssignmentStatement;
 import edu.montana.csci.csci468.parser.statements.CatScriptProgram;
+import edu.montana.csci.csci468.parser.statements.FunctionDefinitionStatement;
 import org.objectweb.asm.*;
 import org.objectweb.asm.util.CheckClassAdapter;
 import org.objectweb.asm.util.TraceClassVisitor;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -33,8 +42,8 @@ public class ByteCodeGenerator {
         classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
         internalClassName = "edu/montana/csci/csci466/bytecode/CatScriptProgram" + classInteger.incrementAndGet();
         dotClassName = internalClassName.replace('/', '.');
-        makeClass(internalClassName);
-        makeConstructor();
+        makeClass(internalClassName, CatScriptProgram.class);
+        makeConstructor(CatScriptProgram.class);
 
         currentMethod = makeMethod(Opcodes.ACC_PUBLIC, "execute", "()V");
         program.compile(this);
@@ -46,15 +55,104 @@ public class ByteCodeGenerator {
         return loadClass(dotClassName, classBytes);
     }
 
-    private void makeClass(String className) {
+    // Compiles a function the tiered interpreter found hot, along with every function it calls,
+    // into a class of their own, see FunctionDefinitionStatement.invoke.  Returns null when one
+    // of them needs something only the interpreter has, such as a global, or is too big for the JVM
+    public CompiledFunction compileFunction(FunctionDefinitionStatement function) {
+        List<FunctionDefinitionStatement> functions = functionsCalledFrom(function);
+        if (functions == null) {
+            return null;
+        }
+        try {
+            methodStack = new Stack<>();
+            classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+            internalClassName = "edu/montana/csci/csci466/bytecode/CompiledFunction" + classInteger.incrementAndGet();
+            dotClassName = internalClassName.replace('/', '.');
+            makeClass(internalClassName, CompiledFunction.class);
+            makeConstructor(CompiledFunction.class);
+            for (FunctionDefinitionStatement calledFunction : functions) {
+                calledFunction.compile(this);
+            }
+            makeInvoke(function);
+            classWriter.visitEnd();
+            CompiledFunction compiled = (CompiledFunction) loadClass(dotClassName, classWriter.toByteArray());
+            compiled.setProgram(program);
+            return compiled;
+        } catch (MethodTooLargeException | ClassTooLargeException e) {
+            // the JVM limits how big a method or class can be, so such a function is interpreted
+            return null;
+        }
+    }
+
+    // the function and the functions it calls, directly or not, or null if any of them refers to
+    // a global, since globals live in the interpreter's runtime
+    private List<FunctionDefinitionStatement> functionsCalledFrom(FunctionDefinitionStatement function) {
+        List<FunctionDefinitionStatement> functions = new ArrayList<>();
+        Set<FunctionDefinitionStatement> found = new HashSet<>();
+        functions.add(function);
+        found.add(function);
+        boolean[] compilable = {true};
+        for (int i = 0; i < functions.size() && compilable[0]; i++) {
+            functions.get(i).walk(element -> {
+                if (element instanceof IdentifierExpression && ((IdentifierExpression) element).getDepth() == 0 ||
+                        element instanceof AssignmentStatement && ((AssignmentStatement) element).getDepth() == 0) {
+                    compilable[0] = false;
+                } else if (element instanceof FunctionCallExpression) {
+                    FunctionDefinitionStatement called = ((FunctionCallExpression) element).getFunction();
+                    // a body that has not been parsed has not been validated either
+                    if (called == null || !called.isBodyParsed()) {
+                        compilable[0] = false;
+                    } else if (found.add(called)) {
+                        functions.add(called);
+                    }
+                }
+            });
+        }
+        return compilable[0] ? functions : null;
+    }
+
+    // invoke(Object[]) unboxes the arguments the way the function's descriptor wants them
+    private void makeInvoke(FunctionDefinitionStatement function) {
+        try (MethodGenerator invoke = makeMethod(Opcodes.ACC_PUBLIC, "invoke", "([Ljava/lang/Object;)Ljava/lang/Object;")) {
+            invoke.addVarInstruction(Opcodes.ALOAD, 0);
+            for (int i = 0; i < function.getParameterCount(); i++) {
+                CatscriptType parameterType = function.getParameterType(i);
+                invoke.addVarInstruction(Opcodes.ALOAD, 1);
+                invoke.pushConstantOntoStack(i);
+                invoke.addInstruction(Opcodes.AALOAD);
+                invoke.addTypeInstruction(Opcodes.CHECKCAST, internalNameFor(parameterType.getJavaType()));
+                if (parameterType.equals(CatscriptType.INT)) {
+                    invoke.addMethodInstruction(Opcodes.INVOKEVIRTUAL, internalNameFor(Integer.class),
+                            "intValue", "()I");
+                } else if (parameterType.equals(CatscriptType.BOOLEAN)) {
+                    invoke.addMethodInstruction(Opcodes.INVOKEVIRTUAL, internalNameFor(Boolean.class),
+                            "booleanValue", "()Z");
+                }
+            }
+            invoke.addMethodInstruction(Opcodes.INVOKEVIRTUAL, internalClassName, function.getName(), function.getDescriptor());
+            CatscriptType type = function.getType();
+            if (type.equals(CatscriptType.VOID)) {
+                invoke.addInstruction(Opcodes.ACONST_NULL);
+            } else if (type.equals(CatscriptType.INT)) {
+                invoke.addMethodInstruction(Opcodes.INVOKESTATIC, internalNameFor(Integer.class),
+                        "valueOf", "(I)Ljava/lang/Integer;");
+            } else if (type.equals(CatscriptType.BOOLEAN)) {
+                invoke.addMethodInstruction(Opcodes.INVOKESTATIC, internalNameFor(Boolean.class),
+                        "valueOf", "(Z)Ljava/lang/Boolean;");
+            }
+            invoke.addInstruction(Opcodes.ARETURN);
+        }
+    }
+
+    private void makeClass(String className, Class<?> superClass) {
         classWriter.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC,
-                className, null, internalNameFor(CatScriptProgram.class) , null);
+                className, null, internalNameFor(superClass) , null);
     }
 
-    private void makeConstructor() {
+    private void makeConstructor(Class<?> superClass) {
         try (MethodGenerator constructor = makeMethod(Opcodes.ACC_PUBLIC, "<init>", "()V")) {
             constructor.addVarInstruction(Opcodes.ALOAD, 0);
-            constructor.addMethodInstruction(Opcodes.INVOKESPECIAL, internalNameFor(CatScriptProgram.class), "<init>", "()V");
+            constructor.addMethodInstruction(Opcodes.INVOKESPECIAL, internalNameFor(superClass), "<init>", "()V");
             constructor.addInstruction(Opcodes.RETURN);
         }
     }
@@ -106,12 +204,12 @@ public class ByteCodeGenerator {
         return currentMethod.nextLocalStorageSlot();
     }
 
-    public Integer createLocalStorageSlotFor(String name){
-        return currentMethod.createLocalStorageSlotFor(name);
+    public Integer createLocalStorageSlotFor(int depth, int slot){
+        return currentMethod.createLocalStorageSlotFor(depth, slot);
     }
 
-    public Integer resolveLocalStorageSlotFor(String name) {
-        return currentMethod.resolveLocalStorageSlotFor(name);
+    public Integer resolveLocalStorageSlotFor(int depth, int slot) {
+        return currentMethod.resolveLocalStorageSlotFor(depth, slot);
     }
 
     public String getProgramInternalName() {
@@ -0,0 +1,28 @@
+package edu.montana.csci.csci468.bytecode;
+
+import edu.montana.csci.csci468.parser.statements.CatScriptProgram;
+
+// The base of the classes ByteCodeGenerator.compileFunction makes for the tiered interpreter.
+// A hot function and the functions it calls are methods of the class, and what they print goes
+// to the program that is being interpreted
+public abstract class CompiledFunction extends CatScriptProgram {
+
+    private CatScriptProgram program;
+
+    void setProgram(CatScriptProgram program) {
+        this.program = program;
+    }
+
+    public CatScriptProgram getInterpretedProgram() {
+        return program;
+    }
+
+    @Override
+    public void print(Object v) {
+        program.print(v);
+    }
+
+    // calls the function with the arguments the interpreter put at the start of a frame, see
+    // FunctionDefinitionStatement.newFrame, and boxes what it returns
+    public abstract Object invoke(Object[] frame);
+}
@@ -2,28 +2,36 @@ package edu.montana.csci.csci468.bytecode;
 
 import org.objectweb.asm.*;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class MethodGenerator implements AutoCloseable {
 
     private AtomicInteger localStorageSlot = new AtomicInteger();
-    Map<String, Integer> localStorageMap = new HashMap<>();
+    // the local storage slot of each variable by the depth and slot validation gave it
+    int[][] localStorageSlots = new int[4][];
     private final MethodVisitor delegate;
 
     public Integer nextLocalStorageSlot() {
         return localStorageSlot.incrementAndGet();
     }
 
-    public Integer createLocalStorageSlotFor(String name){
+    public Integer createLocalStorageSlotFor(int depth, int slot){
         int i = nextLocalStorageSlot();
-        localStorageMap.put(name, i);
+        if (depth >= localStorageSlots.length) {
+            localStorageSlots = Arrays.copyOf(localStorageSlots, depth * 2);
+        }
+        int[] slots = localStorageSlots[depth] == null ? new int[4] : localStorageSlots[depth];
+        if (slot >= slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(slot + 1, slots.length * 2));
+        }
+        slots[slot] = i;
+        localStorageSlots[depth] = slots;
         return i;
     }
 
-    public Integer resolveLocalStorageSlotFor(String name) {
-        return localStorageMap.get(name);
+    public Integer resolveLocalStorageSlotFor(int depth, int slot) {
+        return localStorageSlots[depth][slot];
     }
 
     public MethodGenerator(MethodVisitor delgate) {
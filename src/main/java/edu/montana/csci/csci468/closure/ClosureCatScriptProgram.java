@@ -0,0 +1,33 @@
+package edu.montana.csci.csci468.closure;
+
+import edu.montana.csci.csci468.eval.CatscriptRuntime;
+import edu.montana.csci.csci468.parser.statements.CatScriptProgram;
+
+// A program ClosureCompiler has compiled, which runs its compiled code instead of a tree
+public class ClosureCatScriptProgram extends CatScriptProgram {
+
+    private ClosureCompiler.StatementCode statements;
+    private ClosureCompiler.ValueCode expression;
+
+    void setStatementCode(ClosureCompiler.StatementCode statements) {
+        this.statements = statements;
+    }
+
+    void setExpressionCode(ClosureCompiler.ValueCode expression) {
+        this.expression = expression;
+    }
+
+    @Override
+    public void execute(CatscriptRuntime runtime) {
+        if (expression != null) {
+            print(expression.evaluate(runtime));
+        } else {
+            statements.execute(runtime);
+        }
+    }
+
+    // the value of a program compiled from an expression
+    public Object evaluate(CatscriptRuntime runtime) {
+        return expression.evaluate(runtime);
+    }
+}
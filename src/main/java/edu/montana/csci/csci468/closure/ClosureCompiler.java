@@ -0,0 +1,723 @@
+package edu.montana.csci.csci468.closure;
+
+import edu.montana.csci.csci468.eval.CatscriptRuntime;
+import edu.montana.csci.csci468.parser.CatscriptType;
+import edu.montana.csci.csci468.parser.ParseElement;
+import edu.montana.csci.csci468.parser.expressions.*;
+import edu.montana.csci.csci468.parser.statements.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.UnaryOperator;
+
+// Turns a verified program into a tree of lambdas, each specialized to the types and operator
+// of the node it comes from, so running it makes none of the checks the tree walking
+// interpreter makes on every evaluation.  Expressions the verifier typed as ints or booleans
+// compile to code producing unboxed values, and are only boxed where something stores or
+// prints them, so values come out the same as evaluating the tree
+public class ClosureCompiler {
+
+    // what a statement returns when execution goes on to the next one, anything else is the
+    // value of a return statement
+    static final Object NEXT = new Object();
+
+    interface ValueCode {
+        Object evaluate(CatscriptRuntime runtime);
+    }
+
+    interface IntCode {
+        int evaluate(CatscriptRuntime runtime);
+    }
+
+    interface BooleanCode {
+        boolean evaluate(CatscriptRuntime runtime);
+    }
+
+    interface StatementCode {
+        Object execute(CatscriptRuntime runtime);
+    }
+
+    // a function's body is compiled after any calls to it, so recursive calls can link to it
+    static final class CompiledFunction {
+        int frameSize;
+        StatementCode body;
+    }
+
+    private final CatScriptProgram program;
+    private ClosureCatScriptProgram compiled;
+    private final Map<FunctionDefinitionStatement, CompiledFunction> functions = new IdentityHashMap<>();
+    private final Deque<FunctionDefinitionStatement> uncompiledFunctions = new ArrayDeque<>();
+
+    public ClosureCompiler(CatScriptProgram program) {
+        this.program = program;
+    }
+
+    public ClosureCatScriptProgram compile() {
+        compiled = new ClosureCatScriptProgram();
+        if (program.isExpression()) {
+            compiled.setExpressionCode(valueCode(program.getExpression()));
+        } else {
+            compiled.setStatementCode(block(program.getStatements()));
+        }
+        while (!uncompiledFunctions.isEmpty()) {
+            FunctionDefinitionStatement definition = uncompiledFunctions.pop();
+            CompiledFunction function = functions.get(definition);
+            // getting a lazy body parses and validates it, which sizes the frame
+            function.body = block(definition.getBody());
+            function.frameSize = definition.getFrameSize();
+        }
+        return compiled;
+    }
+
+    //==============================================================
+    // Statements
+    //==============================================================
+
+    private StatementCode block(List<Statement> statements) {
+        List<StatementCode> codes = new ArrayList<>(statements.size());
+        for (Statement statement : statements) {
+            // calls link to their functions directly, so definitions have nothing to run
+            if (!(statement instanceof FunctionDefinitionStatement)) {
+                codes.add(statementCode(statement));
+            }
+        }
+        if (codes.isEmpty()) {
+            return runtime -> NEXT;
+        } else if (codes.size() == 1) {
+            return codes.get(0);
+        }
+        StatementCode[] array = codes.toArray(new StatementCode[0]);
+        return runtime -> {
+            for (StatementCode code : array) {
+                Object result = code.execute(runtime);
+                if (result != NEXT) {
+                    return result;
+                }
+            }
+            return NEXT;
+        };
+    }
+
+    private StatementCode statementCode(Statement statement) {
+        if (statement.isTooDeepToRecurse()) {
+            return flatStatementCode(statement);
+        } else if (statement instanceof PrintStatement) {
+            ValueCode value = valueCode(((PrintStatement) statement).getExpression());
+            ClosureCatScriptProgram target = compiled;
+            return runtime -> {
+                target.print(value.evaluate(runtime));
+                return NEXT;
+            };
+        } else if (statement instanceof VariableStatement) {
+            VariableStatement variable = (VariableStatement) statement;
+            return store(variable.getDepth(), variable.getSlot(), valueCode(variable.getExpression()));
+        } else if (statement instanceof AssignmentStatement) {
+            AssignmentStatement assignment = (AssignmentStatement) statement;
+            return store(assignment.getDepth(), assignment.getSlot(), valueCode(assignment.getExpression()));
+        } else if (statement instanceof FunctionCallStatement) {
+            ValueCode call = valueCode(((FunctionCallStatement) statement).getExpression());
+            return runtime -> {
+                call.evaluate(runtime);
+                return NEXT;
+            };
+        } else if (statement instanceof ReturnStatement) {
+            Expression expression = ((ReturnStatement) statement).getExpression();
+            if (expression == null) {
+                return runtime -> null;
+            }
+            ValueCode value = valueCode(expression);
+            return value::evaluate;
+        } else if (statement instanceof IfStatement) {
+            return ifCode((IfStatement) statement);
+        } else if (statement instanceof ForStatement) {
+            return forCode((ForStatement) statement);
+        }
+        throw new IllegalStateException("Cannot compile " + statement.getClass().getName());
+    }
+
+    private StatementCode store(int depth, int slot, ValueCode value) {
+        if (depth == 0) {
+            return runtime -> {
+                runtime.setGlobal(slot, value.evaluate(runtime));
+                return NEXT;
+            };
+        }
+        return runtime -> {
+            runtime.setLocal(depth, slot, value.evaluate(runtime));
+            return NEXT;
+        };
+    }
+
+    private StatementCode ifCode(IfStatement ifStatement) {
+        BooleanCode condition = booleanCode(ifStatement.getExpression());
+        StatementCode trueBlock = block(ifStatement.getTrueStatements());
+        StatementCode elseBlock = block(ifStatement.getElseStatements());
+        int trueFrameSize = ifStatement.getTrueFrameSize();
+        int elseFrameSize = ifStatement.getElseFrameSize();
+        return runtime -> {
+            Object result;
+            if (condition.evaluate(runtime)) {
+                runtime.pushScope(trueFrameSize);
+                result = trueBlock.execute(runtime);
+            } else {
+                runtime.pushScope(elseFrameSize);
+                result = elseBlock.execute(runtime);
+            }
+            runtime.popScope();
+            return result;
+        };
+    }
+
+    private StatementCode forCode(ForStatement forStatement) {
+        ValueCode values = valueCode(forStatement.getExpression());
+        StatementCode body = block(forStatement.getBody());
+        int depth = forStatement.getDepth();
+        int slot = forStatement.getSlot();
+        int frameSize = forStatement.getFrameSize();
+        return runtime -> {
+            List<?> list = (List<?>) values.evaluate(runtime);
+            runtime.pushScope(frameSize);
+            for (Object value : list) {
+                runtime.setLocal(depth, slot, value);
+                Object result = body.execute(runtime);
+                if (result != NEXT) {
+                    runtime.popScope();
+                    return result;
+                }
+            }
+            runtime.popScope();
+            return NEXT;
+        };
+    }
+
+    //==============================================================
+    // Expressions
+    //==============================================================
+
+    ValueCode valueCode(Expression expression) {
+        if (expression.isTooDeepToRecurse()) {
+            return flatValueCode(expression);
+        } else if (expression instanceof ParenthesizedExpression) {
+            return valueCode(innermost((ParenthesizedExpression) expression));
+        } else if (expression instanceof IdentifierExpression) {
+            IdentifierExpression identifier = (IdentifierExpression) expression;
+            int depth = identifier.getDepth();
+            int slot = identifier.getSlot();
+            if (depth == 0) {
+                return runtime -> runtime.getGlobal(slot);
+            }
+            return runtime -> runtime.getLocal(depth, slot);
+        } else if (expression instanceof FunctionCallExpression) {
+            return callCode((FunctionCallExpression) expression);
+        } else if (expression instanceof StringLiteralExpression) {
+            String value = ((StringLiteralExpression) expression).getValue();
+            return runtime -> value;
+        } else if (expression instanceof NullLiteralExpression) {
+            return runtime -> null;
+        } else if (expression instanceof ListLiteralExpression) {
+            ValueCode[] values = valueCodes(((ListLiteralExpression) expression).getValues());
+            return runtime -> {
+                List<Object> list = new ArrayList<>();
+                for (ValueCode value : values) {
+                    list.add(value.evaluate(runtime));
+                }
+                return list;
+            };
+        } else if (expression instanceof AdditiveExpression && expression.getType() == CatscriptType.STRING) {
+            return concatenation((AdditiveExpression) expression);
+        } else if (expression instanceof AdditiveExpression || expression instanceof FactorExpression ||
+                expression instanceof IntegerLiteralExpression ||
+                (expression instanceof UnaryExpression && ((UnaryExpression) expression).isMinus())) {
+            IntCode value = intCode(expression);
+            return runtime -> value.evaluate(runtime);
+        } else if (expression instanceof ComparisonExpression || expression instanceof EqualityExpression ||
+                expression instanceof BooleanLiteralExpression || expression instanceof UnaryExpression) {
+            BooleanCode value = booleanCode(expression);
+            return runtime -> value.evaluate(runtime);
+        }
+        throw new IllegalStateException("Cannot compile " + expression.getClass().getName());
+    }
+
+    IntCode intCode(Expression expression) {
+        if (expression.isTooDeepToRecurse()) {
+            ValueCode value = flatValueCode(expression);
+            return runtime -> (Integer) value.evaluate(runtime);
+        } else if (expression instanceof ParenthesizedExpression) {
+            return intCode(innermost((ParenthesizedExpression) expression));
+        } else if (expression instanceof IntegerLiteralExpression) {
+            int value = ((IntegerLiteralExpression) expression).getValue();
+            return runtime -> value;
+        } else if (expression instanceof AdditiveExpression && expression.getType() == CatscriptType.INT) {
+            return sum((AdditiveExpression) expression);
+        } else if (expression instanceof FactorExpression) {
+            FactorExpression factor = (FactorExpression) expression;
+            IntCode lhs = intCode(factor.getLeftHandSide());
+            IntCode rhs = intCode(factor.getRightHandSide());
+            if (factor.isMultiply()) {
+                return runtime -> lhs.evaluate(runtime) * rhs.evaluate(runtime);
+            }
+            return runtime -> lhs.evaluate(runtime) / rhs.evaluate(runtime);
+        } else if (expression instanceof UnaryExpression && ((UnaryExpression) expression).isMinus()) {
+            // a run of minuses cancels out in pairs
+            UnaryExpression unary = (UnaryExpression) expression;
+            boolean negate = false;
+            Expression operand = unary;
+            while (operand instanceof UnaryExpression) {
+                negate = !negate;
+                operand = ((UnaryExpression) operand).getRightHandSide();
+            }
+            IntCode value = intCode(operand);
+            return negate ? runtime -> -value.evaluate(runtime) : value;
+        }
+        ValueCode value = valueCode(expression);
+        return runtime -> (Integer) value.evaluate(runtime);
+    }
+
+    BooleanCode booleanCode(Expression expression) {
+        if (expression.isTooDeepToRecurse()) {
+            ValueCode value = flatValueCode(expression);
+            return runtime -> (Boolean) value.evaluate(runtime);
+        } else if (expression instanceof ParenthesizedExpression) {
+            return booleanCode(innermost((ParenthesizedExpression) expression));
+        } else if (expression instanceof BooleanLiteralExpression) {
+            boolean value = ((BooleanLiteralExpression) expression).getValue();
+            return runtime -> value;
+        } else if (expression instanceof ComparisonExpression) {
+            ComparisonExpression comparison = (ComparisonExpression) expression;
+            IntCode lhs = intCode(comparison.getLeftHandSide());
+            IntCode rhs = intCode(comparison.getRightHandSide());
+            if (comparison.isGreater()) {
+                return runtime -> lhs.evaluate(runtime) > rhs.evaluate(runtime);
+            } else if (comparison.isLessThan()) {
+                return runtime -> lhs.evaluate(runtime) < rhs.evaluate(runtime);
+            } else if (comparison.isLessThanOrEqual()) {
+                return runtime -> lhs.evaluate(runtime) <= rhs.evaluate(runtime);
+            }
+            return runtime -> lhs.evaluate(runtime) >= rhs.evaluate(runtime);
+        } else if (expression instanceof EqualityExpression) {
+            // the values are compared as objects, the way the tree walking interpreter does
+            EqualityExpression equality = (EqualityExpression) expression;
+            ValueCode lhs = valueCode(equality.getLeftHandSide());
+            ValueCode rhs = valueCode(equality.getRightHandSide());
+            if (equality.isEqual()) {
+                return runtime -> lhs.evaluate(runtime) == rhs.evaluate(runtime);
+            }
+            return runtime -> lhs.evaluate(runtime) != rhs.evaluate(runtime);
+        } else if (expression instanceof UnaryExpression && ((UnaryExpression) expression).isNot()) {
+            UnaryExpression unary = (UnaryExpression) expression;
+            boolean not = false;
+            Expression operand = unary;
+            while (operand instanceof UnaryExpression) {
+                not = !not;
+                operand = ((UnaryExpression) operand).getRightHandSide();
+            }
+            BooleanCode value = booleanCode(operand);
+            return not ? runtime -> !value.evaluate(runtime) : value;
+        }
+        ValueCode value = valueCode(expression);
+        return runtime -> (Boolean) value.evaluate(runtime);
+    }
+
+    // Long chains of additions nest down their left hand side, so the terms are gathered from
+    // the spine and added in a loop rather than through one lambda per addition
+    private IntCode sum(AdditiveExpression additive) {
+        List<IntCode> terms = new ArrayList<>();
+        Expression expression = additive;
+        while (expression instanceof AdditiveExpression && expression.getType() == CatscriptType.INT) {
+            AdditiveExpression addition = (AdditiveExpression) expression;
+            IntCode term = intCode(addition.getRightHandSide());
+            terms.add(addition.isAdd() ? term : runtime -> -term.evaluate(runtime));
+            expression = addition.getLeftHandSide();
+        }
+        terms.add(intCode(expression));
+        Collections.reverse(terms);
+        if (terms.size() == 2) {
+            IntCode lhs = terms.get(0);
+            IntCode rhs = terms.get(1);
+            return runtime -> lhs.evaluate(runtime) + rhs.evaluate(runtime);
+        }
+        IntCode[] array = terms.toArray(new IntCode[0]);
+        return runtime -> {
+            int total = 0;
+            for (IntCode term : array) {
+                total += term.evaluate(runtime);
+            }
+            return total;
+        };
+    }
+
+    private ValueCode concatenation(AdditiveExpression additive) {
+        List<ValueCode> terms = new ArrayList<>();
+        Expression expression = additive;
+        while (expression instanceof AdditiveExpression && expression.getType() == CatscriptType.STRING) {
+            AdditiveExpression addition = (AdditiveExpression) expression;
+            terms.add(valueCode(addition.getRightHandSide()));
+            expression = addition.getLeftHandSide();
+        }
+        terms.add(valueCode(expression));
+        Collections.reverse(terms);
+        if (terms.size() == 2) {
+            ValueCode lhs = terms.get(0);
+            ValueCode rhs = terms.get(1);
+            return runtime -> String.valueOf(lhs.evaluate(runtime)).concat(String.valueOf(rhs.evaluate(runtime)));
+        }
+        ValueCode[] array = terms.toArray(new ValueCode[0]);
+        return runtime -> {
+            StringBuilder value = new StringBuilder();
+            for (ValueCode term : array) {
+                value.append(term.evaluate(runtime));
+            }
+            return value.toString();
+        };
+    }
+
+    private ValueCode callCode(FunctionCallExpression call) {
+        CompiledFunction function = function(call.getFunction());
+        ValueCode[] arguments = valueCodes(call.getArguments());
+        return runtime -> {
+            Object[] frame = new Object[function.frameSize];
+            for (int i = 0; i < arguments.length; i++) {
+                frame[i] = arguments[i].evaluate(runtime);
+            }
+            return call(function, frame, runtime);
+        };
+    }
+
+    private static Object call(CompiledFunction function, Object[] frame, CatscriptRuntime runtime) {
+        int callerBase = runtime.pushFunctionScope(frame);
+        try {
+            Object result = function.body.execute(runtime);
+            return result == NEXT ? null : result;
+        } finally {
+            runtime.popFunctionScope(callerBase);
+        }
+    }
+
+    private CompiledFunction function(FunctionDefinitionStatement definition) {
+        CompiledFunction function = functions.get(definition);
+        if (function == null) {
+            function = new CompiledFunction();
+            functions.put(definition, function);
+            uncompiledFunctions.add(definition);
+        }
+        return function;
+    }
+
+    private ValueCode[] valueCodes(List<Expression> expressions) {
+        ValueCode[] codes = new ValueCode[expressions.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = valueCode(expressions.get(i));
+        }
+        return codes;
+    }
+
+    private static Expression innermost(ParenthesizedExpression parenthesized) {
+        Expression expression = parenthesized.getExpression();
+        while (expression instanceof ParenthesizedExpression) {
+            expression = ((ParenthesizedExpression) expression).getExpression();
+        }
+        return expression;
+    }
+
+    //==============================================================
+    // Deep subtrees
+    //==============================================================
+
+    // Lambdas calling each other overflow the stack, both compiling and running them, for
+    // subtrees nested as deeply as the parser allows.  So an expression or statement too deep
+    // to recurse into compiles to a flat array of steps taken in a loop instead, the values
+    // they work on kept on a stack of their own, and only its shallow parts compile to lambdas
+
+    // what a step returns to go on to the step after it, or to skip the rest of the steps
+    private static final int NEXT_STEP = -1;
+    private static final int END = Integer.MAX_VALUE;
+
+    // a step returns NEXT_STEP, END or the index of the step to jump to
+    interface Step {
+        int take(CatscriptRuntime runtime, StepFrame frame);
+    }
+
+    // what running the steps keeps: their values, how many scopes they have pushed, and what a
+    // return statement among them returned
+    static final class StepFrame {
+        private Object[] values = new Object[16];
+        private int top;
+        int scopes;
+        Object result = NEXT;
+
+        void push(Object value) {
+            if (top == values.length) {
+                values = Arrays.copyOf(values, top * 2);
+            }
+            values[top++] = value;
+        }
+
+        Object peek() {
+            return values[top - 1];
+        }
+
+        Object pop() {
+            Object value = values[--top];
+            values[top] = null;
+            return value;
+        }
+
+        // pops the last count values into the start of into
+        void pop(Object[] into, int count) {
+            top -= count;
+            System.arraycopy(values, top, into, 0, count);
+            Arrays.fill(values, top, top + count, null);
+        }
+    }
+
+    private static final Step POP_SCOPE = (runtime, frame) -> {
+        runtime.popScope();
+        frame.scopes--;
+        return NEXT_STEP;
+    };
+
+    private static StepFrame run(Step[] steps, CatscriptRuntime runtime) {
+        StepFrame frame = new StepFrame();
+        for (int next = 0; next < steps.length; ) {
+            int jump = steps[next].take(runtime, frame);
+            next = jump == NEXT_STEP ? next + 1 : jump;
+        }
+        // a return skips the steps that pop the scopes it is in
+        for (; frame.scopes > 0; frame.scopes--) {
+            runtime.popScope();
+        }
+        return frame;
+    }
+
+    private ValueCode flatValueCode(Expression expression) {
+        List<Step> steps = new ArrayList<>();
+        flattenExpression(expression, steps);
+        Step[] array = steps.toArray(new Step[0]);
+        return runtime -> run(array, runtime).pop();
+    }
+
+    private StatementCode flatStatementCode(Statement statement) {
+        List<Step> steps = new ArrayList<>();
+        flattenStatement(statement, steps);
+        Step[] array = steps.toArray(new Step[0]);
+        return runtime -> run(array, runtime).result;
+    }
+
+    // an expression or statement whose children are being flattened
+    private static final class Pending {
+        final ParseElement element;
+        List<Statement> body = Collections.emptyList();
+        int next;
+        // how many steps a statement has been flattened up to, see flattenStep
+        int step;
+        // where a loop goes back to, and a jump to point once the steps it skips are added
+        int loop;
+        int[] jump;
+
+        Pending(ParseElement element) {
+            this.element = element;
+        }
+    }
+
+    // adds the steps pushing the value of the expression, its operands' values first
+    private void flattenExpression(Expression root, List<Step> steps) {
+        Deque<Pending> stack = new ArrayDeque<>();
+        stack.push(new Pending(root));
+        while (!stack.isEmpty()) {
+            Pending pending = stack.peek();
+            Expression expression = (Expression) pending.element;
+            if (!expression.isTooDeepToRecurse()) {
+                stack.pop();
+                ValueCode value = valueCode(expression);
+                steps.add((runtime, frame) -> {
+                    frame.push(value.evaluate(runtime));
+                    return NEXT_STEP;
+                });
+            } else if (pending.next < expression.getChildCount()) {
+                stack.push(new Pending(expression.getChild(pending.next++)));
+            } else {
+                stack.pop();
+                // parentheses leave the value of what they hold as it is
+                if (!(expression instanceof ParenthesizedExpression)) {
+                    steps.add(operatorStep(expression));
+                }
+            }
+        }
+    }
+
+    // the step replacing the values of the operands of the expression with its own value
+    private Step operatorStep(Expression expression) {
+        int count = expression.getChildCount();
+        if (expression instanceof FunctionCallExpression) {
+            CompiledFunction function = function(((FunctionCallExpression) expression).getFunction());
+            return (runtime, frame) -> {
+                Object[] arguments = new Object[function.frameSize];
+                frame.pop(arguments, count);
+                frame.push(call(function, arguments, runtime));
+                return NEXT_STEP;
+            };
+        } else if (expression instanceof ListLiteralExpression) {
+            return (runtime, frame) -> {
+                Object[] values = new Object[count];
+                frame.pop(values, count);
+                frame.push(new ArrayList<>(Arrays.asList(values)));
+                return NEXT_STEP;
+            };
+        } else if (expression instanceof UnaryExpression) {
+            UnaryOperator<Object> operator = ((UnaryExpression) expression).isMinus() ?
+                    value -> -(Integer) value : value -> !(Boolean) value;
+            return (runtime, frame) -> {
+                frame.push(operator.apply(frame.pop()));
+                return NEXT_STEP;
+            };
+        }
+        BinaryOperator<Object> operator = binaryOperator(expression);
+        return (runtime, frame) -> {
+            Object rhs = frame.pop();
+            frame.push(operator.apply(frame.pop(), rhs));
+            return NEXT_STEP;
+        };
+    }
+
+    private static BinaryOperator<Object> binaryOperator(Expression expression) {
+        if (expression instanceof AdditiveExpression && expression.getType() == CatscriptType.STRING) {
+            return (lhs, rhs) -> String.valueOf(lhs).concat(String.valueOf(rhs));
+        } else if (expression instanceof AdditiveExpression) {
+            if (((AdditiveExpression) expression).isAdd()) {
+                return (lhs, rhs) -> (Integer) lhs + (Integer) rhs;
+            }
+            return (lhs, rhs) -> (Integer) lhs - (Integer) rhs;
+        } else if (expression instanceof FactorExpression) {
+            if (((FactorExpression) expression).isMultiply()) {
+                return (lhs, rhs) -> (Integer) lhs * (Integer) rhs;
+            }
+            return (lhs, rhs) -> (Integer) lhs / (Integer) rhs;
+        } else if (expression instanceof ComparisonExpression) {
+            ComparisonExpression comparison = (ComparisonExpression) expression;
+            if (comparison.isGreater()) {
+                return (lhs, rhs) -> (Integer) lhs > (Integer) rhs;
+            } else if (comparison.isLessThan()) {
+                return (lhs, rhs) -> (Integer) lhs < (Integer) rhs;
+            } else if (comparison.isLessThanOrEqual()) {
+                return (lhs, rhs) -> (Integer) lhs <= (Integer) rhs;
+            }
+            return (lhs, rhs) -> (Integer) lhs >= (Integer) rhs;
+        } else if (expression instanceof EqualityExpression) {
+            if (((EqualityExpression) expression).isEqual()) {
+                return (lhs, rhs) -> lhs == rhs;
+            }
+            return (lhs, rhs) -> lhs != rhs;
+        }
+        throw new IllegalStateException("Cannot compile " + expression.getClass().getName());
+    }
+
+    // adds the steps running the statement, going through the bodies of the deep statements in
+    // it without recursing
+    private void flattenStatement(Statement root, List<Step> steps) {
+        Deque<Pending> stack = new ArrayDeque<>();
+        stack.push(new Pending(root));
+        while (!stack.isEmpty()) {
+            Pending pending = stack.peek();
+            if (pending.next < pending.body.size()) {
+                Statement statement = pending.body.get(pending.next++);
+                if (statement instanceof FunctionDefinitionStatement) {
+                    continue;
+                } else if (statement.isTooDeepToRecurse()) {
+                    stack.push(new Pending(statement));
+                } else {
+                    StatementCode code = statementCode(statement);
+                    steps.add((runtime, frame) -> {
+                        Object result = code.execute(runtime);
+                        if (result == NEXT) {
+                            return NEXT_STEP;
+                        }
+                        frame.result = result;
+                        return END;
+                    });
+                }
+            } else if (flattenStep(pending, steps)) {
+                pending.next = 0;
+            } else {
+                stack.pop();
+            }
+        }
+    }
+
+    // adds the steps of an if or for statement up to its next body, returning false once all
+    // of its steps are added
+    private boolean flattenStep(Pending pending, List<Step> steps) {
+        int step = pending.step++;
+        if (pending.element instanceof IfStatement) {
+            IfStatement ifStatement = (IfStatement) pending.element;
+            if (step == 0) {
+                BooleanCode condition = booleanCode(ifStatement.getExpression());
+                int trueFrameSize = ifStatement.getTrueFrameSize();
+                int elseFrameSize = ifStatement.getElseFrameSize();
+                int[] elseStep = pending.jump = new int[1];
+                steps.add((runtime, frame) -> {
+                    boolean value = condition.evaluate(runtime);
+                    runtime.pushScope(value ? trueFrameSize : elseFrameSize);
+                    frame.scopes++;
+                    return value ? NEXT_STEP : elseStep[0];
+                });
+                pending.body = ifStatement.getTrueStatements();
+                return true;
+            } else if (step == 1) {
+                steps.add(POP_SCOPE);
+                int[] endStep = new int[1];
+                steps.add((runtime, frame) -> endStep[0]);
+                pending.jump[0] = steps.size();
+                pending.jump = endStep;
+                pending.body = ifStatement.getElseStatements();
+                return true;
+            }
+            steps.add(POP_SCOPE);
+            pending.jump[0] = steps.size();
+            return false;
+        } else if (pending.element instanceof ForStatement) {
+            ForStatement forStatement = (ForStatement) pending.element;
+            if (step == 0) {
+                ValueCode values = valueCode(forStatement.getExpression());
+                int depth = forStatement.getDepth();
+                int slot = forStatement.getSlot();
+                int frameSize = forStatement.getFrameSize();
+                steps.add((runtime, frame) -> {
+                    List<?> list = (List<?>) values.evaluate(runtime);
+                    runtime.pushScope(frameSize);
+                    frame.scopes++;
+                    frame.push(list.iterator());
+                    return NEXT_STEP;
+                });
+                pending.loop = steps.size();
+                int[] exitStep = pending.jump = new int[1];
+                steps.add((runtime, frame) -> {
+                    Iterator<?> iterator = (Iterator<?>) frame.peek();
+                    if (iterator.hasNext()) {
+                        runtime.setLocal(depth, slot, iterator.next());
+                        return NEXT_STEP;
+                    }
+                    frame.pop();
+                    runtime.popScope();
+                    frame.scopes--;
+                    return exitStep[0];
+                });
+                pending.body = forStatement.getBody();
+                return true;
+            }
+            int loop = pending.loop;
+            steps.add((runtime, frame) -> loop);
+            pending.jump[0] = steps.size();
+            return false;
+        }
+        // only ifs and fors have bodies to nest, and definitions are skipped before this
+        throw new IllegalStateException("Cannot compile " + pending.element.getClass().getName());
+    }
+}
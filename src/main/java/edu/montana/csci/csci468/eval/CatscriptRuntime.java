@@ -1,46 +1,94 @@
 package edu.montana.csci.csci468.eval;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Map;
+import java.util.Arrays;
 
-// TODO - implement proper scoping
 public class CatscriptRuntime {
-    LinkedList<Map<String, Object>> scopes = new LinkedList<>();
+
+    // Each scope is an array of values indexed by the slots validation gave its variables.
+    // The global scope comes first and is indexed by the slots the program gave its globals,
+    // see CatScriptProgram.getGlobalSlot, and a function call starts a new run of scopes at
+    // base, so a variable at depth d > 0 is in scopes[base + d - 1].
+    // The other scopes are frames of the size validation found their variables need, so only
+    // the global scope grows
+    private static final Object[] EMPTY_SCOPE = new Object[0];
+    private Object[][] scopes = new Object[16][];
+    private int top = 0;
+    private int base = 1;
 
     public CatscriptRuntime(){
-        HashMap<String, Object> globalScope = new HashMap<>();
-        scopes.push(globalScope);
+        scopes[0] = EMPTY_SCOPE;
+    }
+
+    // a runtime with room for the globals a program is known to have
+    public CatscriptRuntime(int globalCount) {
+        scopes[0] = globalCount == 0 ? EMPTY_SCOPE : new Object[globalCount];
+    }
+
+    public Object getValue(int depth, int slot) {
+        return depth == 0 ? getGlobal(slot) : getLocal(depth, slot);
     }
 
-    public Object getValue(String name) {
-        Iterator<Map<String, Object>> mapIterator = scopes.descendingIterator();
-        while (mapIterator.hasNext()) {
-            Map<String, Object> scope = mapIterator.next();
-            if (scope.containsKey(name)) {
-                return scope.get(name);
-            }
+    public void setValue(int depth, int slot, Object val) {
+        if (depth == 0) {
+            setGlobal(slot, val);
+        } else {
+            setLocal(depth, slot, val);
         }
-        return null;
     }
 
-    public void setValue(String variableName, Object val) {
-        for (Map<String, Object> scope : scopes) {
-            if (scope.containsKey(variableName)) {
-                scope.put(variableName, val);
-                return;
-            }
+    // the accessors for callers that already know whether a variable is global
+    public Object getGlobal(int slot) {
+        Object[] globals = scopes[0];
+        return slot < globals.length ? globals[slot] : null;
+    }
+
+    public void setGlobal(int slot, Object val) {
+        Object[] globals = scopes[0];
+        if (slot >= globals.length) {
+            globals = Arrays.copyOf(globals, Math.max(slot + 1, globals.length * 2));
+            scopes[0] = globals;
         }
-        scopes.peekLast().put(variableName, val);
+        globals[slot] = val;
+    }
+
+    public Object getLocal(int depth, int slot) {
+        return scopes[base + depth - 1][slot];
     }
 
-    public void pushScope() {
-        scopes.push(new HashMap<>());
+    public void setLocal(int depth, int slot, Object val) {
+        scopes[base + depth - 1][slot] = val;
+    }
+
+    public void pushScope(int frameSize) {
+        if (++top == scopes.length) {
+            scopes = Arrays.copyOf(scopes, top * 2);
+        }
+        scopes[top] = frameSize == 0 ? EMPTY_SCOPE : new Object[frameSize];
     }
 
     public void popScope() {
-        scopes.pop();
+        scopes[top--] = null;
+    }
+
+    // Starts the scopes of a function call with a frame the caller has already put the
+    // arguments in, returning the base to restore once it returns.  Functions are defined at
+    // the top level, so their own scope is at depth 1
+    public int pushFunctionScope(Object[] frame) {
+        int callerBase = base;
+        if (++top == scopes.length) {
+            scopes = Arrays.copyOf(scopes, top * 2);
+        }
+        scopes[top] = frame;
+        base = top;
+        return callerBase;
+    }
+
+    // drops the scopes of a function call, including any a return left behind
+    public void popFunctionScope(int callerBase) {
+        while (top >= base) {
+            popScope();
+        }
+        base = callerBase;
     }
 
 }
@@ -3,6 +3,8 @@ package edu.montana.csci.csci468.eval;
 public class ReturnException extends RuntimeException {
     private Object value;
     public ReturnException(Object value) {
+        // every return throws one, so it skips filling in a stack trace
+        super(null, null, false, false);
         this.value = value;
     }
     public Object getValue() {
@@ -6,24 +6,120 @@ import edu.montana.csci.csci468.tokenizer.CatScriptTokenizer;
 import edu.montana.csci.csci468.tokenizer.Token;
 import edu.montana.csci.csci468.tokenizer.TokenList;
 import edu.montana.csci.csci468.tokenizer.TokenType;
+import edu.montana.csci.csci468.util.AtomMap;
+import edu.montana.csci.csci468.util.Atoms;
 
-import java.util.LinkedList;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 import static edu.montana.csci.csci468.tokenizer.TokenType.*;
 
 public class CatScriptParser {
 
+    // binding power of each binary operator by token type ordinal, zero for everything else
+    private static final int EQUALITY = 1;
+    private static final int COMPARISON = 2;
+    private static final int ADDITIVE = 3;
+    private static final int FACTOR = 4;
+    private static final int[] PRECEDENCE = new int[TokenType.values().length];
+    static {
+        PRECEDENCE[EQUAL_EQUAL.ordinal()] = EQUALITY;
+        PRECEDENCE[BANG_EQUAL.ordinal()] = EQUALITY;
+        PRECEDENCE[LESS.ordinal()] = COMPARISON;
+        PRECEDENCE[GREATER.ordinal()] = COMPARISON;
+        PRECEDENCE[LESS_EQUAL.ordinal()] = COMPARISON;
+        PRECEDENCE[GREATER_EQUAL.ordinal()] = COMPARISON;
+        PRECEDENCE[PLUS.ordinal()] = ADDITIVE;
+        PRECEDENCE[MINUS.ordinal()] = ADDITIVE;
+        PRECEDENCE[STAR.ordinal()] = FACTOR;
+        PRECEDENCE[SLASH.ordinal()] = FACTOR;
+    }
+
+    // top level functions with fewer tokens than this are not worth parsing on another thread
+    private static final int PARALLEL_MIN_TOKENS = 256;
+
     private TokenList tokens;
+    // the ids of the names in the program being parsed
+    private Atoms atoms;
     private FunctionDefinitionStatement currentFunctionDefinition;
+    private boolean precedenceClimbing = true;
+    private boolean parallel = false;
+    private boolean lazyFunctionBodies = false;
+    private int maxErrors = Integer.MAX_VALUE;
+    private int errorCount;
+    // the bodies being parsed, innermost first, see parseBodies
+    private final Deque<Body> bodies = new ArrayDeque<>();
+    private int parallelMinTokens = PARALLEL_MIN_TOKENS;
+
+    // Binary expressions are parsed by precedence climbing unless this is turned off, in
+    // which case they go through one recursive descent method per precedence level
+    public void setPrecedenceClimbing(boolean precedenceClimbing) {
+        this.precedenceClimbing = precedenceClimbing;
+    }
+
+    // Top level function definitions are parsed on the common fork join pool when this is
+    // turned on, while the other statements are parsed in between.  The program is the same
+    // as parsing sequentially, and streaming token lists are always parsed sequentially
+    public void setParallel(boolean parallel) {
+        setParallel(parallel, PARALLEL_MIN_TOKENS);
+    }
+
+    void setParallel(boolean parallel, int minTokens) {
+        this.parallel = parallel;
+        this.parallelMinTokens = minTokens;
+    }
+
+    // Function bodies are only skipped over when this is turned on, and parsed and validated
+    // the first time the function is called or compiled.  Streaming token lists always have
+    // their function bodies parsed right away
+    public void setLazyFunctionBodies(boolean lazyFunctionBodies) {
+        this.lazyFunctionBodies = lazyFunctionBodies;
+    }
+
+    // Parsing stops once this many syntax errors have been found, and verifying the program
+    // stops once this many errors have been found in all, reporting only the first maxErrors
+    public void setMaxErrors(int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
 
     public CatScriptProgram parse(String source) {
-        tokens = new CatScriptTokenizer(source).getTokens();
+        return parse(new CatScriptTokenizer(source).getTokens());
+    }
+
+    public CatScriptProgram parse(Reader source) {
+        return parse(CatScriptTokenizer.streaming(source).getTokens());
+    }
+
+    public CatScriptProgram parse(TokenList tokenList) {
+        tokens = tokenList;
+        errorCount = 0;
 
-        // first parse an expression
         CatScriptProgram program = new CatScriptProgram();
+        atoms = program.getAtoms();
+        program.setTokens(tokens);
+        program.setMaxErrors(maxErrors);
         program.setStart(tokens.getCurrentToken());
+        if (startsStatement()) {
+            tokens.release();
+            parseProgramStatements(program);
+            program.setEnd(tokens.getCurrentToken());
+            return program;
+        }
+
+        // otherwise parse an expression
+        boolean startsWithIdentifier = tokens.match(IDENTIFIER);
         Expression expression = null;
         try {
             expression = parseExpression();
@@ -31,10 +127,17 @@ public class CatScriptParser {
             // ignore :)
         }
         if (expression == null || tokens.hasMoreTokens()) {
-            tokens.reset();
-            while (tokens.hasMoreTokens()) {
-                program.addStatement(parseProgramStatement());
+            if (expression != null && startsWithIdentifier) {
+                // a statement starting with an identifier begins with this same expression,
+                // so keep it rather than parsing it again
+                tokens.release();
+                program.addStatement(parseFunctionCallOrAssignment(expression), program.getStart().getStart());
+            } else {
+                tokens.reset();
+                tokens.release();
+                errorCount = 0;
             }
+            parseProgramStatements(program);
         } else {
             program.setExpression(expression);
         }
@@ -43,9 +146,110 @@ public class CatScriptParser {
         return program;
     }
 
+    // A statement keyword can only be read as an expression if an operator follows it or
+    // it is the whole input, otherwise the expression attempt would stop after it
+    private boolean startsStatement() {
+        if (!tokens.match(PRINT, FOR, IF, VAR, FUNCTION, RETURN) || !tokens.hasMoreTokens()) {
+            return false;
+        }
+        tokens.skipToken();
+        boolean operator = tokens.match(EOF, EQUAL_EQUAL, BANG_EQUAL, LESS, GREATER, LESS_EQUAL, GREATER_EQUAL,
+                PLUS, MINUS, STAR, SLASH);
+        tokens.reset();
+        return !operator;
+    }
+
+    private void parseProgramStatements(CatScriptProgram program) {
+        Deque<FunctionTask> functions = parallel && !tokens.isStreaming() ? forkFunctions() : null;
+        while (tokens.hasMoreTokens() && errorCount < maxErrors) {
+            int start = tokens.getCurrentToken().getStart();
+            Statement statement = functions == null ? null : parsedFunctionAt(functions, start);
+            if (statement == null) {
+                statement = parseProgramStatement();
+            }
+            program.addStatement(statement, start);
+        }
+    }
+
+    //============================================================
+    //  Parallel Parsing
+    //============================================================
+
+    // Parses the function definition at the start of a fork of the token list, the same way
+    // the sequential parser would once it got there
+    private static final class FunctionTask extends RecursiveTask<Statement> {
+        private static final long serialVersionUID = 1L;
+        final int start;
+        final CatScriptParser parser = new CatScriptParser();
+        int end;
+
+        FunctionTask(int start, TokenList tokens, CatScriptParser settings) {
+            this.start = start;
+            parser.tokens = tokens;
+            parser.atoms = settings.atoms;
+            parser.precedenceClimbing = settings.precedenceClimbing;
+            parser.lazyFunctionBodies = settings.lazyFunctionBodies;
+            parser.maxErrors = settings.maxErrors;
+        }
+
+        @Override
+        protected Statement compute() {
+            Statement statement = parser.parseProgramStatement();
+            end = parser.tokens.getCurrentToken().getStart();
+            return statement;
+        }
+    }
+
+    // Scans ahead for function keywords outside of any braces and starts parsing each function
+    // whose braces close at least parallelMinTokens tokens later, returning them in source order
+    private Deque<FunctionTask> forkFunctions() {
+        Deque<FunctionTask> functions = new ArrayDeque<>();
+        TokenList scan = tokens.fork();
+        TokenList function = null;
+        int functionTokens = 0;
+        int depth = 0;
+        while (scan.hasMoreTokens()) {
+            TokenType type = scan.getCurrentType();
+            if (type == FUNCTION && depth == 0) {
+                function = scan.fork();
+                functionTokens = 0;
+            } else if (type == LEFT_BRACE) {
+                depth++;
+            } else if (type == RIGHT_BRACE && depth > 0 && --depth == 0 && function != null) {
+                if (functionTokens >= parallelMinTokens) {
+                    FunctionTask task = new FunctionTask(function.getCurrentToken().getStart(), function, this);
+                    ForkJoinPool.commonPool().execute(task);
+                    functions.add(task);
+                }
+                function = null;
+            }
+            functionTokens++;
+            scan.skipToken();
+        }
+        return functions;
+    }
+
+    // The function parsed ahead of time starting at start, if there is one.  Functions the
+    // sequential parse went past, where the scan misjudged a statement start, are dropped
+    private Statement parsedFunctionAt(Deque<FunctionTask> functions, int start) {
+        while (!functions.isEmpty() && functions.peek().start < start) {
+            functions.pop().cancel(false);
+        }
+        if (functions.isEmpty() || functions.peek().start != start) {
+            return null;
+        }
+        FunctionTask function = functions.pop();
+        Statement statement = function.join();
+        tokens.skipTo(function.end);
+        currentFunctionDefinition = function.parser.currentFunctionDefinition;
+        errorCount += function.parser.errorCount;
+        return statement;
+    }
+
     public CatScriptProgram parseAsExpression(String source) {
         tokens = new CatScriptTokenizer(source).getTokens();
         CatScriptProgram program = new CatScriptProgram();
+        atoms = program.getAtoms();
         program.setStart(tokens.getCurrentToken());
         Expression expression = parseExpression();
         program.setExpression(expression);
@@ -53,16 +257,252 @@ public class CatScriptParser {
         return program;
     }
 
+    //============================================================
+    //  Incremental Reparsing
+    //============================================================
+
+    // Parses the source of previous after an edit replacing removedLength characters at offset
+    // with insertedText.  Top level statements whose tokens, and the token after them, the edit
+    // left alone are moved into the new program rather than parsed again, and the tokens of
+    // previous are retokenized in place, so previous must not be used afterwards.  Verifying the
+    // new program only validates the functions that were reparsed or refer to a name declared
+    // by a reparsed statement
+    public CatScriptProgram reparse(CatScriptProgram previous, int offset, int removedLength, String insertedText) {
+        // read before the edit, after which the token moves along with it
+        int previousEnd = previous.getEnd().getStart();
+        TokenList tokenList = CatScriptTokenizer.retokenize(previous.getTokens(), offset, removedLength, insertedText);
+        List<Statement> previousStatements = new ArrayList<>(previous.getStatements());
+        if (previous.isExpression()) {
+            return parse(tokenList);
+        }
+        tokens = tokenList;
+        errorCount = 0;
+        int delta = insertedText.length() - removedLength;
+
+        CatScriptProgram program = new CatScriptProgram();
+        program.setTokens(tokens);
+        program.setMaxErrors(maxErrors);
+        program.setStart(tokens.getCurrentToken());
+        program.keepNames(previous);
+        atoms = program.getAtoms();
+        boolean[] previousReused = new boolean[previousStatements.size()];
+        BitSet reused = new BitSet();
+        int candidate = 0;
+        while (tokens.hasMoreTokens() && errorCount < maxErrors) {
+            int start = tokens.getCurrentToken().getStart();
+            int previousStart = start < offset ? start :
+                    start >= offset + insertedText.length() ? start - delta : -1;
+            while (candidate < previousStatements.size() && previous.getStatementStart(candidate) < previousStart) {
+                candidate++;
+            }
+            int next = candidate + 1 < previousStatements.size() ?
+                    previous.getStatementStart(candidate + 1) : previousEnd;
+            if (previousStart >= 0 && candidate < previousStatements.size() &&
+                    previous.getStatementStart(candidate) == previousStart &&
+                    !hasUnparsedBody(previousStatements.get(candidate)) &&
+                    tokens.carriesOver(previousStart, next)) {
+                Statement statement = previousStatements.get(candidate);
+                program.addStatement(statement, start);
+                program.setStatementNames(program.getStatements().size() - 1, previous.getStatementNames(candidate));
+                reused.set(program.getStatements().size() - 1);
+                previousReused[candidate++] = true;
+                if (statement instanceof FunctionDefinitionStatement) {
+                    currentFunctionDefinition = (FunctionDefinitionStatement) statement;
+                }
+                tokens.skipTo(TokenList.movedPosition(next, offset, removedLength, delta));
+            } else {
+                program.addStatement(parseProgramStatement(), start);
+            }
+        }
+        program.setEnd(tokens.getCurrentToken());
+
+        // an edit to the first statement may have left a source that is a single expression
+        if (!reused.get(0)) {
+            tokens.reset();
+            if (!startsStatement() && isSingleExpression()) {
+                tokens.reset();
+                return parse(tokens);
+            }
+        }
+        invalidateDependents(previous, program, previousReused, reused);
+        return program;
+    }
+
+    // a lazy body still refers to the tokens of the previous parse
+    private boolean hasUnparsedBody(Statement statement) {
+        return statement instanceof FunctionDefinitionStatement &&
+                !((FunctionDefinitionStatement) statement).isBodyParsed();
+    }
+
+    private boolean isSingleExpression() {
+        try {
+            parseExpression();
+            return !tokens.hasMoreTokens();
+        } catch (RuntimeException re) {
+            return false;
+        }
+    }
+
+    // Only the global names a reparsed or dropped statement declares can have changed, so reused
+    // statements mentioning none of them, such as functions not calling a changed function, keep
+    // their validation.  Reused top level statements are always validated again and pass the
+    // change on when they mention a changed name, since their variables may change type
+    private void invalidateDependents(CatScriptProgram previous, CatScriptProgram program,
+                                      boolean[] previousReused, BitSet reused) {
+        AtomMap<Boolean> changed = new AtomMap<>();
+        List<Statement> previousStatements = new ArrayList<>(previous.getStatements());
+        for (int i = 0; i < previousStatements.size(); i++) {
+            if (!previousReused[i]) {
+                forEachDeclaredName(previousStatements.get(i), name -> changed.put(name, true));
+            }
+        }
+        List<Statement> statements = new ArrayList<>(program.getStatements());
+        for (int i = 0; i < statements.size(); i++) {
+            if (!reused.get(i)) {
+                forEachDeclaredName(statements.get(i), name -> changed.put(name, true));
+            }
+        }
+        // top level statements first, as functions may refer to the variables they declare
+        for (int i = 0; i < statements.size(); i++) {
+            Statement statement = statements.get(i);
+            if (reused.get(i) && !(statement instanceof FunctionDefinitionStatement)) {
+                statement.clearValidationErrors();
+                if (mentionsAny(program, i, statement, changed)) {
+                    forEachDeclaredName(statement, name -> changed.put(name, true));
+                }
+            }
+        }
+        for (int i = 0; i < statements.size(); i++) {
+            if (reused.get(i) && statements.get(i) instanceof FunctionDefinitionStatement) {
+                FunctionDefinitionStatement function = (FunctionDefinitionStatement) statements.get(i);
+                // a function that never finished validating may still hold some of its errors
+                if (!function.isVerified() || mentionsAny(program, i, function, changed)) {
+                    function.clearValidationErrors();
+                    function.setVerified(false);
+                }
+            }
+        }
+    }
+
+    private boolean mentionsAny(CatScriptProgram program, int index, Statement statement, AtomMap<Boolean> changed) {
+        for (int name : names(program, index, statement)) {
+            if (changed.containsKey(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the global names a top level statement declares
+    private void forEachDeclaredName(Statement statement, IntConsumer action) {
+        if (statement instanceof FunctionDefinitionStatement) {
+            action.accept(((FunctionDefinitionStatement) statement).getAtom());
+        } else if (statement instanceof VariableStatement) {
+            action.accept(((VariableStatement) statement).getVariableAtom());
+        } else if (statement instanceof ForStatement) {
+            action.accept(((ForStatement) statement).getVariableAtom());
+        }
+    }
+
+    // the names the top level statement at index declares or refers to
+    private int[] names(CatScriptProgram program, int index, Statement statement) {
+        int[] names = program.getStatementNames(index);
+        if (names == null) {
+            IntStream.Builder builder = IntStream.builder();
+            statement.walk(element -> forEachName(element, builder));
+            names = builder.build().distinct().toArray();
+            program.setStatementNames(index, names);
+        }
+        return names;
+    }
+
+    private void forEachName(ParseElement element, IntConsumer action) {
+        if (element instanceof IdentifierExpression) {
+            action.accept(((IdentifierExpression) element).getAtom());
+        } else if (element instanceof FunctionCallExpression) {
+            action.accept(((FunctionCallExpression) element).getAtom());
+        } else if (element instanceof FunctionDefinitionStatement) {
+            action.accept(((FunctionDefinitionStatement) element).getAtom());
+        } else if (element instanceof VariableStatement) {
+            action.accept(((VariableStatement) element).getVariableAtom());
+        } else if (element instanceof AssignmentStatement) {
+            action.accept(((AssignmentStatement) element).getVariableAtom());
+        } else if (element instanceof ForStatement) {
+            action.accept(((ForStatement) element).getVariableAtom());
+        }
+    }
+
     //============================================================
     //  Statements
     //============================================================
 
     private Statement parseProgramStatement() {
+        int depth = bodies.size();
+        Statement statement = parseStatement();
+        parseBodies(depth);
+        return statement;
+    }
+
+    // parses a statement, leaving any body it has open
+    private Statement parseStatement() {
         Statement printStmt = parsePrintStatement();
         if (printStmt != null) {
             return printStmt;
         }
-        return new SyntaxErrorStatement(tokens.consumeToken());
+        return syntaxErrorStatement();
+    }
+
+    // Panic mode recovery: the bad token and everything up to the next token a statement can
+    // start with, or the brace closing the enclosing body, become a single error statement
+    private Statement syntaxErrorStatement() {
+        errorCount++;
+        Token start = tokens.consumeToken();
+        while (tokens.hasMoreTokens() && !tokens.match(PRINT, FOR, IF, VAR, FUNCTION, RETURN, RIGHT_BRACE)) {
+            tokens.skipToken();
+        }
+        return new SyntaxErrorStatement(start, tokens.lastToken());
+    }
+
+    // whether the body being parsed goes on, which it does not once too many errors were found
+    private boolean moreBodyStatements() {
+        return tokens.hasMoreTokens() && !tokens.match(RIGHT_BRACE) && errorCount < maxErrors;
+    }
+
+    // The body of a for, if or function, which is handed to close once its statements are
+    // parsed.  Bodies are parsed from a stack rather than by recursion, so blocks can nest as
+    // deeply as the heap allows
+    private static final class Body {
+        final FunctionDefinitionStatement function;
+        final Consumer<List<Statement>> close;
+        final List<Statement> statements = new ArrayList<>();
+
+        Body(FunctionDefinitionStatement function, Consumer<List<Statement>> close) {
+            this.function = function;
+            this.close = close;
+        }
+    }
+
+    // starts a body for parseBodies to fill in, where function is the function it is the body of
+    private void openBody(FunctionDefinitionStatement function, Consumer<List<Statement>> close) {
+        bodies.push(new Body(function, close));
+    }
+
+    // parses statements into the innermost open body, closing each one at its end, until only
+    // depth bodies are left open
+    private void parseBodies(int depth) {
+        while (bodies.size() > depth) {
+            Body body = bodies.peek();
+            if (body.function != null) {
+                // a function defined in the body takes over while its own body is parsed
+                currentFunctionDefinition = body.function;
+            }
+            if (moreBodyStatements()) {
+                body.statements.add(parseStatement());
+            } else {
+                bodies.pop();
+                body.close.accept(body.statements);
+            }
+        }
     }
 
     private Statement parsePrintStatement() {
@@ -87,18 +527,16 @@ public class CatScriptParser {
             forStatement.setStart(tokens.consumeToken());
 
             require(LEFT_PAREN, forStatement);
-            forStatement.setVariableName(require(IDENTIFIER, forStatement).getStringValue());
+            forStatement.setVariableName(require(IDENTIFIER, forStatement).getStringValue(), atoms);
             require(IN, forStatement);
             forStatement.setExpression(parseExpression());
             require(RIGHT_PAREN, forStatement);
 
             require(LEFT_BRACE, forStatement);
-            List<Statement> body = new LinkedList<>();
-            while(tokens.hasMoreTokens() && !tokens.match(RIGHT_BRACE)) {
-                body.add(parseProgramStatement());
-            }
-            forStatement.setBody(body);
-            forStatement.setEnd(require(RIGHT_BRACE, forStatement));
+            openBody(null, body -> {
+                forStatement.setBody(body);
+                forStatement.setEnd(require(RIGHT_BRACE, forStatement));
+            });
 
             return forStatement;
         } else {
@@ -116,25 +554,21 @@ public class CatScriptParser {
             require(RIGHT_PAREN, ifStatement);
 
             require(LEFT_BRACE, ifStatement);
-            List<Statement> body = new LinkedList<>();
-            while(tokens.hasMoreTokens() && !tokens.match(RIGHT_BRACE)) {
-                body.add(parseProgramStatement());
-            }
-            ifStatement.setTrueStatements(body);
-            Token ifBrace = require(RIGHT_BRACE, ifStatement);
-
-            if (tokens.match(ELSE)) {
-                require(ELSE, ifStatement);
-                require(LEFT_BRACE, ifStatement);
-                body = new LinkedList<>();
-                while(tokens.hasMoreTokens() && !tokens.match(RIGHT_BRACE)) {
-                    body.add(parseProgramStatement());
+            openBody(null, trueStatements -> {
+                ifStatement.setTrueStatements(trueStatements);
+                Token ifBrace = require(RIGHT_BRACE, ifStatement);
+
+                if (tokens.match(ELSE)) {
+                    require(ELSE, ifStatement);
+                    require(LEFT_BRACE, ifStatement);
+                    openBody(null, elseStatements -> {
+                        ifStatement.setElseStatements(elseStatements);
+                        ifStatement.setEnd(require(RIGHT_BRACE, ifStatement));
+                    });
+                } else {
+                    ifStatement.setEnd(ifBrace);
                 }
-                ifStatement.setElseStatements(body);
-                ifStatement.setEnd(require(RIGHT_BRACE, ifStatement));
-            } else {
-                ifStatement.setEnd(ifBrace);
-            }
+            });
 
             return ifStatement;
         } else {
@@ -146,7 +580,7 @@ public class CatScriptParser {
         if(tokens.match(VAR)) {
             VariableStatement varStatement = new VariableStatement();
             varStatement.setStart(tokens.consumeToken());
-            varStatement.setVariableName(require(IDENTIFIER, varStatement).getStringValue());
+            varStatement.setVariableName(require(IDENTIFIER, varStatement).getStringValue(), atoms);
 
             if (tokens.match(EQUAL)) {
                 tokens.consumeToken();
@@ -201,40 +635,49 @@ public class CatScriptParser {
 
     private Statement parseFunctionCallStatement() {
         if(tokens.match(IDENTIFIER)) {
-            Expression parsedExpression = parseExpression();
-            if (parsedExpression instanceof FunctionCallExpression) {
-                return new FunctionCallStatement((FunctionCallExpression) parsedExpression);
-            }
-            else {
-                AssignmentStatement assignmentStatement = new AssignmentStatement();
-                assignmentStatement.setVariableName(parsedExpression.getStart().getStringValue());
-                assignmentStatement.setStart(parsedExpression.getStart());
-                require(EQUAL, assignmentStatement);
-                assignmentStatement.setExpression(parseExpression());
-
-                return assignmentStatement;
-            }
+            return parseFunctionCallOrAssignment(parseExpression());
         }
         else {
             return parseFunctionDefinitionStatement();
         }
     }
 
+    private Statement parseFunctionCallOrAssignment(Expression parsedExpression) {
+        if (parsedExpression instanceof FunctionCallExpression) {
+            return new FunctionCallStatement((FunctionCallExpression) parsedExpression);
+        }
+        else {
+            AssignmentStatement assignmentStatement = new AssignmentStatement();
+            assignmentStatement.setVariableName(parsedExpression.getStart().getStringValue(), atoms);
+            assignmentStatement.setStart(parsedExpression.getStart());
+            require(EQUAL, assignmentStatement);
+            assignmentStatement.setExpression(parseExpression());
+
+            return assignmentStatement;
+        }
+    }
+
     private Statement parseFunctionDefinitionStatement() {
         if(tokens.match(FUNCTION)) {
-            currentFunctionDefinition = new FunctionDefinitionStatement();
-            currentFunctionDefinition.setStart(tokens.consumeToken());
-            currentFunctionDefinition.setName(require(IDENTIFIER, currentFunctionDefinition).getStringValue());
-            require(LEFT_PAREN, currentFunctionDefinition);
+            FunctionDefinitionStatement function = new FunctionDefinitionStatement();
+            currentFunctionDefinition = function;
+            function.setStart(tokens.consumeToken());
+            function.setName(require(IDENTIFIER, function).getStringValue(), atoms);
+            require(LEFT_PAREN, function);
             while(!tokens.match(RIGHT_PAREN)) {
-                String paramName = require(IDENTIFIER, currentFunctionDefinition).getStringValue();
+                if (!tokens.match(IDENTIFIER)) {
+                    // nothing else can start a parameter, so stop rather than loop on this token
+                    require(IDENTIFIER, function);
+                    break;
+                }
+                String paramName = require(IDENTIFIER, function).getStringValue();
                 TypeLiteral type = new TypeLiteral();
 
                 if(tokens.match(COMMA) || tokens.match(RIGHT_PAREN)) {
                     type.setType(CatscriptType.OBJECT);
                 } else {
-                    require(COLON, currentFunctionDefinition);
-                    switch (require(IDENTIFIER, currentFunctionDefinition).getStringValue()) {
+                    require(COLON, function);
+                    switch (require(IDENTIFIER, function).getStringValue()) {
                         case "int":
                             type.setType(CatscriptType.INT);
                             break;
@@ -250,7 +693,7 @@ public class CatScriptParser {
                         case "list":
                             if (tokens.match(LESS)) {
                                 tokens.consumeToken();
-                                switch (require(IDENTIFIER, currentFunctionDefinition).getStringValue()) {
+                                switch (require(IDENTIFIER, function).getStringValue()) {
                                     case "int":
                                         type.setType(CatscriptType.getListType(CatscriptType.INT));
                                         break;
@@ -264,16 +707,16 @@ public class CatScriptParser {
                                         type.setType(CatscriptType.getListType(CatscriptType.OBJECT));
                                         break;
                                 }
-                                require(GREATER, currentFunctionDefinition);
+                                require(GREATER, function);
                             } else {
                                 type.setType(CatscriptType.getListType(CatscriptType.OBJECT));
                             }
                             break;
                     }
                 }
-                currentFunctionDefinition.addParameter(paramName, type);
+                function.addParameter(paramName, type, atoms);
                 if(!tokens.match(RIGHT_PAREN)) {
-                    require(COMMA, currentFunctionDefinition);
+                    require(COMMA, function);
                 }
             }
             tokens.consumeToken();
@@ -281,7 +724,7 @@ public class CatScriptParser {
             TypeLiteral returnType = new TypeLiteral();
             if (tokens.match(COLON)) {
                 tokens.consumeToken();
-                switch (require(IDENTIFIER, currentFunctionDefinition).getStringValue()) {
+                switch (require(IDENTIFIER, function).getStringValue()) {
                     case "int":
                         returnType.setType(CatscriptType.INT);
                         break;
@@ -297,7 +740,7 @@ public class CatScriptParser {
                     case "list":
                         if (tokens.match(LESS)) {
                             tokens.consumeToken();
-                            switch (require(IDENTIFIER, currentFunctionDefinition).getStringValue()) {
+                            switch (require(IDENTIFIER, function).getStringValue()) {
                                 case "int":
                                     returnType.setType(CatscriptType.getListType(CatscriptType.INT));
                                     break;
@@ -311,7 +754,7 @@ public class CatScriptParser {
                                     returnType.setType(CatscriptType.getListType(CatscriptType.OBJECT));
                                     break;
                             }
-                            require(GREATER, currentFunctionDefinition);
+                            require(GREATER, function);
                         } else {
                             returnType.setType(CatscriptType.getListType(CatscriptType.OBJECT));
                         }
@@ -322,27 +765,64 @@ public class CatScriptParser {
             } else {
                 returnType = null;
             }
-            currentFunctionDefinition.setType(returnType);
+            function.setType(returnType);
 
-            require(LEFT_BRACE, currentFunctionDefinition);
-            List<Statement> body = new LinkedList<>();
-            while(tokens.hasMoreTokens() && !tokens.match(RIGHT_BRACE)) {
-                if(tokens.match(RETURN)) {
-                    body.add(parseReturnStatement(currentFunctionDefinition));
-                } else {
-                    body.add(parseProgramStatement());
-                }
+            require(LEFT_BRACE, function);
+            if (lazyFunctionBodies && !tokens.isStreaming()) {
+                function.setLazyBody(skipFunctionBody(function));
+                function.setEnd(require(RIGHT_BRACE, function));
+            } else {
+                openBody(function, body -> {
+                    function.setBody(body);
+                    function.setEnd(require(RIGHT_BRACE, function));
+                });
             }
-            currentFunctionDefinition.setBody(body);
-            currentFunctionDefinition.setEnd(require(RIGHT_BRACE, currentFunctionDefinition));
 
-            return currentFunctionDefinition;
+            return function;
         }
         else {
             return parseReturnStatement(currentFunctionDefinition);
         }
     }
 
+    // parses the statements of a function body, up to its closing brace
+    private List<Statement> parseFunctionBody(FunctionDefinitionStatement function) {
+        List<Statement> body = new ArrayList<>();
+        openBody(function, body::addAll);
+        parseBodies(bodies.size() - 1);
+        return body;
+    }
+
+    // Skips to the brace closing the body of function, returning a parser for the tokens
+    // in between that stops at that brace
+    private Supplier<List<Statement>> skipFunctionBody(FunctionDefinitionStatement function) {
+        int start = tokens.getCurrentToken().getStart();
+        int depth = 0;
+        while (tokens.hasMoreTokens() && !(depth == 0 && tokens.match(RIGHT_BRACE))) {
+            if (tokens.match(LEFT_BRACE)) {
+                depth++;
+            } else if (tokens.match(RIGHT_BRACE)) {
+                depth--;
+            }
+            tokens.skipToken();
+        }
+        TokenList body = tokens.fork(start, tokens.getCurrentToken().getStart());
+        boolean precedenceClimbing = this.precedenceClimbing;
+        int maxErrors = this.maxErrors;
+        Atoms atoms = this.atoms;
+        return () -> {
+            CatScriptParser parser = new CatScriptParser();
+            parser.tokens = body;
+            parser.atoms = atoms;
+            parser.precedenceClimbing = precedenceClimbing;
+            parser.lazyFunctionBodies = true;
+            parser.maxErrors = maxErrors;
+            // a return nested in the first statement of the body needs to know its function
+            parser.currentFunctionDefinition = function;
+            return parser.parseFunctionBody(function);
+        };
+    }
+
     private Statement parseReturnStatement(FunctionDefinitionStatement functionDefinitionStatement) {
         if (tokens.match(RETURN)) {
             ReturnStatement returnStatement = new ReturnStatement();
@@ -363,7 +843,202 @@ public class CatScriptParser {
     //============================================================
 
     private Expression parseExpression() {
-        return parseEqualityExpression();
+        if (precedenceClimbing) {
+            return parseBinaryExpression(EQUALITY);
+        } else {
+            return parseEqualityExpression();
+        }
+    }
+
+    // What an expression that is still being parsed is waiting on.  The expression parser
+    // keeps these on an explicit stack instead of recursing, so nesting is only limited by
+    // the heap
+    private static final class PendingExpression {
+        static final int BINARY = 0;
+        static final int UNARY = 1;
+        static final int PARENTHESIZED = 2;
+        static final int LIST = 3;
+        static final int CALL = 4;
+
+        final int kind;
+        final Token token;
+        int minPrecedence;
+        int precedence;
+        Token operator;
+        Expression leftHandSide;
+        List<Expression> expressions;
+
+        PendingExpression(int kind, Token token) {
+            this.kind = kind;
+            this.token = token;
+        }
+
+        static PendingExpression binary(int minPrecedence) {
+            PendingExpression pending = new PendingExpression(BINARY, null);
+            pending.minPrecedence = minPrecedence;
+            return pending;
+        }
+    }
+
+    // Precedence climbing with an explicit stack, building the same trees as recursive
+    // descent: binary operators climb by precedence, all of them left associative
+    private Expression parseBinaryExpression(int minPrecedence) {
+        Deque<PendingExpression> stack = new ArrayDeque<>();
+        stack.push(PendingExpression.binary(minPrecedence));
+        boolean unaryAllowed = true;
+        Expression value = null;
+        while (true) {
+            if (value == null) {
+                // an operand is needed next
+                if (unaryAllowed && tokens.match(MINUS, NOT)) {
+                    stack.push(new PendingExpression(PendingExpression.UNARY, tokens.consumeToken()));
+                } else if (tokens.match(LEFT_PAREN)) {
+                    tokens.consumeToken();
+                    stack.push(new PendingExpression(PendingExpression.PARENTHESIZED, null));
+                    stack.push(PendingExpression.binary(EQUALITY));
+                    unaryAllowed = true;
+                } else if (tokens.match(LEFT_BRACKET)) {
+                    tokens.consumeToken();
+                    if (tokens.match(RIGHT_BRACKET)) {
+                        tokens.consumeToken();
+                        value = new ListLiteralExpression(Collections.emptyList());
+                    } else {
+                        PendingExpression list = new PendingExpression(PendingExpression.LIST, null);
+                        list.expressions = new ArrayList<>();
+                        stack.push(list);
+                        // list elements are primary expressions
+                        unaryAllowed = false;
+                    }
+                } else if (tokens.match(IDENTIFIER)) {
+                    Token identifierToken = tokens.consumeToken();
+                    if (!tokens.match(LEFT_PAREN)) {
+                        IdentifierExpression identifierExpression = new IdentifierExpression(identifierToken.getStringValue(), atoms);
+                        identifierExpression.setToken(identifierToken);
+                        value = identifierExpression;
+                    } else {
+                        tokens.consumeToken();
+                        if (tokens.match(RIGHT_PAREN)) {
+                            tokens.consumeToken();
+                            value = new FunctionCallExpression(identifierToken.getStringValue(), Collections.emptyList(), atoms);
+                        } else {
+                            PendingExpression call = new PendingExpression(PendingExpression.CALL, identifierToken);
+                            call.expressions = new ArrayList<>();
+                            stack.push(call);
+                            stack.push(PendingExpression.binary(EQUALITY));
+                            unaryAllowed = true;
+                        }
+                    }
+                } else {
+                    value = parseLiteralExpression();
+                }
+                continue;
+            }
+
+            PendingExpression pending = stack.peek();
+            switch (pending.kind) {
+                case PendingExpression.BINARY:
+                    if (pending.leftHandSide == null) {
+                        pending.leftHandSide = value;
+                    } else {
+                        pending.leftHandSide = binaryExpression(pending.precedence, pending.operator, pending.leftHandSide, value);
+                    }
+                    value = null;
+                    int precedence = PRECEDENCE[tokens.getCurrentType().ordinal()];
+                    if (precedence >= pending.minPrecedence) {
+                        pending.operator = tokens.consumeToken();
+                        pending.precedence = precedence;
+                        stack.push(PendingExpression.binary(precedence + 1));
+                        unaryAllowed = true;
+                    } else {
+                        stack.pop();
+                        value = pending.leftHandSide;
+                    }
+                    break;
+                case PendingExpression.UNARY:
+                    stack.pop();
+                    UnaryExpression unaryExpression = new UnaryExpression(pending.token, value);
+                    unaryExpression.setStart(pending.token);
+                    unaryExpression.setEnd(value.getEnd());
+                    value = unaryExpression;
+                    break;
+                case PendingExpression.PARENTHESIZED:
+                    stack.pop();
+                    if (!tokens.matchAndConsume(RIGHT_PAREN)) {
+                        value = syntaxErrorExpression();
+                    } else {
+                        value = new ParenthesizedExpression(value);
+                    }
+                    break;
+                case PendingExpression.LIST:
+                    pending.expressions.add(value);
+                    value = null;
+                    if (tokens.match(EOF)) {
+                        stack.pop();
+                        ListLiteralExpression listExpression = new ListLiteralExpression(pending.expressions);
+                        require(RIGHT_BRACKET, listExpression, ErrorType.UNTERMINATED_LIST);
+                        value = listExpression;
+                    } else if (!tokens.match(COMMA) && !tokens.match(RIGHT_BRACKET)) {
+                        stack.pop();
+                        value = syntaxErrorExpression();
+                    } else {
+                        tokens.matchAndConsume(COMMA);
+                        if (tokens.match(RIGHT_BRACKET)) {
+                            stack.pop();
+                            tokens.consumeToken();
+                            value = new ListLiteralExpression(pending.expressions);
+                        } else {
+                            unaryAllowed = false;
+                        }
+                    }
+                    break;
+                default:
+                    pending.expressions.add(value);
+                    value = null;
+                    String name = pending.token.getStringValue();
+                    if (tokens.match(EOF)) {
+                        stack.pop();
+                        FunctionCallExpression functionExpression = new FunctionCallExpression(name, pending.expressions, atoms);
+                        require(RIGHT_PAREN, functionExpression, ErrorType.UNTERMINATED_ARG_LIST);
+                        value = functionExpression;
+                    } else if (!tokens.match(COMMA) && !tokens.match(RIGHT_PAREN)) {
+                        stack.pop();
+                        value = syntaxErrorExpression();
+                    } else {
+                        tokens.matchAndConsume(COMMA);
+                        if (tokens.match(RIGHT_PAREN)) {
+                            stack.pop();
+                            tokens.consumeToken();
+                            value = new FunctionCallExpression(name, pending.expressions, atoms);
+                        } else {
+                            stack.push(PendingExpression.binary(EQUALITY));
+                            unaryAllowed = true;
+                        }
+                    }
+            }
+            if (stack.isEmpty()) {
+                return value;
+            }
+        }
+    }
+
+    private Expression binaryExpression(int precedence, Token operator, Expression leftHandSide, Expression rightHandSide) {
+        Expression binaryExpression;
+        switch (precedence) {
+            case EQUALITY:
+                binaryExpression = new EqualityExpression(operator, leftHandSide, rightHandSide);
+                break;
+            case COMPARISON:
+                binaryExpression = new ComparisonExpression(operator, leftHandSide, rightHandSide);
+                break;
+            case ADDITIVE:
+                binaryExpression = new AdditiveExpression(operator, leftHandSide, rightHandSide);
+                break;
+            default:
+                binaryExpression = new FactorExpression(operator, leftHandSide, rightHandSide);
+        }
+        binaryExpression.setStart(leftHandSide.getStart());
+        binaryExpression.setEnd(rightHandSide.getEnd());
+        return binaryExpression;
     }
 
     private Expression parseEqualityExpression() {
@@ -436,13 +1111,13 @@ public class CatScriptParser {
             tokens.consumeToken();
             Expression containedExpression = parseExpression();
             if (!tokens.matchAndConsume(RIGHT_PAREN)) {
-                return new SyntaxErrorExpression(tokens.consumeToken());
+                return syntaxErrorExpression();
             } else {
                 return new ParenthesizedExpression(containedExpression);
             }
         } else if (tokens.match(LEFT_BRACKET)) {
             tokens.consumeToken();
-            List<Expression> tokenList = new LinkedList<>();
+            List<Expression> tokenList = new ArrayList<>();
             while (!tokens.match(RIGHT_BRACKET)) {
                 tokenList.add(parsePrimaryExpression());
                 if (tokens.match(EOF)) {
@@ -450,7 +1125,7 @@ public class CatScriptParser {
                     require(RIGHT_BRACKET, listExpression, ErrorType.UNTERMINATED_LIST);
                     return listExpression;
                 } else if (!tokens.match(COMMA) && !tokens.match(RIGHT_BRACKET)) {
-                    return new SyntaxErrorExpression(tokens.consumeToken());
+                    return syntaxErrorExpression();
                 } else if (tokens.match(COMMA)) {
                     tokens.consumeToken();
                 }
@@ -459,7 +1134,39 @@ public class CatScriptParser {
 
             return new ListLiteralExpression(tokenList);
 
-        } else if (tokens.match(INTEGER)) {
+        } else if (tokens.match(IDENTIFIER)) {
+            Token identifierToken = tokens.consumeToken();
+            if (!tokens.match(LEFT_PAREN)) {
+                IdentifierExpression identifierExpression = new IdentifierExpression(identifierToken.getStringValue(), atoms);
+                identifierExpression.setToken(identifierToken);
+                return identifierExpression;
+            } else {
+                tokens.consumeToken();
+                List<Expression> tokenArgumentList = new ArrayList<>();
+                while (!tokens.match(RIGHT_PAREN)) {
+                    tokenArgumentList.add(parseExpression());
+                    if (tokens.match(EOF)) {
+                        FunctionCallExpression functionExpression = new
+                                FunctionCallExpression(identifierToken.getStringValue(), tokenArgumentList, atoms);
+                        require(RIGHT_PAREN, functionExpression, ErrorType.UNTERMINATED_ARG_LIST);
+                        return functionExpression;
+                    } else if (!tokens.match(COMMA) && !tokens.match(RIGHT_PAREN)) {
+                        return syntaxErrorExpression();
+                    } else if (tokens.match(COMMA)) {
+                        tokens.consumeToken();
+                    }
+                }
+                tokens.consumeToken();
+
+                return new FunctionCallExpression(identifierToken.getStringValue(), tokenArgumentList, atoms);
+            }
+        } else {
+            return parseLiteralExpression();
+        }
+    }
+
+    private Expression parseLiteralExpression() {
+        if (tokens.match(INTEGER)) {
             Token integerToken = tokens.consumeToken();
             IntegerLiteralExpression integerExpression = new IntegerLiteralExpression(integerToken.getStringValue());
             integerExpression.setToken(integerToken);
@@ -484,34 +1191,8 @@ public class CatScriptParser {
             NullLiteralExpression nullExpression = new NullLiteralExpression();
             nullExpression.setToken(nullToken);
             return nullExpression;
-        } else if (tokens.match(IDENTIFIER)) {
-            Token identifierToken = tokens.consumeToken();
-            if (!tokens.match(LEFT_PAREN)) {
-                IdentifierExpression identifierExpression = new IdentifierExpression(identifierToken.getStringValue());
-                identifierExpression.setToken(identifierToken);
-                return identifierExpression;
-            } else {
-                tokens.consumeToken();
-                List<Expression> tokenArgumentList = new LinkedList<>();
-                while (!tokens.match(RIGHT_PAREN)) {
-                    tokenArgumentList.add(parseExpression());
-                    if (tokens.match(EOF)) {
-                        FunctionCallExpression functionExpression = new
-                                FunctionCallExpression(identifierToken.getStringValue(), tokenArgumentList);
-                        require(RIGHT_PAREN, functionExpression, ErrorType.UNTERMINATED_ARG_LIST);
-                        return functionExpression;
-                    } else if (!tokens.match(COMMA) && !tokens.match(RIGHT_PAREN)) {
-                        return new SyntaxErrorExpression(tokens.consumeToken());
-                    } else if (tokens.match(COMMA)) {
-                        tokens.consumeToken();
-                    }
-                }
-                tokens.consumeToken();
-
-                return new FunctionCallExpression(identifierToken.getStringValue(), tokenArgumentList);
-            }
         } else {
-            return new SyntaxErrorExpression(tokens.consumeToken());
+            return syntaxErrorExpression();
         }
     }
 
@@ -522,10 +1203,16 @@ public class CatScriptParser {
         return require(type, elt, ErrorType.UNEXPECTED_TOKEN);
     }
 
+    private Expression syntaxErrorExpression() {
+        errorCount++;
+        return new SyntaxErrorExpression(tokens.consumeToken());
+    }
+
     private Token require(TokenType type, ParseElement elt, ErrorType msg) {
         if(tokens.match(type)){
             return tokens.consumeToken();
         } else {
+            errorCount++;
             elt.addError(msg, tokens.getCurrentToken());
             return tokens.getCurrentToken();
         }
@@ -1,9 +1,9 @@
 package edu.montana.csci.csci468.parser;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
+// There is one instance of each type, list types included, so types compare with ==
 public class CatscriptType {
 
     public static final CatscriptType INT = new CatscriptType("int", Integer.class);
@@ -15,8 +15,13 @@ public class CatscriptType {
 
     private final String name;
     private final Class javaClass;
+    // the list of this type, made the first time it is asked for
+    private volatile ListType listType;
 
-    public CatscriptType(String name, Class javaClass) {
+    private static final AtomicReferenceFieldUpdater<CatscriptType, ListType> LIST_TYPE =
+            AtomicReferenceFieldUpdater.newUpdater(CatscriptType.class, ListType.class, "listType");
+
+    private CatscriptType(String name, Class javaClass) {
         this.name = name;
         this.javaClass = javaClass;
     }
@@ -32,13 +37,14 @@ public class CatscriptType {
         return false;
     }
 
-    // TODO memoize this call
-    static HashMap<CatscriptType, ListType> cache = new HashMap<>();
+    // Without locking, since programs are parsed and verified on several threads.  Threads
+    // racing to make the same list type each build one, and all of them return the one that
+    // was published first
     public static CatscriptType getListType(CatscriptType type) {
-        ListType listType = cache.get(type);
+        ListType listType = type.listType;
         if (listType == null) {
-            listType = new ListType(type);
-            cache.put(type, listType);
+            LIST_TYPE.compareAndSet(type, null, new ListType(type));
+            listType = type.listType;
         }
         return listType;
     }
@@ -48,39 +54,32 @@ public class CatscriptType {
         return name;
     }
 
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        CatscriptType that = (CatscriptType) o;
-        return Objects.equals(name, that.name);
-    }
-
-    @Override
-    public int hashCode() {
-        return Objects.hash(name);
-    }
-
     public Class getJavaType() {
         return javaClass;
     }
 
+    // Lists nest as deeply as list literals do, so a list type is named only when it is printed
+    // and is compared with another one in a loop
     public static class ListType extends CatscriptType {
         private final CatscriptType componentType;
-        public ListType(CatscriptType componentType) {
-            super("list<" + componentType.toString() + ">", List.class);
+        private ListType(CatscriptType componentType) {
+            super(null, List.class);
             this.componentType = componentType;
         }
 
         @Override
         public boolean isAssignableFrom(CatscriptType type) {
-            if (type == NULL) {
-                return true;
-            } else if (type instanceof ListType) {
-                ListType otherList = (ListType) type;
-                return this.componentType.isAssignableFrom(otherList.componentType);
+            CatscriptType listType = this;
+            while (listType instanceof ListType) {
+                if (type == NULL) {
+                    return true;
+                } else if (!(type instanceof ListType)) {
+                    return false;
+                }
+                listType = ((ListType) listType).componentType;
+                type = ((ListType) type).componentType;
             }
-            return false;
+            return listType.isAssignableFrom(type);
         }
 
         public CatscriptType getComponentType() {
@@ -89,7 +88,19 @@ public class CatscriptType {
 
         @Override
         public String toString() {
-            return super.toString() + "<" + componentType.toString() + ">";
+            StringBuilder name = new StringBuilder();
+            int depth = 0;
+            CatscriptType type = this;
+            while (type instanceof ListType) {
+                name.append("list<");
+                depth++;
+                type = ((ListType) type).componentType;
+            }
+            name.append(type);
+            for (int i = 0; i < depth; i++) {
+                name.append('>');
+            }
+            return name.toString();
         }
     }
 
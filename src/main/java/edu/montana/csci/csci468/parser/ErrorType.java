@@ -1,20 +1,31 @@
 package edu.montana.csci.csci468.parser;
 
 public enum ErrorType {
-    UNTERMINATED_LIST("Unterminated list literal"),
-    UNTERMINATED_ARG_LIST("Unterminated argument list"),
+    UNTERMINATED_LIST("Unterminated list literal", true),
+    UNTERMINATED_ARG_LIST("Unterminated argument list", true),
     BAD_TYPE_NAME("Bad Type Name"),
     DUPLICATE_NAME("This name is already used in this program"),
     INCOMPATIBLE_TYPES("Incompatible types"),
     UNKNOWN_NAME("This symbol is not defined"),
     ARG_MISMATCH("Wrong number of arguments"),
     MISSING_RETURN_STATEMENT("Missing return statement in function"),
-    UNEXPECTED_TOKEN("Unexpected Token");
+    UNEXPECTED_TOKEN("Unexpected Token", true);
 
     private final String message;
+    private final boolean syntaxError;
 
     ErrorType(String string) {
+        this(string, false);
+    }
+
+    ErrorType(String string, boolean syntaxError) {
         message = string;
+        this.syntaxError = syntaxError;
+    }
+
+    // syntax errors are found by the parser, the rest by validation
+    public boolean isSyntaxError() {
+        return syntaxError;
     }
 
     @Override
@@ -8,9 +8,15 @@ import edu.montana.csci.csci468.tokenizer.Token;
 import org.objectweb.asm.Opcodes;
 
 import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 
 import static edu.montana.csci.csci468.bytecode.ByteCodeGenerator.internalNameFor;
 
@@ -19,20 +25,20 @@ public abstract class ParseElement {
     protected ParseElement parent;
     private Token start;
     private Token end;
-    private List<ParseElement> children;
+    // Most elements are leaves without errors, so they share an empty child array and only
+    // allocate their error list when they get an error
+    private static final ParseElement[] NO_CHILDREN = new ParseElement[0];
+    private ParseElement[] children = NO_CHILDREN;
+    private int childCount;
     private List<ParseError> errors;
 
-    public ParseElement() {
-        this.errors = new LinkedList<>();
-        this.children = new LinkedList<>();
-    }
-
+    // looked up in a loop, as blocks can nest too deeply to recurse up through
     public CatScriptProgram getProgram() {
-        if (this.getParent() instanceof CatScriptProgram) {
-            return (CatScriptProgram) this.getParent();
-        } else {
-            return getParent().getProgram();
+        ParseElement parent = getParent();
+        while (!(parent instanceof CatScriptProgram)) {
+            parent = parent.getParent();
         }
+        return (CatScriptProgram) parent;
     }
 
     public void setStart(Token start) {
@@ -61,11 +67,11 @@ public abstract class ParseElement {
     }
 
     public List<ParseError> getErrors() {
-        return errors;
+        return errors == null ? Collections.emptyList() : errors;
     }
 
     public boolean hasErrors() {
-        return !errors.isEmpty();
+        return errors != null;
     }
 
     public void addError(ErrorType errorType, Object... args) {
@@ -73,17 +79,47 @@ public abstract class ParseElement {
     }
 
     public void addError(ErrorType errorMessage, Token token, Object... args) {
+        if (errors == null) {
+            errors = new ArrayList<>(2);
+        }
         errors.add(new ParseError(token, errorMessage, args));
     }
 
     protected <T extends ParseElement> T addChild(T element) {
+        if (childCount == children.length) {
+            children = Arrays.copyOf(children, Math.max(2, childCount * 2));
+        }
         element.parent = this;
-        children.add(element);
+        children[childCount++] = element;
         return element;
     }
 
+    // adds elements as children, returning them as a fixed size list backed by an array
+    @SuppressWarnings("unchecked")
+    protected <T extends ParseElement> List<T> addChildren(List<? extends T> elements) {
+        if (elements.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (childCount + elements.size() > children.length) {
+            children = Arrays.copyOf(children, childCount + elements.size());
+        }
+        T[] added = (T[]) elements.toArray(new ParseElement[0]);
+        for (T element : added) {
+            addChild(element);
+        }
+        return Arrays.asList(added);
+    }
+
     public List<ParseElement> getChildren() {
-        return children;
+        return Collections.unmodifiableList(Arrays.asList(children).subList(0, childCount));
+    }
+
+    public int getChildCount() {
+        return childCount;
+    }
+
+    public ParseElement getChild(int index) {
+        return children[index];
     }
 
     @Override
@@ -91,18 +127,45 @@ public abstract class ParseElement {
         return this.getClass().getSimpleName();
     }
 
+    // drops the errors validation found on this element and its descendants, keeping syntax errors
+    public void clearValidationErrors() {
+        walk(element -> {
+            if (element.errors != null) {
+                element.errors.removeIf(error -> !error.getErrorType().isSyntaxError());
+                if (element.errors.isEmpty()) {
+                    element.errors = null;
+                }
+            }
+        });
+    }
+
+    public int countErrors() {
+        int[] count = new int[1];
+        walk(element -> count[0] += element.getErrors().size());
+        return count[0];
+    }
+
+    // how many errors verify reports at most
+    protected int getMaxErrors() {
+        return Integer.MAX_VALUE;
+    }
+
     public boolean hasError(ErrorType errorMessage) {
-        return errors.stream().anyMatch(parseError -> Objects.equals(parseError.getErrorType(), errorMessage));
+        return getErrors().stream().anyMatch(parseError -> Objects.equals(parseError.getErrorType(), errorMessage));
     }
 
     private void registerFunctions(SymbolTable symbolTable) {
-        for (ParseElement child : children) {
+        for (int i = 0; i < childCount; i++) {
+            ParseElement child = children[i];
             if (child instanceof FunctionDefinitionStatement) {
                 FunctionDefinitionStatement func = (FunctionDefinitionStatement) child;
-                if (symbolTable.hasSymbol(func.getName())) {
-                    func.addError(ErrorType.DUPLICATE_NAME);
+                if (symbolTable.hasSymbol(func.getAtom())) {
+                    // a function verified before already has this error
+                    if (!func.isVerified()) {
+                        func.addError(ErrorType.DUPLICATE_NAME);
+                    }
                 } else {
-                    symbolTable.registerFunction(func.getName(), func);
+                    symbolTable.registerFunction(func.getAtom(), func);
                 }
             }
         }
@@ -110,23 +173,40 @@ public abstract class ParseElement {
 
 
     public final void verify() {
-        SymbolTable symbolTable = new SymbolTable();
+        SymbolTable symbolTable = newSymbolTable();
         registerFunctions(symbolTable);
         validate(symbolTable);
 
         final LinkedList<ParseError> collector = new LinkedList<>();
         collectErrors(collector, this);
-        if (collector.size() > 0) {
+        if (collector.size() > getMaxErrors()) {
+            throw new ParseErrorException(new LinkedList<>(collector.subList(0, getMaxErrors())));
+        } else if (collector.size() > 0) {
             throw new ParseErrorException(collector);
         }
     }
 
+    protected SymbolTable newSymbolTable() {
+        return new SymbolTable();
+    }
+
     public abstract void validate(SymbolTable symbolTable);
 
     private void collectErrors(LinkedList<ParseError> collector, ParseElement parseElement){
-        collector.addAll(parseElement.getErrors());
-        for (ParseElement child : parseElement.getChildren()) {
-            collectErrors(collector, child);
+        parseElement.walk(element -> collector.addAll(element.getErrors()));
+    }
+
+    // Visits this element and its descendants in pre-order.  The pending elements are kept
+    // on an explicit stack, so how deeply the tree nests is only limited by the heap
+    public void walk(Consumer<ParseElement> visitor) {
+        Deque<ParseElement> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            ParseElement element = pending.pop();
+            visitor.accept(element);
+            for (int i = element.childCount - 1; i >= 0; i--) {
+                pending.push(element.children[i]);
+            }
         }
     }
 
@@ -157,7 +237,7 @@ public abstract class ParseElement {
         }
         if (type.equals(CatscriptType.BOOLEAN)) {
             code.addMethodInstruction(Opcodes.INVOKEVIRTUAL, internalNameFor(Boolean.class),
-                    "booleanValue", "()Z;");
+                    "booleanValue", "()Z");
         }
     }
 
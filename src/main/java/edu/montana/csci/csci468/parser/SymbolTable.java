@@ -1,55 +1,120 @@
 package edu.montana.csci.csci468.parser;
 
+import edu.montana.csci.csci468.parser.statements.CatScriptProgram;
 import edu.montana.csci.csci468.parser.statements.FunctionDefinitionStatement;
+import edu.montana.csci.csci468.util.AtomMap;
 
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.Map;
 
 public class SymbolTable {
 
-    LinkedList<Map<String, Object>> symbolStack = new LinkedList<>();
+    // scopes are keyed by the atom ids of the symbol names
+    LinkedList<Scope> symbolStack = new LinkedList<>();
+    // how many of the global variables, in the order they were registered, can be seen
+    private int visibleGlobals = Integer.MAX_VALUE;
+    // the program being validated, which gives out the slots of globals
+    private CatScriptProgram program;
+
+    // Each variable gets the next free slot of the scope declaring it, except in the global
+    // scope of a program, where the program gives each name a slot it keeps, see
+    // CatScriptProgram.getGlobalSlot
+    static final class Scope {
+        final AtomMap<Object> symbols;
+        int size;
+
+        Scope(AtomMap<Object> symbols, int size) {
+            this.symbols = symbols;
+            this.size = size;
+        }
+    }
+
+    // a variable's type, the slot it was given in its scope and the order it was registered in
+    private static final class Variable {
+        final CatscriptType type;
+        final int slot;
+        final int order;
+
+        Variable(CatscriptType type, int slot, int order) {
+            this.type = type;
+            this.slot = slot;
+            this.order = order;
+        }
+    }
 
     public SymbolTable(){
-        HashMap<String, Object> globalScope = new HashMap<>();
-        symbolStack.push(globalScope);
+        this(null);
+    }
+
+    public SymbolTable(CatScriptProgram program) {
+        this.program = program;
+        symbolStack.push(new Scope(new AtomMap<>(), 0));
     }
 
-    public boolean hasSymbol(String name) {
+    public boolean hasSymbol(int name) {
         return getSymbol(name) != null;
     }
 
-    private Object getSymbol(String name) {
-        Iterator<Map<String, Object>> mapIterator = symbolStack.descendingIterator();
-        while (mapIterator.hasNext()) {
-            Map<String, Object> next =  mapIterator.next();
-            Object val = next.get(name);
-            if (val != null) {
+    private Object getSymbol(int name) {
+        Iterator<Scope> scopeIterator = symbolStack.descendingIterator();
+        for (int depth = 0; scopeIterator.hasNext(); depth++) {
+            Object val = scopeIterator.next().symbols.get(name);
+            if (val != null && isVisible(val, depth)) {
                 return val;
             }
         }
         return null;
     }
 
-    public void registerFunction(String name, FunctionDefinitionStatement func) {
-        symbolStack.peek().put(name, func);
+    // only the global scope has variables registered after what can be seen
+    private boolean isVisible(Object symbol, int depth) {
+        return depth > 0 || !(symbol instanceof Variable) || ((Variable) symbol).order < visibleGlobals;
     }
 
-    public void registerSymbol(String name, CatscriptType type) {
-        symbolStack.peek().put(name, type);
+    public void registerFunction(int name, FunctionDefinitionStatement func) {
+        symbolStack.peek().symbols.put(name, func);
     }
 
-    public CatscriptType getSymbolType(String name) {
+    public void registerSymbol(int name, CatscriptType type) {
+        Scope scope = symbolStack.peek();
+        int order = scope.size++;
+        int slot = symbolStack.size() == 1 && program != null ? program.getGlobalSlot(name) : order;
+        scope.symbols.put(name, new Variable(type, slot, order));
+    }
+
+    public CatscriptType getSymbolType(int name) {
         Object object = getSymbol(name);
-        if (object instanceof CatscriptType) {
-            return (CatscriptType) object;
+        if (object instanceof Variable) {
+            return ((Variable) object).type;
         } else {
             return null;
         }
     }
 
-    public FunctionDefinitionStatement getFunction(String name) {
+    // How many scopes in from the global scope the variable is declared, zero being the global
+    // scope itself, or -1 if there is no such variable
+    public int getDepth(int name) {
+        Iterator<Scope> scopeIterator = symbolStack.descendingIterator();
+        for (int depth = 0; scopeIterator.hasNext(); depth++) {
+            Object symbol = scopeIterator.next().symbols.get(name);
+            if (symbol instanceof Variable && isVisible(symbol, depth)) {
+                return depth;
+            }
+        }
+        return -1;
+    }
+
+    // the slot of the variable in the scope declaring it, or -1 if there is no such variable
+    public int getSlot(int name) {
+        Object object = getSymbol(name);
+        if (object instanceof Variable) {
+            return ((Variable) object).slot;
+        } else {
+            return -1;
+        }
+    }
+
+    public FunctionDefinitionStatement getFunction(int name) {
         Object object = getSymbol(name);
         if (object instanceof FunctionDefinitionStatement) {
             return (FunctionDefinitionStatement) object;
@@ -58,11 +123,34 @@ public class SymbolTable {
         }
     }
 
+    // a copy of the scopes as they are now, which later changes to this table leave alone
+    public SymbolTable snapshot() {
+        SymbolTable snapshot = new SymbolTable(program);
+        snapshot.symbolStack.clear();
+        for (Scope scope : symbolStack) {
+            snapshot.symbolStack.add(new Scope(scope.symbols.copy(), scope.size));
+        }
+        snapshot.visibleGlobals = visibleGlobals;
+        return snapshot;
+    }
+
+    // A table over this one's global scope that only sees the globals registered so far.  The
+    // global scope is shared rather than copied, so the view can be read from several threads
+    // once nothing registers globals in this table anymore
+    public SymbolTable globalView() {
+        SymbolTable view = new SymbolTable(program);
+        view.symbolStack.clear();
+        view.symbolStack.add(symbolStack.getLast());
+        view.visibleGlobals = Math.min(visibleGlobals, symbolStack.getLast().size);
+        return view;
+    }
+
     public void pushScope() {
-        symbolStack.push(new HashMap<>());
+        symbolStack.push(new Scope(new AtomMap<>(), 0));
     }
 
-    public void popScope() {
-        symbolStack.pop();
+    // returns how many slots the scope's variables took, which is the size of its runtime frame
+    public int popScope() {
+        return symbolStack.pop().size;
     }
 }
@@ -10,32 +10,25 @@ import edu.montana.csci.csci468.tokenizer.Token;
 import edu.montana.csci.csci468.tokenizer.TokenType;
 import org.objectweb.asm.Opcodes;
 
-public class AdditiveExpression extends Expression {
-
-    private final Token operator;
-    private final Expression leftHandSide;
-    private final Expression rightHandSide;
+public class AdditiveExpression extends BinaryExpression {
 
     public AdditiveExpression(Token operator, Expression leftHandSide, Expression rightHandSide) {
-        this.leftHandSide = addChild(leftHandSide);
-        this.rightHandSide = addChild(rightHandSide);
-        this.operator = operator;
+        super(operator, leftHandSide, rightHandSide);
     }
 
-    public Expression getLeftHandSide() {
-        return leftHandSide;
-    }
-    public Expression getRightHandSide() {
-        return rightHandSide;
-    }
     public boolean isAdd() {
         return operator.getType() == TokenType.PLUS;
     }
 
     @Override
-    public void validate(SymbolTable symbolTable) {
-        leftHandSide.validate(symbolTable);
-        rightHandSide.validate(symbolTable);
+    protected void validateOperands(SymbolTable symbolTable) {
+        // a string on either side makes this a string, and a string anywhere along a chain of
+        // additions has already made every addition above it one
+        if (leftHandSide.getType().equals(CatscriptType.STRING) || rightHandSide.getType().equals(CatscriptType.STRING)) {
+            setType(CatscriptType.STRING);
+        } else {
+            setType(CatscriptType.INT);
+        }
         if (getType().equals(CatscriptType.INT)) {
             if (!leftHandSide.getType().equals(CatscriptType.INT)) {
                 leftHandSide.addError(ErrorType.INCOMPATIBLE_TYPES);
@@ -50,28 +43,12 @@ public class AdditiveExpression extends Expression {
         }
     }
 
-    @Override
-    public CatscriptType getType() {
-        if (leftHandSide.getType().equals(CatscriptType.STRING) || rightHandSide.getType().equals(CatscriptType.STRING)) {
-            return CatscriptType.STRING;
-        } else {
-            return CatscriptType.INT;
-        }
-    }
-
-    @Override
-    public String toString() {
-        return super.toString() + "[" + operator.getStringValue() + "]";
-    }
-
     //==============================================================
     // Implementation
     //==============================================================
 
     @Override
-    public Object evaluate(CatscriptRuntime runtime) {
-        Object lhsValue = leftHandSide.evaluate(runtime);
-        Object rhsValue = rightHandSide.evaluate(runtime);
+    protected Object evaluate(Object lhsValue, Object rhsValue) {
         if (getType().equals(CatscriptType.INT)) {
             if (isAdd()) {
                 return (Integer) lhsValue + (Integer) rhsValue;
@@ -91,21 +68,23 @@ public class AdditiveExpression extends Expression {
     }
 
     @Override
-    public void compile(ByteCodeGenerator code) {
+    protected void compileLeftHandSideValue(ByteCodeGenerator code) {
+        if (!getType().equals(CatscriptType.INT)) {
+            box(code, getLeftHandSide().getType());
+            code.addMethodInstruction(Opcodes.INVOKESTATIC, ByteCodeGenerator.internalNameFor(String.class),
+                    "valueOf", "(Ljava/lang/Object;)Ljava/lang/String;");
+        }
+    }
+
+    @Override
+    protected void compileOperator(ByteCodeGenerator code) {
         if (getType().equals(CatscriptType.INT)) {
-            getLeftHandSide().compile(code);
-            getRightHandSide().compile(code);
             if (isAdd()) {
                 code.addInstruction(Opcodes.IADD);
             } else {
                 code.addInstruction(Opcodes.ISUB);
             }
         } else {
-            getLeftHandSide().compile(code);
-            box(code, getLeftHandSide().getType());
-            code.addMethodInstruction(Opcodes.INVOKESTATIC, ByteCodeGenerator.internalNameFor(String.class),
-                    "valueOf", "(Ljava/lang/Object;)Ljava/lang/String;");
-            getRightHandSide().compile(code);
             box(code, getRightHandSide().getType());
             code.addMethodInstruction(Opcodes.INVOKESTATIC, ByteCodeGenerator.internalNameFor(String.class),
                     "valueOf", "(Ljava/lang/Object;)Ljava/lang/String;");
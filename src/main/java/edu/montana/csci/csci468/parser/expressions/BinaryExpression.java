@@ -0,0 +1,76 @@
+package edu.montana.csci.csci468.parser.expressions;
+
+import edu.montana.csci.csci468.bytecode.ByteCodeGenerator;
+import edu.montana.csci.csci468.eval.CatscriptRuntime;
+import edu.montana.csci.csci468.parser.SymbolTable;
+import edu.montana.csci.csci468.tokenizer.Token;
+
+// The shared base of the operators with a left and a right hand side. Long chains like
+// a + b + c + ... nest down the left hand side, and go on the explicit stack of Expression
+public abstract class BinaryExpression extends Expression {
+
+    protected final Token operator;
+    protected final Expression leftHandSide;
+    protected final Expression rightHandSide;
+
+    protected BinaryExpression(Token operator, Expression leftHandSide, Expression rightHandSide) {
+        this.leftHandSide = addChild(leftHandSide);
+        this.rightHandSide = addChild(rightHandSide);
+        this.operator = operator;
+    }
+
+    public Token getOperator() {
+        return operator;
+    }
+
+    public Expression getLeftHandSide() {
+        return leftHandSide;
+    }
+
+    public Expression getRightHandSide() {
+        return rightHandSide;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "[" + operator.getStringValue() + "]";
+    }
+
+    @Override
+    protected abstract void validateOperands(SymbolTable symbolTable);
+
+    //==============================================================
+    // Implementation
+    //==============================================================
+
+    @Override
+    public final Object evaluate(CatscriptRuntime runtime) {
+        if (isTooDeepToRecurse()) {
+            return evaluateOnStack(runtime);
+        }
+        return evaluate(leftHandSide.evaluate(runtime), rightHandSide.evaluate(runtime));
+    }
+
+    @Override
+    protected final Object evaluateOperands(CatscriptRuntime runtime, Object[] operands) {
+        return evaluate(operands[0], operands[1]);
+    }
+
+    protected abstract Object evaluate(Object lhsValue, Object rhsValue);
+
+    @Override
+    protected final void compileOperand(ByteCodeGenerator code, int index) {
+        if (index == 1) {
+            compileLeftHandSideValue(code);
+        } else if (index == 2) {
+            compileOperator(code);
+        }
+    }
+
+    // emitted after the left hand side, before the right hand side is compiled
+    protected void compileLeftHandSideValue(ByteCodeGenerator code) {
+    }
+
+    // emitted after the right hand side has been compiled
+    protected abstract void compileOperator(ByteCodeGenerator code);
+}
@@ -9,6 +9,7 @@ public class BooleanLiteralExpression extends Expression {
     private final boolean booleanValue;
 
     public BooleanLiteralExpression(boolean value) {
+        setType(CatscriptType.BOOLEAN);
         this.booleanValue = value;
     }
 
@@ -19,11 +20,6 @@ public class BooleanLiteralExpression extends Expression {
     @Override
     public void validate(SymbolTable symbolTable) {}
 
-    @Override
-    public CatscriptType getType() {
-        return CatscriptType.BOOLEAN;
-    }
-
     //==============================================================
     // Implementation
     //==============================================================
@@ -12,29 +12,11 @@ import org.objectweb.asm.Opcodes;
 
 import static edu.montana.csci.csci468.tokenizer.TokenType.*;
 
-public class ComparisonExpression extends Expression {
-
-    private final Token operator;
-    private final Expression leftHandSide;
-    private final Expression rightHandSide;
+public class ComparisonExpression extends BinaryExpression {
 
     public ComparisonExpression(Token operator, Expression leftHandSide, Expression rightHandSide) {
-        this.leftHandSide = addChild(leftHandSide);
-        this.rightHandSide = addChild(rightHandSide);
-        this.operator = operator;
-    }
-
-    public Expression getLeftHandSide() {
-        return leftHandSide;
-    }
-
-    public Expression getRightHandSide() {
-        return rightHandSide;
-    }
-
-    @Override
-    public String toString() {
-        return super.toString() + "[" + operator.getStringValue() + "]";
+        super(operator, leftHandSide, rightHandSide);
+        setType(CatscriptType.BOOLEAN);
     }
 
     public boolean isLessThan() {
@@ -51,9 +33,7 @@ public class ComparisonExpression extends Expression {
     }
 
     @Override
-    public void validate(SymbolTable symbolTable) {
-        leftHandSide.validate(symbolTable);
-        rightHandSide.validate(symbolTable);
+    protected void validateOperands(SymbolTable symbolTable) {
         if (!leftHandSide.getType().equals(CatscriptType.INT)) {
             leftHandSide.addError(ErrorType.INCOMPATIBLE_TYPES);
         }
@@ -62,19 +42,14 @@ public class ComparisonExpression extends Expression {
         }
     }
 
-    @Override
-    public CatscriptType getType() {
-        return CatscriptType.BOOLEAN;
-    }
-
     //==============================================================
     // Implementation
     //==============================================================
 
     @Override
-    public Object evaluate(CatscriptRuntime runtime) {
-        Integer lhsValue = (Integer) leftHandSide.evaluate(runtime);
-        Integer rhsValue = (Integer) rightHandSide.evaluate(runtime);
+    protected Object evaluate(Object lhs, Object rhs) {
+        Integer lhsValue = (Integer) lhs;
+        Integer rhsValue = (Integer) rhs;
         if (this.isGreater()) {
             return lhsValue > rhsValue;
         } else if (this.isLessThan()) {
@@ -92,9 +67,7 @@ public class ComparisonExpression extends Expression {
     }
 
     @Override
-    public void compile(ByteCodeGenerator code) {
-        getLeftHandSide().compile(code);
-        getRightHandSide().compile(code);
+    protected void compileOperator(ByteCodeGenerator code) {
 
         Label setToFalse = new Label();
         Label end = new Label();
@@ -9,29 +9,11 @@ import edu.montana.csci.csci468.tokenizer.TokenType;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
 
-public class EqualityExpression extends Expression {
-
-    private final Token operator;
-    private final Expression leftHandSide;
-    private final Expression rightHandSide;
+public class EqualityExpression extends BinaryExpression {
 
     public EqualityExpression(Token operator, Expression leftHandSide, Expression rightHandSide) {
-        this.leftHandSide = addChild(leftHandSide);
-        this.rightHandSide = addChild(rightHandSide);
-        this.operator = operator;
-    }
-
-    public Expression getLeftHandSide() {
-        return leftHandSide;
-    }
-
-    public Expression getRightHandSide() {
-        return rightHandSide;
-    }
-
-    @Override
-    public String toString() {
-        return super.toString() + "[" + operator.getStringValue() + "]";
+        super(operator, leftHandSide, rightHandSide);
+        setType(CatscriptType.BOOLEAN);
     }
 
     public boolean isEqual() {
@@ -39,14 +21,7 @@ public class EqualityExpression extends Expression {
     }
 
     @Override
-    public void validate(SymbolTable symbolTable) {
-        leftHandSide.validate(symbolTable);
-        rightHandSide.validate(symbolTable);
-    }
-
-    @Override
-    public CatscriptType getType() {
-        return CatscriptType.BOOLEAN;
+    protected void validateOperands(SymbolTable symbolTable) {
     }
 
     //==============================================================
@@ -54,9 +29,7 @@ public class EqualityExpression extends Expression {
     //==============================================================
 
     @Override
-    public Object evaluate(CatscriptRuntime runtime) {
-        Object lhsValue = leftHandSide.evaluate(runtime);
-        Object rhsValue = rightHandSide.evaluate(runtime);
+    protected Object evaluate(Object lhsValue, Object rhsValue) {
         if (this.isEqual()) {
             return lhsValue == rhsValue;
         } else {
@@ -70,10 +43,12 @@ public class EqualityExpression extends Expression {
     }
 
     @Override
-    public void compile(ByteCodeGenerator code) {
-        getLeftHandSide().compile(code);
+    protected void compileLeftHandSideValue(ByteCodeGenerator code) {
         box(code, getLeftHandSide().getType());
-        getRightHandSide().compile(code);
+    }
+
+    @Override
+    protected void compileOperator(ByteCodeGenerator code) {
         box(code, getRightHandSide().getType());
 
         Label setToFalse = new Label();
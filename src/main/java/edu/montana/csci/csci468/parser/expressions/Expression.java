@@ -4,9 +4,83 @@ import edu.montana.csci.csci468.bytecode.ByteCodeGenerator;
 import edu.montana.csci.csci468.eval.CatscriptRuntime;
 import edu.montana.csci.csci468.parser.CatscriptType;
 import edu.montana.csci.csci468.parser.ParseElement;
+import edu.montana.csci.csci468.parser.SymbolTable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 public abstract class Expression extends ParseElement {
 
+    // Expressions whose children nest deeper than this are validated, evaluated and compiled
+    // on an explicit stack, so how deeply expressions of any kind nest is only limited by the
+    // heap. Shallower ones recurse, which is cheaper
+    static final int MAX_RECURSION_HEIGHT = 64;
+
+    // Set once, when the node is built or when validation works it out, so that looking up
+    // the type of an expression never has to look at its children again
+    private CatscriptType type;
+    // the number of expressions on the longest path down from this one, itself included
+    private int height = 1;
+
+    public final CatscriptType getType() {
+        return type;
+    }
+
+    // also used for programs restored without validating them
+    public void setType(CatscriptType type) {
+        this.type = type;
+    }
+
+    @Override
+    protected <T extends ParseElement> T addChild(T element) {
+        if (element instanceof Expression) {
+            height = Math.max(height, ((Expression) element).height + 1);
+        }
+        return super.addChild(element);
+    }
+
+    public final boolean isTooDeepToRecurse() {
+        return height > MAX_RECURSION_HEIGHT;
+    }
+
+    private Expression operand(int index) {
+        return (Expression) getChild(index);
+    }
+
+    // What validating, evaluating and compiling the children, or operands, of an expression
+    // is made of, so that the same steps can be taken recursively or from an explicit stack
+
+    // checks this expression before its operands are validated, returning whether they are
+    protected boolean validateBeforeOperands(SymbolTable symbolTable) {
+        return true;
+    }
+
+    // checks this expression once its operands have been validated
+    protected void validateOperands(SymbolTable symbolTable) {
+    }
+
+    // the value of this expression, given the values of its operands in order
+    protected Object evaluateOperands(CatscriptRuntime runtime, Object[] operands) {
+        throw new UnsupportedOperationException("evaluateOperands needs to be implemented for " + this.getClass().getName());
+    }
+
+    // emits the code that goes before the operand at index, or after the last operand when
+    // index is the number of operands
+    protected void compileOperand(ByteCodeGenerator code, int index) {
+    }
+
+    @Override
+    public void validate(SymbolTable symbolTable) {
+        if (isTooDeepToRecurse()) {
+            validateOnStack(symbolTable);
+        } else if (validateBeforeOperands(symbolTable)) {
+            for (int i = 0; i < getChildCount(); i++) {
+                operand(i).validate(symbolTable);
+            }
+            validateOperands(symbolTable);
+        }
+    }
+
     public Object evaluate(CatscriptRuntime runtime) {
         throw new UnsupportedOperationException("evaluate needs to be implemented for " + this.getClass().getName());
     }
@@ -18,8 +92,95 @@ public abstract class Expression extends ParseElement {
 
     @Override
     public void compile(ByteCodeGenerator code) {
-        throw new UnsupportedOperationException("compile needs to be implemented for " + this.getClass().getName());
+        if (isTooDeepToRecurse()) {
+            compileOnStack(code);
+        } else {
+            for (int i = 0; i < getChildCount(); i++) {
+                compileOperand(code, i);
+                operand(i).compile(code);
+            }
+            compileOperand(code, getChildCount());
+        }
     }
 
-    public abstract CatscriptType getType();
+    //==============================================================
+    // Explicit stack
+    //==============================================================
+
+    // an expression whose operands are being gone through, with the values of those done so far
+    private static final class Pending {
+        final Expression expression;
+        final Object[] operands;
+        int next;
+
+        Pending(Expression expression, boolean values) {
+            this.expression = expression;
+            this.operands = values ? new Object[expression.getChildCount()] : null;
+        }
+    }
+
+    private void validateOnStack(SymbolTable symbolTable) {
+        Deque<Pending> stack = new ArrayDeque<>();
+        if (validateBeforeOperands(symbolTable)) {
+            stack.push(new Pending(this, false));
+        }
+        while (!stack.isEmpty()) {
+            Pending pending = stack.peek();
+            if (pending.next < pending.expression.getChildCount()) {
+                Expression operand = pending.expression.operand(pending.next++);
+                if (!operand.isTooDeepToRecurse()) {
+                    operand.validate(symbolTable);
+                } else if (operand.validateBeforeOperands(symbolTable)) {
+                    stack.push(new Pending(operand, false));
+                }
+            } else {
+                stack.pop();
+                pending.expression.validateOperands(symbolTable);
+            }
+        }
+    }
+
+    protected final Object evaluateOnStack(CatscriptRuntime runtime) {
+        Deque<Pending> stack = new ArrayDeque<>();
+        stack.push(new Pending(this, true));
+        while (true) {
+            Pending pending = stack.peek();
+            if (pending.next < pending.expression.getChildCount()) {
+                Expression operand = pending.expression.operand(pending.next);
+                if (operand.isTooDeepToRecurse()) {
+                    stack.push(new Pending(operand, true));
+                } else {
+                    pending.operands[pending.next++] = operand.evaluate(runtime);
+                }
+            } else {
+                stack.pop();
+                Object value = pending.expression.evaluateOperands(runtime, pending.operands);
+                if (stack.isEmpty()) {
+                    return value;
+                }
+                Pending parent = stack.peek();
+                parent.operands[parent.next++] = value;
+            }
+        }
+    }
+
+    private void compileOnStack(ByteCodeGenerator code) {
+        Deque<Pending> stack = new ArrayDeque<>();
+        stack.push(new Pending(this, false));
+        while (!stack.isEmpty()) {
+            Pending pending = stack.peek();
+            int index = pending.next++;
+            pending.expression.compileOperand(code, index);
+            if (index < pending.expression.getChildCount()) {
+                Expression operand = pending.expression.operand(index);
+                if (operand.isTooDeepToRecurse()) {
+                    stack.push(new Pending(operand, false));
+                } else {
+                    operand.compile(code);
+                }
+            } else {
+                stack.pop();
+            }
+        }
+    }
 }
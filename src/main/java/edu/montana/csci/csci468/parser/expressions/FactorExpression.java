@@ -10,24 +10,11 @@ import edu.montana.csci.csci468.tokenizer.Token;
 import edu.montana.csci.csci468.tokenizer.TokenType;
 import org.objectweb.asm.Opcodes;
 
-public class FactorExpression extends Expression {
-
-    private final Token operator;
-    private final Expression leftHandSide;
-    private final Expression rightHandSide;
+public class FactorExpression extends BinaryExpression {
 
     public FactorExpression(Token operator, Expression leftHandSide, Expression rightHandSide) {
-        this.leftHandSide = addChild(leftHandSide);
-        this.rightHandSide = addChild(rightHandSide);
-        this.operator = operator;
-    }
-
-    public Expression getLeftHandSide() {
-        return leftHandSide;
-    }
-
-    public Expression getRightHandSide() {
-        return rightHandSide;
+        super(operator, leftHandSide, rightHandSide);
+        setType(CatscriptType.INT);
     }
 
     public boolean isMultiply() {
@@ -35,14 +22,7 @@ public class FactorExpression extends Expression {
     }
 
     @Override
-    public String toString() {
-        return super.toString() + "[" + operator.getStringValue() + "]";
-    }
-
-    @Override
-    public void validate(SymbolTable symbolTable) {
-        leftHandSide.validate(symbolTable);
-        rightHandSide.validate(symbolTable);
+    protected void validateOperands(SymbolTable symbolTable) {
         if (!leftHandSide.getType().equals(CatscriptType.INT)) {
             leftHandSide.addError(ErrorType.INCOMPATIBLE_TYPES);
         }
@@ -51,19 +31,14 @@ public class FactorExpression extends Expression {
         }
     }
 
-    @Override
-    public CatscriptType getType() {
-        return CatscriptType.INT;
-    }
-
     //==============================================================
     // Implementation
     //==============================================================
 
     @Override
-    public Object evaluate(CatscriptRuntime runtime) {
-        Integer lhsValue = (Integer) leftHandSide.evaluate(runtime);
-        Integer rhsValue = (Integer) rightHandSide.evaluate(runtime);
+    protected Object evaluate(Object lhs, Object rhs) {
+        Integer lhsValue = (Integer) lhs;
+        Integer rhsValue = (Integer) rhs;
         if (this.isMultiply()) {
             return lhsValue * rhsValue;
         } else {
@@ -77,9 +52,7 @@ public class FactorExpression extends Expression {
     }
 
     @Override
-    public void compile(ByteCodeGenerator code) {
-        getLeftHandSide().compile(code);
-        getRightHandSide().compile(code);
+    protected void compileOperator(ByteCodeGenerator code) {
         if (this.isMultiply()) {
             code.addInstruction(Opcodes.IMUL);
         } else {
@@ -7,23 +7,22 @@ import edu.montana.csci.csci468.parser.ErrorType;
 import edu.montana.csci.csci468.parser.ParseError;
 import edu.montana.csci.csci468.parser.SymbolTable;
 import edu.montana.csci.csci468.parser.statements.FunctionDefinitionStatement;
-import edu.montana.csci.csci468.parser.statements.Statement;
+import edu.montana.csci.csci468.util.Atoms;
 import org.objectweb.asm.Opcodes;
 
-import java.util.LinkedList;
 import java.util.List;
 
 public class FunctionCallExpression extends Expression {
     private final String name;
+    private final int atom;
     List<Expression> arguments;
-    private CatscriptType type;
+    // the function validation found, so a call doesn't have to look it up
+    private FunctionDefinitionStatement function;
 
-    public FunctionCallExpression(String functionName, List<Expression> arguments) {
-        this.arguments = new LinkedList<>();
-        for (Expression value : arguments) {
-            this.arguments.add(addChild(value));
-        }
-        this.name = functionName;
+    public FunctionCallExpression(String functionName, List<Expression> arguments, Atoms atoms) {
+        this.arguments = addChildren(arguments);
+        this.atom = atoms.intern(functionName);
+        this.name = atoms.name(atom);
     }
 
     public List<Expression> getArguments() {
@@ -34,30 +33,41 @@ public class FunctionCallExpression extends Expression {
         return name;
     }
 
-    @Override
-    public CatscriptType getType() {
-        return type;
+    public int getAtom() {
+        return atom;
+    }
+
+    // a program restored without validating it finds the function on the first call
+    public FunctionDefinitionStatement getFunction() {
+        if (function == null) {
+            function = getProgram().getFunction(atom);
+        }
+        return function;
     }
 
     @Override
-    public void validate(SymbolTable symbolTable) {
-        FunctionDefinitionStatement function = symbolTable.getFunction(getName());
+    protected boolean validateBeforeOperands(SymbolTable symbolTable) {
+        function = symbolTable.getFunction(atom);
         if (function == null) {
             addError(ErrorType.UNKNOWN_NAME);
-            type = CatscriptType.OBJECT;
-        } else {
-            type = function.getType();
-            if (arguments.size() != function.getParameterCount()) {
-                addError(ErrorType.ARG_MISMATCH);
-            } else {
-                for (int i = 0; i < arguments.size(); i++) {
-                    Expression argument = arguments.get(i);
-                    argument.validate(symbolTable);
-                    CatscriptType parameterType = function.getParameterType(i);
-                    if (!parameterType.isAssignableFrom(argument.getType())) {
-                        argument.addError(ErrorType.INCOMPATIBLE_TYPES);
-                    }
-                }
+            setType(CatscriptType.OBJECT);
+            return false;
+        }
+        setType(function.getType());
+        if (arguments.size() != function.getParameterCount()) {
+            addError(ErrorType.ARG_MISMATCH);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected void validateOperands(SymbolTable symbolTable) {
+        for (int i = 0; i < arguments.size(); i++) {
+            Expression argument = arguments.get(i);
+            CatscriptType parameterType = function.getParameterType(i);
+            if (!parameterType.isAssignableFrom(argument.getType())) {
+                argument.addError(ErrorType.INCOMPATIBLE_TYPES);
             }
         }
     }
@@ -68,17 +78,24 @@ public class FunctionCallExpression extends Expression {
 
     @Override
     public Object evaluate(CatscriptRuntime runtime) {
-        FunctionDefinitionStatement functionStatement = getProgram().getFunction(name);
-        runtime.pushScope();
-        for (int i = 0; i < functionStatement.getParameterCount(); i++) {
-            runtime.setValue(functionStatement.getParameterName(i), arguments.get(i).evaluate(runtime));
+        if (isTooDeepToRecurse()) {
+            return evaluateOnStack(runtime);
         }
-        List<Statement> body = functionStatement.getBody();
-        for (Statement statement : body) {
-            statement.execute(runtime);
+        FunctionDefinitionStatement function = getFunction();
+        // the arguments go straight into the callee's frame, as its first variables
+        Object[] frame = function.newFrame();
+        for (int i = 0; i < arguments.size(); i++) {
+            frame[i] = arguments.get(i).evaluate(runtime);
         }
-        runtime.popScope();
-        return runtime.getValue(name);
+        return function.invoke(runtime, frame);
+    }
+
+    @Override
+    protected Object evaluateOperands(CatscriptRuntime runtime, Object[] operands) {
+        FunctionDefinitionStatement function = getFunction();
+        Object[] frame = function.newFrame();
+        System.arraycopy(operands, 0, frame, 0, operands.length);
+        return function.invoke(runtime, frame);
     }
 
     @Override
@@ -87,20 +104,21 @@ public class FunctionCallExpression extends Expression {
     }
 
     @Override
-    public void compile(ByteCodeGenerator code) {
-        code.addVarInstruction(Opcodes.ALOAD, 0);
-        FunctionDefinitionStatement function = getProgram().getFunction(name);
-        for (int i = 0; i < arguments.size(); i++) {
-            Expression expression = arguments.get(i);
-            expression.compile(code);
-            CatscriptType expressionType = expression.getType();
-            CatscriptType parameterType = function.getParameterType(i);
+    protected void compileOperand(ByteCodeGenerator code, int index) {
+        FunctionDefinitionStatement function = getFunction();
+        if (index == 0) {
+            code.addVarInstruction(Opcodes.ALOAD, 0);
+        } else {
+            CatscriptType expressionType = arguments.get(index - 1).getType();
+            CatscriptType parameterType = function.getParameterType(index - 1);
             if(parameterType.equals(CatscriptType.OBJECT) &&
                     (expressionType.equals(CatscriptType.INT) || expressionType.equals(CatscriptType.BOOLEAN))) {
                 box(code, expressionType);
             }
         }
-        code.addMethodInstruction(Opcodes.INVOKEVIRTUAL, code.getProgramInternalName(), name, function.getDescriptor());
+        if (index == arguments.size()) {
+            code.addMethodInstruction(Opcodes.INVOKEVIRTUAL, code.getProgramInternalName(), name, function.getDescriptor());
+        }
     }
 
 
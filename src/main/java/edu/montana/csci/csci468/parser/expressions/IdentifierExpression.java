@@ -6,32 +6,50 @@ import edu.montana.csci.csci468.parser.CatscriptType;
 import edu.montana.csci.csci468.parser.ErrorType;
 import edu.montana.csci.csci468.parser.ParseError;
 import edu.montana.csci.csci468.parser.SymbolTable;
+import edu.montana.csci.csci468.util.Atoms;
 import org.objectweb.asm.Opcodes;
 
 public class IdentifierExpression extends Expression {
     private final String name;
-    private CatscriptType type;
+    private final int atom;
+    // where validation found the variable, see SymbolTable.getDepth and getSlot
+    private int depth;
+    private int slot;
 
-    public IdentifierExpression(String value) {
-        this.name = value;
+    public IdentifierExpression(String value, Atoms atoms) {
+        this.atom = atoms.intern(value);
+        this.name = atoms.name(atom);
     }
 
     public String getName() {
         return name;
     }
 
-    @Override
-    public CatscriptType getType() {
-        return type;
+    public int getAtom() {
+        return atom;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public void setAddress(int depth, int slot) {
+        this.depth = depth;
+        this.slot = slot;
     }
 
     @Override
     public void validate(SymbolTable symbolTable) {
-        CatscriptType type = symbolTable.getSymbolType(getName());
+        CatscriptType type = symbolTable.getSymbolType(atom);
         if (type == null) {
             addError(ErrorType.UNKNOWN_NAME);
         } else {
-            this.type = type;
+            setType(type);
+            setAddress(symbolTable.getDepth(atom), symbolTable.getSlot(atom));
         }
     }
 
@@ -41,7 +59,7 @@ public class IdentifierExpression extends Expression {
 
     @Override
     public Object evaluate(CatscriptRuntime runtime) {
-        return runtime.getValue(name);
+        return runtime.getValue(depth, slot);
     }
 
     @Override
@@ -51,10 +69,10 @@ public class IdentifierExpression extends Expression {
 
     @Override
     public void compile(ByteCodeGenerator code) {
-        if (type.equals(CatscriptType.INT) || type.equals(CatscriptType.BOOLEAN)) {
-            code.addVarInstruction(Opcodes.ILOAD, code.resolveLocalStorageSlotFor(name));
+        if (getType().equals(CatscriptType.INT) || getType().equals(CatscriptType.BOOLEAN)) {
+            code.addVarInstruction(Opcodes.ILOAD, code.resolveLocalStorageSlotFor(depth, slot));
         } else {
-            code.addVarInstruction(Opcodes.ALOAD, code.resolveLocalStorageSlotFor(name));
+            code.addVarInstruction(Opcodes.ALOAD, code.resolveLocalStorageSlotFor(depth, slot));
         }
     }
 
@@ -9,6 +9,7 @@ public class IntegerLiteralExpression extends Expression {
     private final int integerVal;
 
     public IntegerLiteralExpression(String value) {
+        setType(CatscriptType.INT);
         this.integerVal = Integer.parseInt(value);
     }
 
@@ -24,11 +25,6 @@ public class IntegerLiteralExpression extends Expression {
     @Override
     public void validate(SymbolTable symbolTable) {}
 
-    @Override
-    public CatscriptType getType() {
-        return CatscriptType.INT;
-    }
-
     //==============================================================
     // Implementation
     //==============================================================
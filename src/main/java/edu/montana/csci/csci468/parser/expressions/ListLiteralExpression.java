@@ -7,18 +7,15 @@ import edu.montana.csci.csci468.parser.SymbolTable;
 import org.objectweb.asm.Opcodes;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
 public class ListLiteralExpression extends Expression {
     List<Expression> values;
-    private CatscriptType type;
 
     public ListLiteralExpression(List<Expression> values) {
-        this.values = new LinkedList<>();
-        for (Expression value : values) {
-            this.values.add(addChild(value));
-        }
+        this.values = addChildren(values);
     }
 
     public List<Expression> getValues() {
@@ -26,36 +23,31 @@ public class ListLiteralExpression extends Expression {
     }
 
     @Override
-    public void validate(SymbolTable symbolTable) {
-        for (Expression value : values) {
-            value.validate(symbolTable);
-        }
+    protected void validateOperands(SymbolTable symbolTable) {
         if (values.size() > 0) {
             Expression lastExpression = values.get(0);
             for (Expression value : values) {
                 if (lastExpression.getType() != value.getType()) {
-                    type = CatscriptType.getListType(CatscriptType.OBJECT);
+                    setType(CatscriptType.getListType(CatscriptType.OBJECT));
                     break;
                 }
                 lastExpression = value;
             }
-            type = CatscriptType.getListType(lastExpression.getType());
+            setType(CatscriptType.getListType(lastExpression.getType()));
         } else {
-            type = CatscriptType.getListType(CatscriptType.OBJECT);
+            setType(CatscriptType.getListType(CatscriptType.OBJECT));
         }
     }
 
-    @Override
-    public CatscriptType getType() {
-        return type;
-    }
-
     //==============================================================
     // Implementation
     //==============================================================
 
     @Override
     public Object evaluate(CatscriptRuntime runtime) {
+        if (isTooDeepToRecurse()) {
+            return evaluateOnStack(runtime);
+        }
         List<Object> vals = new ArrayList<>();
         for (Expression value : values) {
             vals.add(value.evaluate(runtime));
@@ -63,25 +55,32 @@ public class ListLiteralExpression extends Expression {
         return vals;
     }
 
+    @Override
+    protected Object evaluateOperands(CatscriptRuntime runtime, Object[] operands) {
+        return new ArrayList<>(Arrays.asList(operands));
+    }
+
     @Override
     public void transpile(StringBuilder javascript) {
         super.transpile(javascript);
     }
 
     @Override
-    public void compile(ByteCodeGenerator code) {
-        code.addTypeInstruction(Opcodes.NEW, ByteCodeGenerator.internalNameFor(LinkedList.class));
-        code.addInstruction(Opcodes.DUP);
-        code.addMethodInstruction(Opcodes.INVOKESPECIAL, ByteCodeGenerator.internalNameFor(LinkedList.class),
-                "<init>", "()V");
-        for(Expression value : values) {
+    protected void compileOperand(ByteCodeGenerator code, int index) {
+        if (index == 0) {
+            code.addTypeInstruction(Opcodes.NEW, ByteCodeGenerator.internalNameFor(LinkedList.class));
             code.addInstruction(Opcodes.DUP);
-            value.compile(code);
-            box(code, value.getType());
+            code.addMethodInstruction(Opcodes.INVOKESPECIAL, ByteCodeGenerator.internalNameFor(LinkedList.class),
+                    "<init>", "()V");
+        } else {
+            box(code, values.get(index - 1).getType());
             code.addMethodInstruction(Opcodes.INVOKEVIRTUAL, ByteCodeGenerator.internalNameFor(LinkedList.class),
                     "add", "(Ljava/lang/Object;)Z");
             code.addInstruction(Opcodes.POP);
         }
+        if (index < values.size()) {
+            code.addInstruction(Opcodes.DUP);
+        }
     }
 
 
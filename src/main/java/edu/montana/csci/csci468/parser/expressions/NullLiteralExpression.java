@@ -7,9 +7,8 @@ import edu.montana.csci.csci468.parser.SymbolTable;
 
 public class NullLiteralExpression extends Expression {
 
-    @Override
-    public CatscriptType getType() {
-        return CatscriptType.NULL;
+    public NullLiteralExpression() {
+        setType(CatscriptType.NULL);
     }
 
     @Override
@@ -1,6 +1,5 @@
 package edu.montana.csci.csci468.parser.expressions;
 
-import edu.montana.csci.csci468.bytecode.ByteCodeGenerator;
 import edu.montana.csci.csci468.eval.CatscriptRuntime;
 import edu.montana.csci.csci468.parser.CatscriptType;
 import edu.montana.csci.csci468.parser.ParseError;
@@ -20,13 +19,8 @@ public class ParenthesizedExpression extends Expression {
     }
 
     @Override
-    public void validate(SymbolTable symbolTable) {
-        expression.validate(symbolTable);
-    }
-
-    @Override
-    public CatscriptType getType() {
-        return expression.getType();
+    protected void validateOperands(SymbolTable symbolTable) {
+        setType(expression.getType());
     }
 
     //==============================================================
@@ -35,9 +29,17 @@ public class ParenthesizedExpression extends Expression {
 
     @Override
     public Object evaluate(CatscriptRuntime runtime) {
+        if (isTooDeepToRecurse()) {
+            return evaluateOnStack(runtime);
+        }
         return expression.evaluate(runtime);
     }
 
+    @Override
+    protected Object evaluateOperands(CatscriptRuntime runtime, Object[] operands) {
+        return operands[0];
+    }
+
     @Override
     public void transpile(StringBuilder javascript) {
         javascript.append("(");
@@ -45,9 +47,4 @@ public class ParenthesizedExpression extends Expression {
         javascript.append(")");
     }
 
-    @Override
-    public void compile(ByteCodeGenerator code) {
-        expression.compile(code);
-    }
-
 }
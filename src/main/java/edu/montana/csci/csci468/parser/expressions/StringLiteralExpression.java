@@ -9,6 +9,7 @@ public class StringLiteralExpression extends Expression {
     private final String stringValue;
 
     public StringLiteralExpression(String value) {
+        setType(CatscriptType.STRING);
         this.stringValue = value;
     }
 
@@ -16,11 +17,6 @@ public class StringLiteralExpression extends Expression {
         return stringValue;
     }
 
-    @Override
-    public CatscriptType getType() {
-        return CatscriptType.STRING;
-    }
-
     @Override
     public void validate(SymbolTable symbolTable) {}
 
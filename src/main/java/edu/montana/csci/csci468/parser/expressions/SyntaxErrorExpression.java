@@ -10,15 +10,11 @@ import edu.montana.csci.csci468.tokenizer.Token;
 public class SyntaxErrorExpression extends Expression {
 
     public SyntaxErrorExpression(Token consumeToken) {
+        setType(CatscriptType.OBJECT);
         setToken(consumeToken);
         addError(ErrorType.UNEXPECTED_TOKEN);
     }
 
-    @Override
-    public CatscriptType getType() {
-        return CatscriptType.OBJECT;
-    }
-
     @Override
     public void validate(SymbolTable symbolTable) {}
 
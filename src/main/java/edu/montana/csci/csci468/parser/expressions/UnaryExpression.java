@@ -18,6 +18,11 @@ public class UnaryExpression extends Expression {
     public UnaryExpression(Token operator, Expression rightHandSide) {
         this.rightHandSide = addChild(rightHandSide);
         this.operator = operator;
+        setType(isMinus() ? CatscriptType.INT : CatscriptType.BOOLEAN);
+    }
+
+    public Token getOperator() {
+        return operator;
     }
 
     public Expression getRightHandSide() {
@@ -38,8 +43,7 @@ public class UnaryExpression extends Expression {
     }
 
     @Override
-    public void validate(SymbolTable symbolTable) {
-        rightHandSide.validate(symbolTable);
+    protected void validateOperands(SymbolTable symbolTable) {
         if (isNot() && !rightHandSide.getType().equals(CatscriptType.BOOLEAN)) {
             addError(ErrorType.INCOMPATIBLE_TYPES);
         } else if(isMinus() && !rightHandSide.getType().equals(CatscriptType.INT)) {
@@ -47,22 +51,24 @@ public class UnaryExpression extends Expression {
         }
     }
 
-    @Override
-    public CatscriptType getType() {
-        if (isMinus()) {
-            return CatscriptType.INT;
-        } else {
-            return CatscriptType.BOOLEAN;
-        }
-    }
-
     //==============================================================
     // Implementation
     //==============================================================
 
     @Override
     public Object evaluate(CatscriptRuntime runtime) {
-        Object rhsValue = getRightHandSide().evaluate(runtime);
+        if (isTooDeepToRecurse()) {
+            return evaluateOnStack(runtime);
+        }
+        return evaluate(rightHandSide.evaluate(runtime));
+    }
+
+    @Override
+    protected Object evaluateOperands(CatscriptRuntime runtime, Object[] operands) {
+        return evaluate(operands[0]);
+    }
+
+    private Object evaluate(Object rhsValue) {
         if (this.isMinus()) {
             return -1 * (Integer) rhsValue;
         } else {
@@ -76,13 +82,13 @@ public class UnaryExpression extends Expression {
     }
 
     @Override
-    public void compile(ByteCodeGenerator code) {
-        if (this.isMinus()) {
-            getRightHandSide().compile(code);
+    protected void compileOperand(ByteCodeGenerator code, int index) {
+        if (index == 0) {
+            // the operator goes after its operand
+        } else if (this.isMinus()) {
             code.addInstruction(Opcodes.INEG);
         } else {
-            getRightHandSide().compile(code);
-            code.addInstruction(Opcodes.DUP);
+            code.addInstruction(Opcodes.ICONST_1);
             code.addInstruction(Opcodes.IXOR);
         }
     }
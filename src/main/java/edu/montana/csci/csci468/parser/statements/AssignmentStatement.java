@@ -7,10 +7,15 @@ import edu.montana.csci.csci468.parser.ErrorType;
 import edu.montana.csci.csci468.parser.ParseError;
 import edu.montana.csci.csci468.parser.SymbolTable;
 import edu.montana.csci.csci468.parser.expressions.Expression;
+import edu.montana.csci.csci468.util.Atoms;
+import org.objectweb.asm.Opcodes;
 
 public class AssignmentStatement extends Statement {
     private Expression expression;
     private String variableName;
+    private int variableAtom;
+    private int depth;
+    private int slot;
 
     public Expression getExpression() {
         return expression;
@@ -24,17 +29,36 @@ public class AssignmentStatement extends Statement {
         return variableName;
     }
 
-    public void setVariableName(String variableName) {
-        this.variableName = variableName;
+    public int getVariableAtom() {
+        return variableAtom;
+    }
+
+    public void setVariableName(String variableName, Atoms atoms) {
+        this.variableAtom = atoms.intern(variableName);
+        this.variableName = atoms.name(variableAtom);
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public void setAddress(int depth, int slot) {
+        this.depth = depth;
+        this.slot = slot;
     }
 
     @Override
     public void validate(SymbolTable symbolTable) {
         expression.validate(symbolTable);
-        CatscriptType symbolType = symbolTable.getSymbolType(getVariableName());
+        CatscriptType symbolType = symbolTable.getSymbolType(variableAtom);
         if (symbolType == null) {
             addError(ErrorType.UNKNOWN_NAME);
         } else {
+            setAddress(symbolTable.getDepth(variableAtom), symbolTable.getSlot(variableAtom));
             if (expression.getType() != symbolType) {
                 addError(ErrorType.INCOMPATIBLE_TYPES);
             }
@@ -46,7 +70,7 @@ public class AssignmentStatement extends Statement {
     //==============================================================
     @Override
     public void execute(CatscriptRuntime runtime) {
-        runtime.setValue(variableName, expression.evaluate(runtime));
+        runtime.setValue(depth, slot, expression.evaluate(runtime));
     }
 
     @Override
@@ -56,6 +80,13 @@ public class AssignmentStatement extends Statement {
 
     @Override
     public void compile(ByteCodeGenerator code) {
-        super.compile(code);
+        expression.compile(code);
+        // validation only allows a value of the variable's own type, so nothing needs boxing
+        Integer localStorageSlot = code.resolveLocalStorageSlotFor(depth, slot);
+        if (expression.getType().equals(CatscriptType.INT) || expression.getType().equals(CatscriptType.BOOLEAN)) {
+            code.addVarInstruction(Opcodes.ISTORE, localStorageSlot);
+        } else {
+            code.addVarInstruction(Opcodes.ASTORE, localStorageSlot);
+        }
     }
 }
@@ -5,21 +5,41 @@ import edu.montana.csci.csci468.eval.CatscriptRuntime;
 import edu.montana.csci.csci468.parser.CatscriptType;
 import edu.montana.csci.csci468.parser.SymbolTable;
 import edu.montana.csci.csci468.parser.expressions.Expression;
+import edu.montana.csci.csci468.util.AtomMap;
+import edu.montana.csci.csci468.util.Atoms;
+import edu.montana.csci.csci468.tokenizer.TokenList;
 import org.objectweb.asm.Opcodes;
 
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static edu.montana.csci.csci468.bytecode.ByteCodeGenerator.internalNameFor;
 
 public class CatScriptProgram extends Statement {
 
     private StringBuffer output = new StringBuffer();
-    private List<Statement> statements = new LinkedList<>();
-    private Map<String, FunctionDefinitionStatement> functions = new HashMap<>();
+    private List<Statement> statements = new ArrayList<>();
+    private AtomMap<FunctionDefinitionStatement> functions = new AtomMap<>();
     private Expression expression;
+    private TokenList tokens;
+    private int maxErrors = Integer.MAX_VALUE;
+    private boolean parallelVerify = false;
+    private int compileThreshold = 0;
+    private boolean verified = false;
+    // the ids of the names in the program, see Atoms
+    private Atoms atoms = new Atoms();
+    // the slot of each global by its atom, in the order they were first seen.  The programs a
+    // reparse makes from this one keep them, so the functions they reuse without validating
+    // them again still find their globals
+    private AtomMap<Integer> globalSlots = new AtomMap<>();
+    private int globalCount = 0;
+    // where each top level statement starts, which is how a reparse finds the ones to reuse,
+    // and the names each one declares or refers to once a reparse has needed them
+    private int[] statementStarts = new int[8];
+    private int[][] statementNames = new int[8][];
 
     public void print(Object v) {
         output.append(v).append("\n");
@@ -30,11 +50,20 @@ public class CatScriptProgram extends Statement {
     }
 
     public void addStatement(Statement child) {
+        addStatement(child, -1);
+    }
+
+    public void addStatement(Statement child, int start) {
+        if (statements.size() == statementStarts.length) {
+            statementStarts = Arrays.copyOf(statementStarts, statementStarts.length * 2);
+            statementNames = Arrays.copyOf(statementNames, statementNames.length * 2);
+        }
+        statementStarts[statements.size()] = start;
         Statement statement = addChild(child);
         statements.add(statement);
         if (statement instanceof FunctionDefinitionStatement) {
             FunctionDefinitionStatement function = (FunctionDefinitionStatement) statement;
-            functions.put(function.getName(), function);
+            functions.put(function.getAtom(), function);
         }
     }
 
@@ -42,6 +71,55 @@ public class CatScriptProgram extends Statement {
         this.expression = addChild(expression);
     }
 
+    public int getStatementStart(int index) {
+        return statementStarts[index];
+    }
+
+    public int[] getStatementNames(int index) {
+        return statementNames[index];
+    }
+
+    public void setStatementNames(int index, int[] names) {
+        statementNames[index] = names;
+    }
+
+    public void setTokens(TokenList tokens) {
+        this.tokens = tokens;
+    }
+
+    public TokenList getTokens() {
+        return tokens;
+    }
+
+    // validation stops after the top level statement that brings the errors up to maxErrors
+    public void setMaxErrors(int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    // Function bodies are validated on the common fork join pool when this is turned on, once the
+    // other top level statements have been.  Each function still only sees the globals declared
+    // before it, so the errors are the same as validating sequentially, although all of them are
+    // found before maxErrors cuts the list short
+    public void setParallelVerify(boolean parallelVerify) {
+        this.parallelVerify = parallelVerify;
+    }
+
+    // Tiered execution: a function is compiled to JVM bytecode once its calls and the iterations
+    // of its loops add up to the threshold, and later calls run the compiled code, see
+    // FunctionDefinitionStatement.invoke.  Zero, the default, interprets every call
+    public void setCompileThreshold(int compileThreshold) {
+        this.compileThreshold = compileThreshold;
+    }
+
+    public int getCompileThreshold() {
+        return compileThreshold;
+    }
+
+    @Override
+    protected int getMaxErrors() {
+        return maxErrors;
+    }
+
     public Expression getExpression() {
         return expression;
     }
@@ -54,23 +132,117 @@ public class CatScriptProgram extends Statement {
         return expression != null;
     }
 
-    public FunctionDefinitionStatement getFunction(String name) {
+    public FunctionDefinitionStatement getFunction(int name) {
         return functions.get(name);
     }
 
+    public Atoms getAtoms() {
+        return atoms;
+    }
+
+    // for programs built from names interned somewhere else, see ProgramSnapshot
+    public void setAtoms(Atoms atoms) {
+        this.atoms = atoms;
+    }
+
+    public int getGlobalSlot(int name) {
+        Integer slot = globalSlots.get(name);
+        if (slot == null) {
+            slot = globalCount++;
+            globalSlots.put(name, slot);
+        }
+        return slot;
+    }
+
+    // gives a global the slot it had when the program was written out, see ProgramSnapshot
+    public void setGlobalSlot(int name, int slot) {
+        globalSlots.put(name, slot);
+        globalCount = Math.max(globalCount, slot + 1);
+    }
+
+    public int getGlobalCount() {
+        return globalCount;
+    }
+
+    // takes over the atoms and global slots of the program this one was reparsed from, which
+    // the statements it reuses were resolved with
+    public void keepNames(CatScriptProgram previous) {
+        atoms = previous.atoms;
+        globalSlots = previous.globalSlots.copy();
+        globalCount = previous.globalCount;
+    }
+
+    // whether the program has been validated, which is what resolves its types, variable
+    // addresses and frame sizes.  It may still have errors
+    public boolean isVerified() {
+        return verified;
+    }
+
+    public void setVerified(boolean verified) {
+        this.verified = verified;
+    }
+
+    @Override
+    protected SymbolTable newSymbolTable() {
+        return new SymbolTable(this);
+    }
+
     @Override
     public void validate(SymbolTable symbolTable) {
         if (expression != null) {
             expression.validate(symbolTable);
+        } else if (parallelVerify) {
+            validateInParallel(symbolTable);
         } else {
+            int errorCount = 0;
             for (Statement statement : statements) {
+                if (statement instanceof FunctionDefinitionStatement &&
+                        ((FunctionDefinitionStatement) statement).isVerified()) {
+                    continue;
+                }
                 statement.validate(symbolTable);
+                if (maxErrors != Integer.MAX_VALUE) {
+                    errorCount += statement.countErrors();
+                    if (errorCount >= maxErrors) {
+                        break;
+                    }
+                }
             }
         }
+        verified = true;
     }
 
     public void execute() {
-        execute(new CatscriptRuntime());
+        execute(new CatscriptRuntime(globalCount));
+    }
+
+    // Functions only add to the global scope while their signatures are registered, so their
+    // bodies can wait until every global is in the table and then read it from several threads
+    private void validateInParallel(SymbolTable symbolTable) {
+        List<FunctionDefinitionStatement> functions = new ArrayList<>();
+        List<SymbolTable> views = new ArrayList<>();
+        for (Statement statement : statements) {
+            if (statement instanceof FunctionDefinitionStatement) {
+                FunctionDefinitionStatement function = (FunctionDefinitionStatement) statement;
+                if (!function.isVerified()) {
+                    functions.add(function);
+                    views.add(symbolTable.globalView());
+                }
+            } else {
+                statement.validate(symbolTable);
+            }
+        }
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(functions.size());
+        for (int i = 0; i < functions.size(); i++) {
+            FunctionDefinitionStatement function = functions.get(i);
+            SymbolTable view = views.get(i);
+            tasks.add(ForkJoinPool.commonPool().submit(() -> function.validate(view)));
+        }
+        // errors stay on the nodes they belong to, so collecting them keeps them in source order
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
     }
 
     //==============================================================
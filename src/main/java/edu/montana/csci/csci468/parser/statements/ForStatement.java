@@ -4,35 +4,39 @@ import edu.montana.csci.csci468.bytecode.ByteCodeGenerator;
 import edu.montana.csci.csci468.eval.CatscriptRuntime;
 import edu.montana.csci.csci468.parser.CatscriptType;
 import edu.montana.csci.csci468.parser.ErrorType;
+import edu.montana.csci.csci468.parser.ParseElement;
 import edu.montana.csci.csci468.parser.ParseError;
 import edu.montana.csci.csci468.parser.SymbolTable;
 import edu.montana.csci.csci468.parser.expressions.Expression;
+import edu.montana.csci.csci468.util.Atoms;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
 
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 public class ForStatement extends Statement {
     private Expression expression;
     private String variableName;
+    private int variableAtom;
+    private int depth;
+    private int slot;
+    private int frameSize;
     private List<Statement> body;
+    private FunctionDefinitionStatement function;
 
     public void setExpression(Expression expression) {
         this.expression = addChild(expression);
     }
 
-    public void setVariableName(String variableName) {
-        this.variableName = variableName;
+    public void setVariableName(String variableName, Atoms atoms) {
+        this.variableAtom = atoms.intern(variableName);
+        this.variableName = atoms.name(variableAtom);
     }
 
     public void setBody(List<Statement> statements) {
-        this.body = new LinkedList<>();
-        for (Statement statement : statements) {
-            this.body.add(addChild(statement));
-        }
+        this.body = addChildren(statements);
     }
 
     public Expression getExpression() {
@@ -43,29 +47,63 @@ public class ForStatement extends Statement {
         return variableName;
     }
 
+    public int getVariableAtom() {
+        return variableAtom;
+    }
+
     public List<Statement> getBody() {
         return body;
     }
 
+    // where the loop variable lives, see SymbolTable.getDepth and getSlot
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public void setAddress(int depth, int slot) {
+        this.depth = depth;
+        this.slot = slot;
+    }
+
+    // the size of the loop's runtime frame, see SymbolTable.popScope
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public void setFrameSize(int frameSize) {
+        this.frameSize = frameSize;
+    }
+
+    @Override
+    protected List<Statement> getBody(int index) {
+        return body;
+    }
+
     @Override
-    public void validate(SymbolTable symbolTable) {
+    protected int validateStep(SymbolTable symbolTable, Pending pending) {
+        if (pending.step > 0) {
+            frameSize = symbolTable.popScope();
+            return DONE;
+        }
         symbolTable.pushScope();
-        if (symbolTable.hasSymbol(variableName)) {
+        if (symbolTable.hasSymbol(variableAtom)) {
             addError(ErrorType.DUPLICATE_NAME);
         } else {
             expression.validate(symbolTable);
             CatscriptType type = expression.getType();
             if (type instanceof CatscriptType.ListType) {
-                symbolTable.registerSymbol(variableName, getComponentType());
+                symbolTable.registerSymbol(variableAtom, getComponentType());
             } else {
                 addError(ErrorType.INCOMPATIBLE_TYPES, getStart());
-                symbolTable.registerSymbol(variableName, CatscriptType.OBJECT);
+                symbolTable.registerSymbol(variableAtom, CatscriptType.OBJECT);
             }
+            setAddress(symbolTable.getDepth(variableAtom), symbolTable.getSlot(variableAtom));
         }
-        for (Statement statement : body) {
-            statement.validate(symbolTable);
-        }
-        symbolTable.popScope();
+        return 0;
     }
 
     private CatscriptType getComponentType() {
@@ -77,15 +115,55 @@ public class ForStatement extends Statement {
     //==============================================================
     @Override
     public void execute(CatscriptRuntime runtime) {
+        if (isTooDeepToRecurse()) {
+            executeOnStack(runtime);
+            return;
+        }
         List forValues = (ArrayList) expression.evaluate(runtime);
-        runtime.pushScope();
+        runtime.pushScope(frameSize);
         for (Object forValue : forValues) {
-            runtime.setValue(variableName, forValue);
+            runtime.setValue(depth, slot, forValue);
             for (Statement statement : body) {
                 statement.execute(runtime);
             }
         }
+        endLoop(runtime, forValues);
+    }
+
+    // step n runs the body for the nth value, and the step after the last value ends the loop
+    @Override
+    protected int executeStep(CatscriptRuntime runtime, Pending pending) {
+        if (pending.step == 0) {
+            pending.state = expression.evaluate(runtime);
+            runtime.pushScope(frameSize);
+        }
+        List forValues = (ArrayList) pending.state;
+        if (pending.step < forValues.size()) {
+            runtime.setValue(depth, slot, forValues.get(pending.step));
+            return 0;
+        }
+        endLoop(runtime, forValues);
+        return DONE;
+    }
+
+    private void endLoop(CatscriptRuntime runtime, List forValues) {
         runtime.popScope();
+        FunctionDefinitionStatement function = getFunctionDefinition();
+        if (function != null) {
+            function.countBackEdges(forValues.size());
+        }
+    }
+
+    // the function the loop is in, if it is not at the top level
+    private FunctionDefinitionStatement getFunctionDefinition() {
+        if (function == null) {
+            ParseElement parent = getParent();
+            while (parent != null && !(parent instanceof FunctionDefinitionStatement)) {
+                parent = parent.getParent();
+            }
+            function = (FunctionDefinitionStatement) parent;
+        }
+        return function;
     }
 
     @Override
@@ -93,11 +171,19 @@ public class ForStatement extends Statement {
         super.transpile(javascript);
     }
 
+    // the labels of the top and the end of the loop are kept in the pending state
     @Override
-    public void compile(ByteCodeGenerator code) {
+    protected int compileStep(ByteCodeGenerator code, Pending pending) {
+        if (pending.step > 0) {
+            Label[] labels = (Label[]) pending.state;
+            code.addJumpInstruction(Opcodes.GOTO, labels[0]);
+            code.addLabel(labels[1]);
+            return DONE;
+        }
         Integer localStorageSlotForIterator = code.nextLocalStorageSlot();
         Label forLoop = new Label();
         Label end = new Label();
+        pending.state = new Label[]{forLoop, end};
 
         expression.compile(code);
 
@@ -119,19 +205,14 @@ public class ForStatement extends Statement {
         code.addTypeInstruction(Opcodes.CHECKCAST, ByteCodeGenerator.internalNameFor(componentType.getJavaType()));
         unbox(code, componentType);
 
-        Integer localStorageSlotForVariable = code.createLocalStorageSlotFor(variableName);
+        Integer localStorageSlotForVariable = code.createLocalStorageSlotFor(depth, slot);
         if (componentType.equals(CatscriptType.INT) || componentType.equals(CatscriptType.BOOLEAN)) {
             code.addVarInstruction(Opcodes.ISTORE, localStorageSlotForVariable);
         } else {
             code.addVarInstruction(Opcodes.ASTORE, localStorageSlotForVariable);
         }
 
-        for (Statement statement : body) {
-            statement.compile(code);
-        }
-
-        code.addJumpInstruction(Opcodes.GOTO, forLoop);
-        code.addLabel(end);
+        return 0;
     }
 
 }
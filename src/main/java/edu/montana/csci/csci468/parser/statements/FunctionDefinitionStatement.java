@@ -1,30 +1,52 @@
 package edu.montana.csci.csci468.parser.statements;
 
 import edu.montana.csci.csci468.bytecode.ByteCodeGenerator;
+import edu.montana.csci.csci468.bytecode.CompiledFunction;
 import edu.montana.csci.csci468.eval.CatscriptRuntime;
 import edu.montana.csci.csci468.eval.ReturnException;
 import edu.montana.csci.csci468.parser.CatscriptType;
 import edu.montana.csci.csci468.parser.ErrorType;
 import edu.montana.csci.csci468.parser.ParseError;
+import edu.montana.csci.csci468.parser.ParseErrorException;
 import edu.montana.csci.csci468.parser.SymbolTable;
 import edu.montana.csci.csci468.parser.expressions.TypeLiteral;
+import edu.montana.csci.csci468.util.Atoms;
 import org.objectweb.asm.Opcodes;
 
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.function.Supplier;
 
 import static edu.montana.csci.csci468.bytecode.ByteCodeGenerator.internalNameFor;
 
 public class FunctionDefinitionStatement extends Statement {
     private String name;
+    private int atom;
     private CatscriptType type;
     private List<CatscriptType> argumentTypes = new ArrayList<>();
     private List<String> argumentNames = new ArrayList<>();
-    private LinkedList<Statement> body;
+    private List<Integer> argumentAtoms = new ArrayList<>();
+    private List<Statement> body;
+    private int frameSize;
+    private boolean verified;
+    // A lazy body is parsed by the first call to reach it, whichever thread that is on, and the
+    // errors validating it found are thrown again by every later call
+    private volatile Supplier<List<Statement>> lazyBody;
+    private SymbolTable lazyBodySymbols;
+    private volatile ParseErrorException bodyErrors;
+    // tiered execution, see CatScriptProgram.setCompileThreshold.  The counts and the compiled
+    // code belong to the program the function was last called in, since a reparse moves the
+    // function into a new program whose other functions may have changed
+    private CatScriptProgram tieredProgram;
+    private int invocations;
+    private int backEdges;
+    private CompiledFunction compiled;
+    private boolean uncompilable;
 
-    public void setName(String name) {
-        this.name = name;
+    public void setName(String name, Atoms atoms) {
+        this.atom = atoms.intern(name);
+        this.name = atoms.name(atom);
     }
 
     public CatscriptType getType() {
@@ -44,8 +66,14 @@ public class FunctionDefinitionStatement extends Statement {
         return name;
     }
 
-    public void addParameter(String name, TypeLiteral typeLiteral) {
-        argumentNames.add(name);
+    public int getAtom() {
+        return atom;
+    }
+
+    public void addParameter(String name, TypeLiteral typeLiteral, Atoms atoms) {
+        int atom = atoms.intern(name);
+        argumentNames.add(atoms.name(atom));
+        argumentAtoms.add(atom);
         if (typeLiteral == null) {
             argumentTypes.add(CatscriptType.OBJECT);
         } else {
@@ -58,6 +86,10 @@ public class FunctionDefinitionStatement extends Statement {
         return argumentNames.get(i);
     }
 
+    public int getParameterAtom(int i) {
+        return argumentAtoms.get(i);
+    }
+
     public CatscriptType getParameterType(int i) {
         return argumentTypes.get(i);
     }
@@ -67,35 +99,111 @@ public class FunctionDefinitionStatement extends Statement {
     }
 
     public void setBody(List<Statement> statements) {
-        this.body = new LinkedList<>();
-        for (Statement statement : statements) {
-            this.body.add(addChild(statement));
-        }
+        this.body = addChildren(statements);
     }
 
     public List<Statement> getBody() {
+        if (lazyBody != null || bodyErrors != null) {
+            parseBody();
+        }
         return body;
     }
 
+    // The parser can leave the body to be parsed the first time it is needed
+    public void setLazyBody(Supplier<List<Statement>> parser) {
+        this.lazyBody = parser;
+    }
+
+    // whether the body has been parsed, and validated without errors if that was due
+    public boolean isBodyParsed() {
+        return lazyBody == null && bodyErrors == null;
+    }
+
+    // Parses a lazy body and, if the function has been verified, validates it against the
+    // symbols that were visible where the function is defined
+    private synchronized void parseBody() {
+        if (bodyErrors != null) {
+            throw bodyErrors;
+        }
+        Supplier<List<Statement>> parser = lazyBody;
+        if (parser == null) {
+            // another thread got here first
+            return;
+        }
+        setBody(parser.get());
+        if (lazyBodySymbols != null) {
+            SymbolTable symbolTable = lazyBodySymbols;
+            lazyBodySymbols = null;
+            super.validate(symbolTable);
+            LinkedList<ParseError> errors = new LinkedList<>();
+            walk(element -> errors.addAll(element.getErrors()));
+            if (!errors.isEmpty()) {
+                bodyErrors = new ParseErrorException(errors);
+            }
+        }
+        // cleared last, so a thread that sees it cleared sees the body too
+        lazyBody = null;
+        if (bodyErrors != null) {
+            throw bodyErrors;
+        }
+    }
+
+    // A verified function is skipped by later verification of its program, until an edit to
+    // something it refers to marks it unverified again
+    public boolean isVerified() {
+        return verified;
+    }
+
+    public void setVerified(boolean verified) {
+        this.verified = verified;
+    }
+
+    // the size of the function's runtime frame, parameters included, see SymbolTable.popScope
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public void setFrameSize(int frameSize) {
+        this.frameSize = frameSize;
+    }
+
     @Override
     public void validate(SymbolTable symbolTable) {
-        symbolTable.pushScope();
-        for (int i = 0; i < getParameterCount(); i++) {
-            if (symbolTable.hasSymbol(getParameterName(i))) {
-                addError(ErrorType.DUPLICATE_NAME);
-            } else {
-                symbolTable.registerSymbol(getParameterName(i), getParameterType(i));
-            }
+        if (lazyBody != null) {
+            // the body is validated once it is parsed
+            lazyBodySymbols = symbolTable.snapshot();
+            verified = true;
+            return;
         }
-        for (Statement statement : body) {
-            statement.validate(symbolTable);
+        super.validate(symbolTable);
+    }
+
+    @Override
+    protected List<Statement> getBody(int index) {
+        return body;
+    }
+
+    @Override
+    protected int validateStep(SymbolTable symbolTable, Pending pending) {
+        if (pending.step == 0) {
+            symbolTable.pushScope();
+            for (int i = 0; i < getParameterCount(); i++) {
+                if (symbolTable.hasSymbol(getParameterAtom(i))) {
+                    addError(ErrorType.DUPLICATE_NAME);
+                } else {
+                    symbolTable.registerSymbol(getParameterAtom(i), getParameterType(i));
+                }
+            }
+            return 0;
         }
-        symbolTable.popScope();
+        frameSize = symbolTable.popScope();
         if (!type.equals(CatscriptType.VOID)) {
             if (!validateReturnCoverage(body)) {
                 addError(ErrorType.MISSING_RETURN_STATEMENT);
             }
         }
+        verified = true;
+        return DONE;
     }
 
     private boolean validateReturnCoverage(List<Statement> statements) {
@@ -109,12 +217,60 @@ public class FunctionDefinitionStatement extends Statement {
         return true;
     }
 
-    public Object invoke(CatscriptRuntime runtime, List<Object> args) {
-        runtime.pushScope();
-        int parameterCount = getParameterCount();
-        for (int i = 0; i < parameterCount; i++) {
-            runtime.setValue(getParameterName(i), args.get(i));
+    public int getInvocationCount() {
+        return invocations;
+    }
+
+    public int getBackEdgeCount() {
+        return backEdges;
+    }
+
+    public boolean isCompiled() {
+        return compiled != null;
+    }
+
+    // called by the loops in the body with the number of times they went around, which makes a
+    // function that loops a lot hot without many calls.  A loop can't leave the interpreter
+    // part way through, so it is the next call that runs compiled
+    public void countBackEdges(int count) {
+        if (compiled == null && backEdges < getProgram().getCompileThreshold()) {
+            backEdges += count;
         }
+    }
+
+    private CompiledFunction tierUp(CatScriptProgram program) {
+        if (tieredProgram != program) {
+            tieredProgram = program;
+            invocations = 0;
+            backEdges = 0;
+            compiled = null;
+            uncompilable = false;
+        }
+        if (compiled == null && !uncompilable && ++invocations + backEdges >= program.getCompileThreshold()) {
+            compiled = new ByteCodeGenerator(program).compileFunction(this);
+            uncompilable = compiled == null;
+        }
+        return compiled;
+    }
+
+    // A frame for a call, sized for all of the function's variables, which the caller puts the
+    // arguments in.  A lazy body is validated when it is parsed, which is what sizes the frame
+    public Object[] newFrame() {
+        getBody();
+        return new Object[frameSize];
+    }
+
+    // runs a call with a frame from newFrame, whose first slots hold the arguments
+    public Object invoke(CatscriptRuntime runtime, Object[] frame) {
+        List<Statement> body = getBody();
+        CatScriptProgram program = getProgram();
+        if (program.getCompileThreshold() > 0) {
+            CompiledFunction compiled = tierUp(program);
+            if (compiled != null) {
+                return compiled.invoke(frame);
+            }
+        }
+        int callerBase = runtime.pushFunctionScope(frame);
         Object returnVal = null;
         try {
             for (Statement statement : body) {
@@ -123,7 +279,7 @@ public class FunctionDefinitionStatement extends Statement {
         } catch (ReturnException re) {
             returnVal = re.getValue();
         } finally {
-            runtime.popScope();
+            runtime.popFunctionScope(callerBase);
         }
         return returnVal;
     }
@@ -134,7 +290,7 @@ public class FunctionDefinitionStatement extends Statement {
             if (argumentType.equals(CatscriptType.BOOLEAN) || argumentType.equals(CatscriptType.INT)) {
                 sb.append("I");
             } else {
-                sb.append("L").append(internalNameFor(getType().getJavaType())).append(";");
+                sb.append("L").append(internalNameFor(argumentType.getJavaType())).append(";");
             }
         }
         sb.append(")");
@@ -153,7 +309,12 @@ public class FunctionDefinitionStatement extends Statement {
     //==============================================================
     @Override
     public void execute(CatscriptRuntime runtime) {
-        runtime.setValue(name, this);
+        // calls find their function through the program, there is nothing to bind
+    }
+
+    @Override
+    protected int executeStep(CatscriptRuntime runtime, Pending pending) {
+        return DONE;
     }
 
     @Override
@@ -162,14 +323,15 @@ public class FunctionDefinitionStatement extends Statement {
     }
 
     @Override
-    public void compile(ByteCodeGenerator code) {
-        code.pushMethod(Opcodes.ACC_PUBLIC, name, getDescriptor());
-        for (String argumentName : argumentNames) {
-            code.createLocalStorageSlotFor(argumentName);
-        }
-
-        for (Statement statement : body) {
-            statement.compile(code);
+    protected int compileStep(ByteCodeGenerator code, Pending pending) {
+        if (pending.step == 0) {
+            // getting a lazy body parses it
+            getBody();
+            code.pushMethod(Opcodes.ACC_PUBLIC, name, getDescriptor());
+            for (int i = 0; i < getParameterCount(); i++) {
+                code.createLocalStorageSlotFor(1, i);
+            }
+            return 0;
         }
 
         if(type.equals(CatscriptType.VOID)) {
@@ -177,5 +339,6 @@ public class FunctionDefinitionStatement extends Statement {
         }
 
         code.popMethod();
+        return DONE;
     }
 }
@@ -12,13 +12,14 @@ import org.objectweb.asm.Opcodes;
 
 import java.awt.*;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 public class IfStatement extends Statement {
     private Expression expression;
     private List<Statement> trueStatements = Collections.emptyList();
     private List<Statement> elseStatements = Collections.emptyList();
+    private int trueFrameSize;
+    private int elseFrameSize;
 
     public Expression getExpression() {
         return expression;
@@ -33,10 +34,7 @@ public class IfStatement extends Statement {
     }
 
     public void setTrueStatements(List<Statement> statements) {
-        this.trueStatements = new LinkedList<>();
-        for (Statement statement : statements) {
-            this.trueStatements.add(addChild(statement));
-        }
+        this.trueStatements = addChildren(statements);
     }
 
     public List<Statement> getElseStatements() {
@@ -44,28 +42,45 @@ public class IfStatement extends Statement {
     }
 
     public void setElseStatements(List<Statement> statements) {
-        this.elseStatements = new LinkedList<>();
-        for (Statement statement : statements) {
-            this.elseStatements.add(addChild(statement));
-        }
+        this.elseStatements = addChildren(statements);
+    }
+
+    // the size of each branch's runtime frame, see SymbolTable.popScope
+    public int getTrueFrameSize() {
+        return trueFrameSize;
+    }
+
+    public int getElseFrameSize() {
+        return elseFrameSize;
     }
 
+    public void setFrameSizes(int trueFrameSize, int elseFrameSize) {
+        this.trueFrameSize = trueFrameSize;
+        this.elseFrameSize = elseFrameSize;
+    }
+
+    // the true statements are body 0 and the else statements body 1
     @Override
-    public void validate(SymbolTable symbolTable) {
-        expression.validate(symbolTable);
-        if (!expression.getType().equals(CatscriptType.BOOLEAN)) {
-            expression.addError(ErrorType.INCOMPATIBLE_TYPES);
-        }
-        symbolTable.pushScope();
-        for (Statement trueStatement : trueStatements) {
-            trueStatement.validate(symbolTable);
-        }
-        symbolTable.popScope();
-        symbolTable.pushScope();
-        for (Statement elseStatement : elseStatements) {
-            elseStatement.validate(symbolTable);
+    protected List<Statement> getBody(int index) {
+        return index == 0 ? trueStatements : elseStatements;
+    }
+
+    @Override
+    protected int validateStep(SymbolTable symbolTable, Pending pending) {
+        if (pending.step == 0) {
+            expression.validate(symbolTable);
+            if (!expression.getType().equals(CatscriptType.BOOLEAN)) {
+                expression.addError(ErrorType.INCOMPATIBLE_TYPES);
+            }
+            symbolTable.pushScope();
+            return 0;
+        } else if (pending.step == 1) {
+            trueFrameSize = symbolTable.popScope();
+            symbolTable.pushScope();
+            return 1;
         }
-        symbolTable.popScope();
+        elseFrameSize = symbolTable.popScope();
+        return DONE;
     }
 
     //==============================================================
@@ -73,15 +88,37 @@ public class IfStatement extends Statement {
     //==============================================================
     @Override
     public void execute(CatscriptRuntime runtime) {
+        if (isTooDeepToRecurse()) {
+            executeOnStack(runtime);
+            return;
+        }
+        // each branch has its own scope, as it does in validate
         if (expression.evaluate(runtime).equals(true)) {
+            runtime.pushScope(trueFrameSize);
             for (Statement statement: trueStatements) {
                 statement.execute(runtime);
             }
         } else {
+            runtime.pushScope(elseFrameSize);
             for (Statement statement: elseStatements) {
                 statement.execute(runtime);
             }
         }
+        runtime.popScope();
+    }
+
+    @Override
+    protected int executeStep(CatscriptRuntime runtime, Pending pending) {
+        if (pending.step == 0) {
+            if (expression.evaluate(runtime).equals(true)) {
+                runtime.pushScope(trueFrameSize);
+                return 0;
+            }
+            runtime.pushScope(elseFrameSize);
+            return 1;
+        }
+        runtime.popScope();
+        return DONE;
     }
 
     @Override
@@ -90,22 +127,24 @@ public class IfStatement extends Statement {
     }
 
     @Override
-    public void compile(ByteCodeGenerator code) {
-        expression.compile(code);
-
-        Label falseCondition = new Label();
-        Label end = new Label();
+    protected int compileStep(ByteCodeGenerator code, Pending pending) {
+        if (pending.step == 0) {
+            expression.compile(code);
 
-        code.addJumpInstruction(Opcodes.IFEQ, falseCondition);
+            // the labels of the else statements and of the end
+            Label[] labels = {new Label(), new Label()};
+            pending.state = labels;
 
-        for (Statement trueStatement : trueStatements) {
-            trueStatement.compile(code);
+            code.addJumpInstruction(Opcodes.IFEQ, labels[0]);
+            return 0;
         }
-        code.addJumpInstruction(Opcodes.GOTO, end);
-        code.addLabel(falseCondition);
-        for (Statement elseStatement : elseStatements) {
-            elseStatement.compile(code);
+        Label[] labels = (Label[]) pending.state;
+        if (pending.step == 1) {
+            code.addJumpInstruction(Opcodes.GOTO, labels[1]);
+            code.addLabel(labels[0]);
+            return 1;
         }
-        code.addLabel(end);
+        code.addLabel(labels[1]);
+        return DONE;
     }
 }
@@ -2,6 +2,7 @@ package edu.montana.csci.csci468.parser.statements;
 
 import edu.montana.csci.csci468.bytecode.ByteCodeGenerator;
 import edu.montana.csci.csci468.eval.CatscriptRuntime;
+import edu.montana.csci.csci468.eval.ReturnException;
 import edu.montana.csci.csci468.parser.CatscriptType;
 import edu.montana.csci.csci468.parser.ErrorType;
 import edu.montana.csci.csci468.parser.ParseError;
@@ -21,6 +22,10 @@ public class ReturnStatement extends Statement {
         this.function = func;
     }
 
+    public FunctionDefinitionStatement getFunctionDefinition() {
+        return function;
+    }
+
     public Expression getExpression() {
         return expression;
     }
@@ -44,8 +49,7 @@ public class ReturnStatement extends Statement {
     //==============================================================
     @Override
     public void execute(CatscriptRuntime runtime) {
-        Object returnValue = expression.evaluate(runtime);
-        runtime.setValue(function.getName(), returnValue);
+        throw new ReturnException(expression == null ? null : expression.evaluate(runtime));
     }
 
     @Override
@@ -3,11 +3,145 @@ package edu.montana.csci.csci468.parser.statements;
 import edu.montana.csci.csci468.bytecode.ByteCodeGenerator;
 import edu.montana.csci.csci468.eval.CatscriptRuntime;
 import edu.montana.csci.csci468.parser.ParseElement;
+import edu.montana.csci.csci468.parser.SymbolTable;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToIntBiFunction;
 
 public abstract class Statement extends ParseElement {
 
+    // Statements whose bodies nest deeper than this are validated, run and compiled on an
+    // explicit stack, the way deep expressions are, so blocks can nest as deeply as the heap
+    // allows. Shallower ones recurse, which is cheaper
+    static final int MAX_RECURSION_HEIGHT = 64;
+    // what a step returns once the statement has no more bodies to go through
+    static final int DONE = -1;
+
+    // the number of statements on the longest path down from this one, itself included
+    private int height = 1;
+
+    @Override
+    protected <T extends ParseElement> T addChild(T element) {
+        if (element instanceof Statement) {
+            height = Math.max(height, ((Statement) element).height + 1);
+        }
+        return super.addChild(element);
+    }
+
+    public final boolean isTooDeepToRecurse() {
+        return height > MAX_RECURSION_HEIGHT;
+    }
+
     public void execute(CatscriptRuntime runtime) {
         throw new UnsupportedOperationException("execute needs to be implemented for " + this.getClass().getName());
     }
 
+    // What validating, running and compiling the bodies of a statement is made of, so that the
+    // same steps can be taken recursively or from an explicit stack.  Each step does the work
+    // up to the next body to go through and returns its index, or DONE after the last one
+
+    // the statements in the body at index
+    protected List<Statement> getBody(int index) {
+        return Collections.emptyList();
+    }
+
+    protected int validateStep(SymbolTable symbolTable, Pending pending) {
+        return DONE;
+    }
+
+    protected int executeStep(CatscriptRuntime runtime, Pending pending) {
+        throw new UnsupportedOperationException("executeStep needs to be implemented for " + this.getClass().getName());
+    }
+
+    protected int compileStep(ByteCodeGenerator code, Pending pending) {
+        return DONE;
+    }
+
+    @Override
+    public void validate(SymbolTable symbolTable) {
+        if (isTooDeepToRecurse()) {
+            onStack((statement, pending) -> statement.validateStep(symbolTable, pending),
+                    statement -> statement.validate(symbolTable));
+        } else {
+            Pending pending = new Pending(this);
+            for (int body; (body = pending.step(validateStep(symbolTable, pending))) != DONE; ) {
+                for (Statement statement : getBody(body)) {
+                    statement.validate(symbolTable);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void compile(ByteCodeGenerator code) {
+        if (isTooDeepToRecurse()) {
+            onStack((statement, pending) -> statement.compileStep(code, pending),
+                    statement -> statement.compile(code));
+        } else {
+            Pending pending = new Pending(this);
+            for (int body; (body = pending.step(compileStep(code, pending))) != DONE; ) {
+                for (Statement statement : getBody(body)) {
+                    statement.compile(code);
+                }
+            }
+        }
+    }
+
+    protected final void executeOnStack(CatscriptRuntime runtime) {
+        onStack((statement, pending) -> statement.executeStep(runtime, pending),
+                statement -> statement.execute(runtime));
+    }
+
+    //==============================================================
+    // Explicit stack
+    //==============================================================
+
+    // a statement whose bodies are being gone through, with what its steps keep between them
+    static final class Pending {
+        final Statement statement;
+        // how many steps the statement has taken
+        int step;
+        Object state;
+        List<Statement> body = Collections.emptyList();
+        int next;
+
+        Pending(Statement statement) {
+            this.statement = statement;
+        }
+
+        int step(int body) {
+            step++;
+            return body;
+        }
+    }
+
+    // goes through the bodies of this statement and of the deep statements in them, taking the
+    // steps of each, and recursing into the statements shallow enough for that
+    private void onStack(ToIntBiFunction<Statement, Pending> step, Consumer<Statement> recursion) {
+        Deque<Pending> stack = new ArrayDeque<>();
+        stack.push(new Pending(this));
+        while (!stack.isEmpty()) {
+            Pending pending = stack.peek();
+            if (pending.next < pending.body.size()) {
+                Statement statement = pending.body.get(pending.next++);
+                if (statement.isTooDeepToRecurse()) {
+                    stack.push(new Pending(statement));
+                } else {
+                    recursion.accept(statement);
+                }
+            } else {
+                int body = pending.step(step.applyAsInt(pending.statement, pending));
+                if (body == DONE) {
+                    stack.pop();
+                } else {
+                    pending.body = pending.statement.getBody(body);
+                    pending.next = 0;
+                }
+            }
+        }
+    }
 }
@@ -9,7 +9,13 @@ import edu.montana.csci.csci468.tokenizer.Token;
 public class SyntaxErrorStatement extends Statement {
 
     public SyntaxErrorStatement(Token start) {
-        setToken(start);
+        this(start, start);
+    }
+
+    // a bad region of tokens, reported once at its first token
+    public SyntaxErrorStatement(Token start, Token end) {
+        setStart(start);
+        setEnd(end);
         addError(ErrorType.UNEXPECTED_TOKEN);
     }
 
@@ -7,14 +7,18 @@ import edu.montana.csci.csci468.parser.ErrorType;
 import edu.montana.csci.csci468.parser.ParseError;
 import edu.montana.csci.csci468.parser.SymbolTable;
 import edu.montana.csci.csci468.parser.expressions.Expression;
+import edu.montana.csci.csci468.util.Atoms;
 import edu.montana.csci.csci468.parser.expressions.IdentifierExpression;
 import org.objectweb.asm.Opcodes;
 
 public class VariableStatement extends Statement {
     private Expression expression;
     private String variableName;
+    private int variableAtom;
     private CatscriptType explicitType;
     private CatscriptType type;
+    private int depth;
+    private int slot;
 
     public Expression getExpression() {
         return expression;
@@ -24,8 +28,13 @@ public class VariableStatement extends Statement {
         return variableName;
     }
 
-    public void setVariableName(String variableName) {
-        this.variableName = variableName;
+    public int getVariableAtom() {
+        return variableAtom;
+    }
+
+    public void setVariableName(String variableName, Atoms atoms) {
+        this.variableAtom = atoms.intern(variableName);
+        this.variableName = atoms.name(variableAtom);
     }
 
     public void setExpression(Expression parseExpression) {
@@ -40,6 +49,19 @@ public class VariableStatement extends Statement {
         return explicitType;
     }
 
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public void setAddress(int depth, int slot) {
+        this.depth = depth;
+        this.slot = slot;
+    }
+
     public boolean isGlobal() {
         return getParent() instanceof CatScriptProgram;
     }
@@ -47,7 +69,7 @@ public class VariableStatement extends Statement {
     @Override
     public void validate(SymbolTable symbolTable) {
         expression.validate(symbolTable);
-        if (symbolTable.hasSymbol(variableName)) {
+        if (symbolTable.hasSymbol(variableAtom)) {
             addError(ErrorType.DUPLICATE_NAME);
         } else {
             if (explicitType != null) {
@@ -59,7 +81,8 @@ public class VariableStatement extends Statement {
             } else {
                 type = expression.getType();
             }
-            symbolTable.registerSymbol(variableName, type);
+            symbolTable.registerSymbol(variableAtom, type);
+            setAddress(symbolTable.getDepth(variableAtom), symbolTable.getSlot(variableAtom));
         }
     }
 
@@ -67,12 +90,17 @@ public class VariableStatement extends Statement {
         return type;
     }
 
+    // the type validation resolved, for programs restored without validating them
+    public void setType(CatscriptType type) {
+        this.type = type;
+    }
+
     //==============================================================
     // Implementation
     //==============================================================
     @Override
     public void execute(CatscriptRuntime runtime) {
-        runtime.setValue(variableName, expression.evaluate(runtime));
+        runtime.setValue(depth, slot, expression.evaluate(runtime));
     }
 
     @Override
@@ -83,7 +111,7 @@ public class VariableStatement extends Statement {
     @Override
     public void compile(ByteCodeGenerator code) {
         expression.compile(code);
-        Integer localStorageSlotFor = code.createLocalStorageSlotFor(variableName);
+        Integer localStorageSlotFor = code.createLocalStorageSlotFor(depth, slot);
         if (expression.getType().equals(CatscriptType.INT) || expression.getType().equals(CatscriptType.BOOLEAN)) {
             code.addVarInstruction(Opcodes.ISTORE, localStorageSlotFor);
         } else {
@@ -0,0 +1,703 @@
+package edu.montana.csci.csci468.snapshot;
+
+import edu.montana.csci.csci468.parser.CatscriptType;
+import edu.montana.csci.csci468.parser.ParseElement;
+import edu.montana.csci.csci468.parser.expressions.*;
+import edu.montana.csci.csci468.parser.statements.*;
+import edu.montana.csci.csci468.tokenizer.Token;
+import edu.montana.csci.csci468.tokenizer.TokenType;
+import edu.montana.csci.csci468.util.Atoms;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+// A compact binary form of a verified program, which loads back into the same tree with its
+// resolved types without tokenizing, parsing or validating the source again.
+//
+// A snapshot is the magic number and format version followed by the nodes of the tree in
+// pre-order.  Each node is its tag, the fields of its kind and the number of children that
+// follow it.  Variables are written with the depth and slot validation resolved them to,
+// and the nodes with scopes are written with the sizes of their frames.  Counts and other
+// small numbers are varints, and each distinct string is written once and referred to by its
+// index after that.  Loaded programs have no tokens, so they can be executed and compiled but
+// not reparsed
+public class ProgramSnapshot {
+
+    private static final int MAGIC = 0x43415453;
+    public static final int VERSION = 5;
+
+    // node tags
+    private static final int PROGRAM = 0;
+    private static final int PRINT = 1;
+    private static final int FOR = 2;
+    private static final int IF = 3;
+    private static final int VAR = 4;
+    private static final int ASSIGNMENT = 5;
+    private static final int CALL_STATEMENT = 6;
+    private static final int FUNCTION = 7;
+    private static final int RETURN = 8;
+    private static final int ADDITIVE = 9;
+    private static final int COMPARISON = 10;
+    private static final int EQUALITY = 11;
+    private static final int FACTOR = 12;
+    private static final int UNARY = 13;
+    private static final int PARENTHESIZED = 14;
+    private static final int LIST = 15;
+    private static final int CALL = 16;
+    private static final int IDENTIFIER = 17;
+    private static final int INTEGER = 18;
+    private static final int STRING = 19;
+    private static final int BOOLEAN = 20;
+    private static final int NULL = 21;
+
+    // type tags are indexes into TYPES, and a list type is its tag followed by its component type
+    private static final int NO_TYPE = 0;
+    private static final int LIST_TYPE = 7;
+    private static final CatscriptType[] TYPES = {null, CatscriptType.INT, CatscriptType.STRING,
+            CatscriptType.BOOLEAN, CatscriptType.OBJECT, CatscriptType.NULL, CatscriptType.VOID};
+
+    public static byte[] write(CatScriptProgram program) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            write(program, bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static void write(CatScriptProgram program, OutputStream out) throws IOException {
+        // types and frame sizes are only there once the program has been verified
+        if (!program.isVerified() || program.countErrors() > 0) {
+            throw new IllegalArgumentException("Only verified programs without errors can be written to a snapshot");
+        }
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        new SnapshotWriter(data).write(program);
+        data.flush();
+    }
+
+    public static CatScriptProgram read(byte[] snapshot) {
+        try {
+            return read(new ByteArrayInputStream(snapshot));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated snapshot", e);
+        }
+    }
+
+    public static CatScriptProgram read(InputStream in) throws IOException {
+        return new SnapshotReader(new DataInputStream(new BufferedInputStream(in))).read();
+    }
+
+    //============================================================
+    //  Writing
+    //============================================================
+
+    private static final class SnapshotWriter {
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final Map<FunctionDefinitionStatement, Integer> functions = new IdentityHashMap<>();
+
+        SnapshotWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        // the tree is written in pre-order from an explicit stack, as deeply nested
+        // expressions would overflow the call stack
+        void write(CatScriptProgram program) throws IOException {
+            out.writeInt(MAGIC);
+            writeVarint(VERSION);
+            Deque<ParseElement> pending = new ArrayDeque<>();
+            pending.push(program);
+            while (!pending.isEmpty()) {
+                List<? extends ParseElement> children = writeNode(pending.pop());
+                writeVarint(children.size());
+                ListIterator<? extends ParseElement> iterator = children.listIterator(children.size());
+                while (iterator.hasPrevious()) {
+                    pending.push(iterator.previous());
+                }
+            }
+        }
+
+        // writes the tag and fields of element, returning the children to write after it
+        private List<? extends ParseElement> writeNode(ParseElement element) throws IOException {
+            if (element instanceof CatScriptProgram) {
+                CatScriptProgram program = (CatScriptProgram) element;
+                out.writeByte(PROGRAM);
+                out.writeBoolean(program.isExpression());
+                return program.isExpression() ? Collections.singletonList(program.getExpression()) : program.getStatements();
+            } else if (element instanceof PrintStatement) {
+                out.writeByte(PRINT);
+                return Collections.singletonList(((PrintStatement) element).getExpression());
+            } else if (element instanceof ForStatement) {
+                ForStatement forStatement = (ForStatement) element;
+                out.writeByte(FOR);
+                writeString(forStatement.getVariableName());
+                writeAddress(forStatement.getDepth(), forStatement.getSlot());
+                writeVarint(forStatement.getFrameSize());
+                List<ParseElement> children = new ArrayList<>();
+                children.add(forStatement.getExpression());
+                children.addAll(forStatement.getBody());
+                return children;
+            } else if (element instanceof IfStatement) {
+                IfStatement ifStatement = (IfStatement) element;
+                out.writeByte(IF);
+                writeVarint(ifStatement.getTrueStatements().size());
+                writeVarint(ifStatement.getTrueFrameSize());
+                writeVarint(ifStatement.getElseFrameSize());
+                List<ParseElement> children = new ArrayList<>();
+                children.add(ifStatement.getExpression());
+                children.addAll(ifStatement.getTrueStatements());
+                children.addAll(ifStatement.getElseStatements());
+                return children;
+            } else if (element instanceof VariableStatement) {
+                VariableStatement variableStatement = (VariableStatement) element;
+                out.writeByte(VAR);
+                writeString(variableStatement.getVariableName());
+                writeType(variableStatement.getExplicitType());
+                writeType(variableStatement.getType());
+                writeAddress(variableStatement.getDepth(), variableStatement.getSlot());
+                return Collections.singletonList(variableStatement.getExpression());
+            } else if (element instanceof AssignmentStatement) {
+                AssignmentStatement assignmentStatement = (AssignmentStatement) element;
+                out.writeByte(ASSIGNMENT);
+                writeString(assignmentStatement.getVariableName());
+                writeAddress(assignmentStatement.getDepth(), assignmentStatement.getSlot());
+                return Collections.singletonList(assignmentStatement.getExpression());
+            } else if (element instanceof FunctionCallStatement) {
+                out.writeByte(CALL_STATEMENT);
+                return Collections.singletonList(((FunctionCallStatement) element).getExpression());
+            } else if (element instanceof FunctionDefinitionStatement) {
+                FunctionDefinitionStatement function = (FunctionDefinitionStatement) element;
+                functions.put(function, functions.size());
+                out.writeByte(FUNCTION);
+                writeString(function.getName());
+                writeVarint(function.getParameterCount());
+                for (int i = 0; i < function.getParameterCount(); i++) {
+                    writeString(function.getParameterName(i));
+                    writeType(function.getParameterType(i));
+                }
+                writeType(function.getType());
+                writeVarint(function.getFrameSize());
+                return function.getBody();
+            } else if (element instanceof ReturnStatement) {
+                ReturnStatement returnStatement = (ReturnStatement) element;
+                out.writeByte(RETURN);
+                // functions are written before anything returning from them, zero is none
+                Integer function = functions.get(returnStatement.getFunctionDefinition());
+                writeVarint(function == null ? 0 : function + 1);
+                Expression expression = returnStatement.getExpression();
+                return expression == null ? Collections.emptyList() : Collections.singletonList(expression);
+            } else if (element instanceof BinaryExpression) {
+                BinaryExpression binaryExpression = (BinaryExpression) element;
+                if (element instanceof AdditiveExpression) {
+                    out.writeByte(ADDITIVE);
+                } else if (element instanceof ComparisonExpression) {
+                    out.writeByte(COMPARISON);
+                } else if (element instanceof EqualityExpression) {
+                    out.writeByte(EQUALITY);
+                } else {
+                    out.writeByte(FACTOR);
+                }
+                writeOperator(binaryExpression.getOperator());
+                if (element instanceof AdditiveExpression) {
+                    // the only binary expression whose type depends on its operands
+                    writeType(binaryExpression.getType());
+                }
+                return List.of(binaryExpression.getLeftHandSide(), binaryExpression.getRightHandSide());
+            } else if (element instanceof UnaryExpression) {
+                UnaryExpression unaryExpression = (UnaryExpression) element;
+                out.writeByte(UNARY);
+                writeOperator(unaryExpression.getOperator());
+                return Collections.singletonList(unaryExpression.getRightHandSide());
+            } else if (element instanceof ParenthesizedExpression) {
+                out.writeByte(PARENTHESIZED);
+                writeType(((ParenthesizedExpression) element).getType());
+                return Collections.singletonList(((ParenthesizedExpression) element).getExpression());
+            } else if (element instanceof ListLiteralExpression) {
+                ListLiteralExpression listExpression = (ListLiteralExpression) element;
+                out.writeByte(LIST);
+                writeType(listExpression.getType());
+                return listExpression.getValues();
+            } else if (element instanceof FunctionCallExpression) {
+                FunctionCallExpression callExpression = (FunctionCallExpression) element;
+                out.writeByte(CALL);
+                writeString(callExpression.getName());
+                writeType(callExpression.getType());
+                return callExpression.getArguments();
+            } else if (element instanceof IdentifierExpression) {
+                IdentifierExpression identifierExpression = (IdentifierExpression) element;
+                out.writeByte(IDENTIFIER);
+                writeString(identifierExpression.getName());
+                writeType(identifierExpression.getType());
+                writeAddress(identifierExpression.getDepth(), identifierExpression.getSlot());
+            } else if (element instanceof IntegerLiteralExpression) {
+                int value = ((IntegerLiteralExpression) element).getValue();
+                out.writeByte(INTEGER);
+                writeVarint(value << 1 ^ value >> 31);
+            } else if (element instanceof StringLiteralExpression) {
+                out.writeByte(STRING);
+                writeString(((StringLiteralExpression) element).getValue());
+            } else if (element instanceof BooleanLiteralExpression) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean(((BooleanLiteralExpression) element).getValue());
+            } else if (element instanceof NullLiteralExpression) {
+                out.writeByte(NULL);
+            } else {
+                throw new IllegalArgumentException("Cannot write " + element + " to a snapshot");
+            }
+            return Collections.emptyList();
+        }
+
+        private void writeOperator(Token operator) throws IOException {
+            writeString(operator.getType().name());
+            writeString(operator.getStringValue());
+        }
+
+        private void writeAddress(int depth, int slot) throws IOException {
+            writeVarint(depth);
+            writeVarint(slot);
+        }
+
+        private void writeType(CatscriptType type) throws IOException {
+            while (type instanceof CatscriptType.ListType) {
+                out.writeByte(LIST_TYPE);
+                type = ((CatscriptType.ListType) type).getComponentType();
+            }
+            for (int tag = 0; tag < TYPES.length; tag++) {
+                if (TYPES[tag] == type) {
+                    out.writeByte(tag);
+                    return;
+                }
+            }
+            throw new IllegalArgumentException("Cannot write type " + type + " to a snapshot");
+        }
+
+        private void writeString(String string) throws IOException {
+            Integer index = strings.get(string);
+            if (index != null) {
+                writeVarint(index);
+            } else {
+                // the next index introduces a new string
+                writeVarint(strings.size());
+                strings.put(string, strings.size());
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                writeVarint(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        private void writeVarint(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.writeByte(value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+    }
+
+    //============================================================
+    //  Reading
+    //============================================================
+
+    // a node whose children are still being read
+    private static final class Frame {
+        int tag;
+        int childCount;
+        List<ParseElement> children;
+        ParseElement node;
+        String name;
+        Token operator;
+        CatscriptType type;
+        CatscriptType explicitType;
+        int value;
+        int depth;
+        int slot;
+        int frameSize;
+        int elseFrameSize;
+        boolean flag;
+    }
+
+    private static final class SnapshotReader {
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+        private final List<FunctionDefinitionStatement> functions = new ArrayList<>();
+        // the ids of the names being read, which become the program's own
+        private final Atoms atoms = new Atoms();
+        private final Map<Integer, Integer> globalSlots = new HashMap<>();
+
+        SnapshotReader(DataInputStream in) {
+            this.in = in;
+        }
+
+        CatScriptProgram read() throws IOException {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a CatScript snapshot");
+            }
+            int version = readVarint();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported snapshot version " + version);
+            }
+            Deque<Frame> pending = new ArrayDeque<>();
+            Frame root = readFrame();
+            if (root.tag != PROGRAM) {
+                throw new IllegalArgumentException("A snapshot must start with a program");
+            }
+            pending.push(root);
+            while (true) {
+                Frame frame = pending.peek();
+                if (frame.children.size() < frame.childCount) {
+                    pending.push(readFrame());
+                    continue;
+                }
+                pending.pop();
+                ParseElement node = finish(frame);
+                if (pending.isEmpty()) {
+                    return (CatScriptProgram) node;
+                }
+                pending.peek().children.add(node);
+            }
+        }
+
+        // reads the tag and fields of a node and how many children follow it
+        private Frame readFrame() throws IOException {
+            Frame frame = new Frame();
+            frame.tag = in.readUnsignedByte();
+            switch (frame.tag) {
+                case PROGRAM:
+                    frame.flag = in.readBoolean();
+                    break;
+                case PRINT:
+                case CALL_STATEMENT:
+                case NULL:
+                    break;
+                case PARENTHESIZED:
+                    frame.type = readType();
+                    break;
+                case FOR:
+                    frame.name = readString();
+                    readAddress(frame);
+                    frame.frameSize = readVarint();
+                    break;
+                case ASSIGNMENT:
+                    frame.name = readString();
+                    readAddress(frame);
+                    break;
+                case STRING:
+                    frame.name = readString();
+                    break;
+                case IF:
+                    frame.value = readVarint();
+                    frame.frameSize = readVarint();
+                    frame.elseFrameSize = readVarint();
+                    break;
+                case INTEGER:
+                    frame.value = readVarint();
+                    break;
+                case VAR:
+                    frame.name = readString();
+                    frame.explicitType = readType();
+                    frame.type = readType();
+                    readAddress(frame);
+                    break;
+                case FUNCTION:
+                    // created now, so that return statements in the body can refer to it
+                    FunctionDefinitionStatement function = new FunctionDefinitionStatement();
+                    function.setName(readString(), atoms);
+                    int parameterCount = readVarint();
+                    for (int i = 0; i < parameterCount; i++) {
+                        String parameterName = readString();
+                        TypeLiteral parameterType = new TypeLiteral();
+                        parameterType.setType(readType());
+                        function.addParameter(parameterName, parameterType, atoms);
+                    }
+                    CatscriptType returnType = readType();
+                    if (returnType == CatscriptType.VOID) {
+                        function.setType(null);
+                    } else {
+                        TypeLiteral returnLiteral = new TypeLiteral();
+                        returnLiteral.setType(returnType);
+                        function.setType(returnLiteral);
+                    }
+                    function.setFrameSize(readVarint());
+                    functions.add(function);
+                    frame.node = function;
+                    break;
+                case RETURN:
+                    frame.value = readVarint();
+                    if (frame.value > functions.size()) {
+                        throw new IllegalArgumentException("Return from unknown function " + frame.value);
+                    }
+                    break;
+                case ADDITIVE:
+                    frame.operator = readOperator();
+                    frame.type = readType();
+                    break;
+                case COMPARISON:
+                case EQUALITY:
+                case FACTOR:
+                case UNARY:
+                    frame.operator = readOperator();
+                    break;
+                case LIST:
+                    frame.type = readType();
+                    break;
+                case CALL:
+                    frame.name = readString();
+                    frame.type = readType();
+                    break;
+                case IDENTIFIER:
+                    frame.name = readString();
+                    frame.type = readType();
+                    readAddress(frame);
+                    break;
+                case BOOLEAN:
+                    frame.flag = in.readBoolean();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown node tag " + frame.tag);
+            }
+            frame.childCount = readVarint();
+            frame.children = new ArrayList<>(Math.min(frame.childCount, 16));
+            return frame;
+        }
+
+        // builds the node of a frame once all of its children have been read
+        private ParseElement finish(Frame frame) {
+            switch (frame.tag) {
+                case PROGRAM:
+                    CatScriptProgram program = new CatScriptProgram();
+                    program.setVerified(true);
+                    program.setAtoms(atoms);
+                    globalSlots.forEach(program::setGlobalSlot);
+                    if (frame.flag) {
+                        program.setExpression(expression(frame, 0, 1));
+                    } else {
+                        for (Statement statement : statements(frame, 0, frame.childCount)) {
+                            program.addStatement(statement);
+                        }
+                    }
+                    return program;
+                case PRINT:
+                    PrintStatement printStatement = new PrintStatement();
+                    printStatement.setExpression(expression(frame, 0, 1));
+                    return printStatement;
+                case FOR:
+                    ForStatement forStatement = new ForStatement();
+                    forStatement.setVariableName(frame.name, atoms);
+                    forStatement.setAddress(frame.depth, address(frame, forStatement.getVariableAtom()));
+                    forStatement.setExpression(expression(frame, 0, -1));
+                    forStatement.setBody(statements(frame, 1, frame.childCount));
+                    forStatement.setFrameSize(frame.frameSize);
+                    return forStatement;
+                case IF:
+                    IfStatement ifStatement = new IfStatement();
+                    if (frame.value >= frame.childCount) {
+                        throw new IllegalArgumentException("An if statement has " + frame.childCount + " children");
+                    }
+                    ifStatement.setExpression(expression(frame, 0, -1));
+                    ifStatement.setTrueStatements(statements(frame, 1, 1 + frame.value));
+                    ifStatement.setElseStatements(statements(frame, 1 + frame.value, frame.childCount));
+                    ifStatement.setFrameSizes(frame.frameSize, frame.elseFrameSize);
+                    return ifStatement;
+                case VAR:
+                    VariableStatement variableStatement = new VariableStatement();
+                    variableStatement.setVariableName(frame.name, atoms);
+                    variableStatement.setExplicitType(frame.explicitType);
+                    variableStatement.setExpression(expression(frame, 0, 1));
+                    variableStatement.setType(frame.type);
+                    variableStatement.setAddress(frame.depth, address(frame, variableStatement.getVariableAtom()));
+                    return variableStatement;
+                case ASSIGNMENT:
+                    AssignmentStatement assignmentStatement = new AssignmentStatement();
+                    assignmentStatement.setVariableName(frame.name, atoms);
+                    assignmentStatement.setAddress(frame.depth, address(frame, assignmentStatement.getVariableAtom()));
+                    assignmentStatement.setExpression(expression(frame, 0, 1));
+                    return assignmentStatement;
+                case CALL_STATEMENT:
+                    Expression call = expression(frame, 0, 1);
+                    if (!(call instanceof FunctionCallExpression)) {
+                        throw new IllegalArgumentException("A call statement must hold a function call");
+                    }
+                    return new FunctionCallStatement((FunctionCallExpression) call);
+                case FUNCTION:
+                    FunctionDefinitionStatement function = (FunctionDefinitionStatement) frame.node;
+                    function.setBody(statements(frame, 0, frame.childCount));
+                    function.setVerified(true);
+                    return function;
+                case RETURN:
+                    ReturnStatement returnStatement = new ReturnStatement();
+                    returnStatement.setFunctionDefinition(frame.value == 0 ? null : functions.get(frame.value - 1));
+                    if (frame.childCount > 0) {
+                        returnStatement.setExpression(expression(frame, 0, 1));
+                    }
+                    return returnStatement;
+                case ADDITIVE:
+                    AdditiveExpression additiveExpression =
+                            new AdditiveExpression(frame.operator, expression(frame, 0, 2), expression(frame, 1, 2));
+                    additiveExpression.setType(frame.type);
+                    return additiveExpression;
+                case COMPARISON:
+                    return new ComparisonExpression(frame.operator, expression(frame, 0, 2), expression(frame, 1, 2));
+                case EQUALITY:
+                    return new EqualityExpression(frame.operator, expression(frame, 0, 2), expression(frame, 1, 2));
+                case FACTOR:
+                    return new FactorExpression(frame.operator, expression(frame, 0, 2), expression(frame, 1, 2));
+                case UNARY:
+                    return new UnaryExpression(frame.operator, expression(frame, 0, 1));
+                case PARENTHESIZED:
+                    ParenthesizedExpression parenthesizedExpression = new ParenthesizedExpression(expression(frame, 0, 1));
+                    parenthesizedExpression.setType(frame.type);
+                    return parenthesizedExpression;
+                case LIST:
+                    ListLiteralExpression listExpression = new ListLiteralExpression(expressions(frame));
+                    listExpression.setType(frame.type);
+                    return listExpression;
+                case CALL:
+                    FunctionCallExpression callExpression = new FunctionCallExpression(frame.name, expressions(frame), atoms);
+                    callExpression.setType(frame.type);
+                    return callExpression;
+                case IDENTIFIER:
+                    IdentifierExpression identifierExpression = new IdentifierExpression(frame.name, atoms);
+                    identifierExpression.setType(frame.type);
+                    identifierExpression.setAddress(frame.depth, address(frame, identifierExpression.getAtom()));
+                    return leaf(frame, identifierExpression);
+                case INTEGER:
+                    int value = frame.value >>> 1 ^ -(frame.value & 1);
+                    return leaf(frame, new IntegerLiteralExpression(Integer.toString(value)));
+                case STRING:
+                    return leaf(frame, new StringLiteralExpression(frame.name));
+                case BOOLEAN:
+                    return leaf(frame, new BooleanLiteralExpression(frame.flag));
+                default:
+                    return leaf(frame, new NullLiteralExpression());
+            }
+        }
+
+        private void readAddress(Frame frame) throws IOException {
+            frame.depth = readVarint();
+            frame.slot = readVarint();
+        }
+
+        // the slot of a variable, noting the slots of globals for the program to keep
+        private int address(Frame frame, int atom) {
+            if (frame.depth == 0) {
+                globalSlots.put(atom, frame.slot);
+            }
+            return frame.slot;
+        }
+
+        private ParseElement leaf(Frame frame, ParseElement element) {
+            if (frame.childCount != 0) {
+                throw new IllegalArgumentException(element + " cannot have children");
+            }
+            return element;
+        }
+
+        // the child at index, which must be an expression, of a frame with count children
+        // or any number of them if count is negative
+        private Expression expression(Frame frame, int index, int count) {
+            if (count >= 0 ? frame.childCount != count : frame.childCount <= index) {
+                throw new IllegalArgumentException("Node " + frame.tag + " has " + frame.childCount + " children");
+            }
+            ParseElement child = frame.children.get(index);
+            if (!(child instanceof Expression)) {
+                throw new IllegalArgumentException("Expected an expression but found " + child);
+            }
+            return (Expression) child;
+        }
+
+        private List<Expression> expressions(Frame frame) {
+            List<Expression> expressions = new ArrayList<>(frame.childCount);
+            for (int i = 0; i < frame.childCount; i++) {
+                expressions.add(expression(frame, i, -1));
+            }
+            return expressions;
+        }
+
+        private List<Statement> statements(Frame frame, int from, int to) {
+            List<Statement> statements = new ArrayList<>(to - from);
+            for (ParseElement child : frame.children.subList(from, to)) {
+                if (!(child instanceof Statement)) {
+                    throw new IllegalArgumentException("Expected a statement but found " + child);
+                }
+                statements.add((Statement) child);
+            }
+            return statements;
+        }
+
+        private Token readOperator() throws IOException {
+            TokenType type;
+            try {
+                type = TokenType.valueOf(readString());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown operator in snapshot", e);
+            }
+            return new Token(0, 0, 0, 0, readString(), type, null);
+        }
+
+        private CatscriptType readType() throws IOException {
+            int listDepth = 0;
+            int tag = in.readUnsignedByte();
+            while (tag == LIST_TYPE) {
+                listDepth++;
+                tag = in.readUnsignedByte();
+            }
+            if (tag >= TYPES.length || tag == NO_TYPE && listDepth > 0) {
+                throw new IllegalArgumentException("Unknown type tag " + tag);
+            }
+            CatscriptType type = TYPES[tag];
+            for (int i = 0; i < listDepth; i++) {
+                type = CatscriptType.getListType(type);
+            }
+            return type;
+        }
+
+        private String readString() throws IOException {
+            int index = readVarint();
+            if (index < strings.size()) {
+                return strings.get(index);
+            } else if (index > strings.size()) {
+                throw new IllegalArgumentException("Unknown string " + index);
+            }
+            int length = readVarint();
+            if (length < 0) {
+                throw new IllegalArgumentException("Malformed string in snapshot");
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            String string = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(string);
+            return string;
+        }
+
+        private int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in snapshot");
+        }
+    }
+}
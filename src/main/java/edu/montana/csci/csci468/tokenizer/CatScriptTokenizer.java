@@ -1,187 +1,422 @@
 package edu.montana.csci.csci468.tokenizer;
 
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
 import static edu.montana.csci.csci468.tokenizer.TokenType.*;
 
 public class CatScriptTokenizer {
 
+    // character classes for 7 bit ascii, everything else is OTHER
+    private static final byte OTHER = 0;
+    private static final byte DIGIT = 1;
+    private static final byte ALPHA = 2;
+    private static final byte[] CHAR_CLASSES = new byte[128];
+    static {
+        for (char c = '0'; c <= '9'; c++) CHAR_CLASSES[c] = DIGIT;
+        for (char c = 'a'; c <= 'z'; c++) CHAR_CLASSES[c] = ALPHA;
+        for (char c = 'A'; c <= 'Z'; c++) CHAR_CLASSES[c] = ALPHA;
+        CHAR_CLASSES['_'] = ALPHA;
+    }
+
+    private static final KeywordTrie KEYWORD_TRIE = new KeywordTrie(KEYWORDS);
+
+    // sources are split into chunks of at least this many characters for parallel tokenizing
+    private static final int PARALLEL_CHUNK_SIZE = 1 << 16;
+
     TokenList tokenList;
-    String src;
+    CharSource src;
     int postion = 0;
     int line = 1;
     int lineOffset = 0;
+    boolean finished = false;
 
-    public CatScriptTokenizer(String source) {
-        src = source;
+    // the offset each source line starts at, used to find the line a token is on.  Like the
+    // tokens, the lines after the last edit are kept at the end of the array as a tail, with
+    // their offsets off by lineTailDelta
+    int[] lineStarts = new int[64];
+    int lineCount = 1;
+    int lineTail = 0;
+    int lineTailDelta = 0;
+
+    // how many times the source has been edited, and the offset, removed length and change in
+    // length of each edit, which is how tokens materialized before an edit catch up with it
+    int version = 0;
+    int[][] edits = new int[8][];
+
+    public CatScriptTokenizer(CharSequence source) {
+        src = CharSource.of(source);
         tokenList = new TokenList(this);
         tokenize();
     }
 
-    private void tokenize() {
-        consumeWhitespace();
-        while (!tokenizationEnd()) {
-            scanToken();
-            consumeWhitespace();
-        }
-        tokenList.addToken(EOF, "<EOF>", postion, postion, line, lineOffset);
+    private CatScriptTokenizer(CharSource source, boolean streaming) {
+        src = source;
+        tokenList = new TokenList(this, streaming);
     }
 
-    private void scanToken() {
-        if(scanNumber()) {
-            return;
+    // Streaming tokenizers scan tokens only as the token list asks for them and keep
+    // a bounded window of the source and tokens in memory
+    public static CatScriptTokenizer streaming(CharSequence source) {
+        return new CatScriptTokenizer(CharSource.of(source), true);
+    }
+
+    public static CatScriptTokenizer streaming(Reader source) {
+        return new CatScriptTokenizer(CharSource.of(source), true);
+    }
+
+    public static CatScriptTokenizer streaming(Path mappedFile) {
+        return new CatScriptTokenizer(CharSource.of(mappedFile), true);
+    }
+
+    // Tokenizes large sources in chunks on the common fork join pool.  The result is the
+    // same as tokenizing the source sequentially
+    public static CatScriptTokenizer parallel(CharSequence source) {
+        return parallel(source, PARALLEL_CHUNK_SIZE);
+    }
+
+    static CatScriptTokenizer parallel(CharSequence source, int chunkSize) {
+        List<CatScriptTokenizer> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < source.length()) {
+            int end = nextChunkEnd(source, start + chunkSize);
+            CatScriptTokenizer chunk = new CatScriptTokenizer(CharSource.of(source, end), false);
+            chunk.postion = start;
+            chunks.add(chunk);
+            start = end;
         }
-        if(scanString()) {
-            return;
+        if (chunks.size() < 2) {
+            return new CatScriptTokenizer(source);
         }
-        if(scanIdentifier()) {
-            return;
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (CatScriptTokenizer chunk : chunks) {
+            tasks.add(ForkJoinPool.commonPool().submit(chunk::tokenize));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
         }
-        scanSyntax();
+
+        CatScriptTokenizer tokenizer = new CatScriptTokenizer(CharSource.of(source), false);
+        TokenList tokens = tokenizer.tokenList;
+        for (CatScriptTokenizer chunk : chunks) {
+            TokenList chunkTokens = chunk.tokenList;
+            int lineDelta = tokenizer.line - 1;
+            tokenizer.appendLineStarts(chunk, 1, chunk.lineCount, 0);
+            tokenizer.line = chunk.line + lineDelta;
+            tokenizer.lineOffset = chunk.lineOffset;
+            int size = chunkTokens.size;
+            // two slashes in a row are a comment, which runs to the end of the whole source
+            boolean comment = size > 2 && chunkTokens.types[size - 2] == SLASH.ordinal() &&
+                    chunkTokens.types[size - 3] == SLASH.ordinal();
+            tokens.appendShifted(chunkTokens, 0, size - 1, lineDelta);
+            if (comment) {
+                break;
+            }
+        }
+        tokenizer.postion = source.length();
+        tokens.addToken(EOF, tokenizer.postion, tokenizer.postion, tokenizer.line, tokenizer.lineOffset);
+        tokenizer.finished = true;
+        return tokenizer;
     }
 
-    private boolean scanString() {
-        int start = postion;
-        if(matchAndConsume('"')) {
-            while(!matchAndConsume('"')) {
-                if(peek() == '\n' || tokenizationEnd()) {
-                    if(peek() == '\n') { line++; }
-                    lineOffset += postion - start;
-                    tokenList.addToken(ERROR, "<Unexpected Token: [" + src.substring(start, postion) + "]>", start, postion, line, lineOffset);
-                    return true;
-                }
-                char currentChar = takeChar();
-                if (peek() == '"' && currentChar == '\\') {
-                    takeChar();
-                }
+    // A chunk can end after any newline at or past target that no token spans.  Strings
+    // and numbers stop at a newline, but a slash takes the whitespace after it along
+    private static int nextChunkEnd(CharSequence source, int target) {
+        for (int i = target - 1; i < source.length(); i++) {
+            if (source.charAt(i) == '\n' && !followsSlash(source, i)) {
+                return i + 1;
+            }
+        }
+        return source.length();
+    }
+
+    private static boolean followsSlash(CharSequence source, int newline) {
+        for (int i = newline - 1; i >= 0; i--) {
+            char c = source.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                return c == '/';
             }
-            lineOffset += postion - start;
-            tokenList.addToken(STRING, src.substring(start + 1, postion - 1), start, postion, line, lineOffset);
-            return true;
         }
         return false;
     }
 
-    private boolean scanIdentifier() {
-        if( isAlpha(peek())) {
-            int start = postion;
-            while (isAlphaNumeric(peek())) {
-                takeChar();
+    // Retokenizes a token list after the given edit to its source, in place, returning the
+    // list.  Tokens that end before the edit are kept, the scanner restarts after them, and once
+    // it produces a token that lines up with one after the edit the rest of the tokens are kept
+    // too.  The source, the tokens and the line starts are all gap buffers with the gap at the
+    // last edit, so only what lies between this edit and the last one is moved, apart from the
+    // first edit copying the source into its buffer
+    public static TokenList retokenize(TokenList previous, int offset, int removedLength, String insertedText) {
+        if (previous.isStreaming()) {
+            throw new IllegalArgumentException("Streaming token lists cannot be retokenized");
+        }
+        CatScriptTokenizer tokenizer = previous.tokenizer;
+        TokenList tokens = previous;
+        int delta = insertedText.length() - removedLength;
+        int editEnd = offset + insertedText.length();
+        int oldPosition = tokenizer.postion;
+        int oldLine = tokenizer.line;
+        int oldLineOffset = tokenizer.lineOffset;
+
+        // a token only looks at one character past its end, so the ones ending before
+        // the edit are unchanged, except that a slash is scanned together with a
+        // following comment slash
+        int kept = tokens.firstEndingAtOrAfter(offset);
+        while (kept > 0 && tokens.type(kept - 1) == SLASH.ordinal()) {
+            kept--;
+        }
+        if (kept > 0) {
+            int last = kept - 1;
+            tokenizer.postion = tokens.end(last);
+            tokenizer.line = tokens.line(last);
+            tokenizer.lineOffset = tokens.lineOffset(last) + tokens.end(last) - tokens.start(last);
+        } else {
+            tokenizer.postion = 0;
+            tokenizer.line = 1;
+            tokenizer.lineOffset = 0;
+        }
+        tokens.keptBefore = tokens.start(kept);
+        tokens.shiftedFrom = Integer.MAX_VALUE;
+        tokens.moveGap(kept);
+        tokens.tailDelta += delta;
+        tokenizer.moveLineGap(tokenizer.getLineIndex(tokenizer.postion) + 1);
+        tokenizer.lineTailDelta += delta;
+        if (!(tokenizer.src instanceof CharSource.GapSource)) {
+            tokenizer.src = new CharSource.GapSource(tokenizer.src.toString());
+        }
+        ((CharSource.GapSource) tokenizer.src).replace(offset, removedLength, insertedText);
+        tokenizer.finished = false;
+        if (tokenizer.version == tokenizer.edits.length) {
+            tokenizer.edits = Arrays.copyOf(tokenizer.edits, tokenizer.version * 2);
+        }
+        tokenizer.edits[tokenizer.version++] = new int[]{offset, removedLength, delta};
+        tokens.currentToken = 0;
+
+        // the tail now holds the tokens from the edit on, those before editEnd only in name
+        boolean linedUp = false;
+        while (tokenizer.scanNext()) {
+            int last = tokens.gap - 1;
+            int start = tokens.start(last);
+            if (start < editEnd || tokens.type(last) == EOF.ordinal() || tokens.type(last) == SLASH.ordinal()) {
+                continue;
             }
-            String value = src.substring(start, postion);
-            if (KEYWORDS.containsKey(value)) {
-                lineOffset += postion - start;
-                tokenList.addToken(KEYWORDS.get(value), value, start, postion, line, lineOffset);
-            } else {
-                lineOffset += postion - start;
-                tokenList.addToken(IDENTIFIER, value, start, postion, line, lineOffset);
+            while (tokens.tail > 0 && tokens.start(tokens.gap) < start) {
+                tokens.dropTail();
             }
-            return true;
-        } else {
-            return false;
+            int match = tokens.gap;
+            if (tokens.tail > 0 && tokens.start(match) == start && tokens.end(match) == tokens.end(last) &&
+                    tokens.type(match) == tokens.type(last)) {
+                int lineDelta = tokens.line(last) - tokens.line(match);
+                int columnDelta = tokens.lineOffset(last) - tokens.lineOffset(match);
+                tokens.shiftedFrom = start - delta;
+                tokens.dropTail();
+                tokens.shiftTail(lineDelta, columnDelta);
+                int end = tokens.end(last);
+                while (tokenizer.lineTail > 0 && tokenizer.lineStart(tokenizer.lineCount - tokenizer.lineTail) <= end) {
+                    tokenizer.dropLineTail();
+                }
+                tokenizer.postion = oldPosition + delta;
+                tokenizer.line = oldLine + lineDelta;
+                tokenizer.lineOffset = oldLineOffset;
+                tokenizer.finished = true;
+                linedUp = true;
+            }
+        }
+        // the scanner reached the end without lining up, so nothing after the edit is kept
+        while (!linedUp && tokens.tail > 0) {
+            tokens.dropTail();
+        }
+        while (!linedUp && tokenizer.lineTail > 0) {
+            tokenizer.dropLineTail();
         }
+        return tokens;
     }
 
-    private boolean scanNumber() {
-        if(isDigit(peek())) {
-            int start = postion;
-            while (isDigit(peek())) {
-                takeChar();
-            }
-            lineOffset += postion - start;
-            tokenList.addToken(INTEGER, src.substring(start, postion), start, postion, line, lineOffset);
-            return true;
-        } else {
+    // Retokenizes a previous token list for a new version of its source, treating the
+    // text between the common prefix and suffix as the edit
+    public static TokenList retokenize(TokenList previous, String source) {
+        String oldSource = previous.tokenizer.src.toString();
+        int limit = Math.min(oldSource.length(), source.length());
+        int prefix = 0;
+        while (prefix < limit && oldSource.charAt(prefix) == source.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < limit - prefix &&
+                oldSource.charAt(oldSource.length() - 1 - suffix) == source.charAt(source.length() - 1 - suffix)) {
+            suffix++;
+        }
+        return retokenize(previous, prefix, oldSource.length() - prefix - suffix,
+                source.substring(prefix, source.length() - suffix));
+    }
+
+    private void tokenize() {
+        while (scanNext()) {
+            // keep going until EOF
+        }
+    }
+
+    // scans the next token(s) into the token list, returning false once EOF has been added
+    boolean scanNext() {
+        if (finished) {
             return false;
         }
+        consumeWhitespace();
+        if (tokenizationEnd()) {
+            tokenList.addToken(EOF, postion, postion, line, lineOffset);
+            finished = true;
+        } else {
+            scanToken();
+        }
+        src.release(postion);
+        return true;
     }
 
-    private void scanSyntax() {
+    private void scanToken() {
         int start = postion;
-        lineOffset++;
-        if (matchAndConsume('(')) {
-            tokenList.addToken(LEFT_PAREN, "(", start, postion, line, lineOffset);
-        } else if(matchAndConsume(')')) {
-            tokenList.addToken(RIGHT_PAREN, ")", start, postion, line, lineOffset);
-        } else if(matchAndConsume('{')) {
-            tokenList.addToken(LEFT_BRACE, "{", start, postion, line, lineOffset);
-        } else if(matchAndConsume('}')) {
-            tokenList.addToken(RIGHT_BRACE, "}", start, postion, line, lineOffset);
-        } else if(matchAndConsume('[')) {
-            tokenList.addToken(LEFT_BRACKET, "[", start, postion, line, lineOffset);
-        } else if(matchAndConsume(']')) {
-            tokenList.addToken(RIGHT_BRACKET, "]", start, postion, line, lineOffset);
-        } else if(matchAndConsume(':')) {
-            tokenList.addToken(COLON, ":", start, postion, line, lineOffset);
-        } else if(matchAndConsume(',')) {
-            tokenList.addToken(COMMA, ",", start, postion, line, lineOffset);
-        } else if(matchAndConsume('.')) {
-            tokenList.addToken(DOT, ".", start, postion, line, lineOffset);
-        } else if(matchAndConsume('+')) {
-            tokenList.addToken(PLUS, "+", start, postion, line, lineOffset);
-        } else if(matchAndConsume('-')) {
-            tokenList.addToken(MINUS, "-", start, postion, line, lineOffset);
-        } else if(matchAndConsume('/')) {
-            consumeWhitespace();
-            tokenList.addToken(SLASH, "/", start, postion, line, lineOffset);
-            if (postion < src.length() && matchAndConsume('/')) {
-                start++;
-                tokenList.addToken(SLASH, "/", start, postion, line, lineOffset);
-                postion = src.length();
-            }
-        } else if(matchAndConsume('*')) {
-            tokenList.addToken(STAR, "*", start, postion, line, lineOffset);
-        } else if(matchAndConsume('!')) {
-            if (matchAndConsume('=')) {
-                lineOffset++;
-                tokenList.addToken(BANG_EQUAL, "!=", start, postion, line, lineOffset);
-            }
-        } else if(matchAndConsume('=')) {
-            if (matchAndConsume('=')) {
+        char c = takeChar();
+        switch (c) {
+            case '"':
+                scanString(start);
+                break;
+            case '(':
+                addSyntaxToken(LEFT_PAREN, start);
+                break;
+            case ')':
+                addSyntaxToken(RIGHT_PAREN, start);
+                break;
+            case '{':
+                addSyntaxToken(LEFT_BRACE, start);
+                break;
+            case '}':
+                addSyntaxToken(RIGHT_BRACE, start);
+                break;
+            case '[':
+                addSyntaxToken(LEFT_BRACKET, start);
+                break;
+            case ']':
+                addSyntaxToken(RIGHT_BRACKET, start);
+                break;
+            case ':':
+                addSyntaxToken(COLON, start);
+                break;
+            case ',':
+                addSyntaxToken(COMMA, start);
+                break;
+            case '.':
+                addSyntaxToken(DOT, start);
+                break;
+            case '+':
+                addSyntaxToken(PLUS, start);
+                break;
+            case '-':
+                addSyntaxToken(MINUS, start);
+                break;
+            case '*':
+                addSyntaxToken(STAR, start);
+                break;
+            case '/':
                 lineOffset++;
-                tokenList.addToken(EQUAL_EQUAL, "==", start, postion, line, lineOffset);
-            } else {
-                tokenList.addToken(EQUAL, "=", start, postion, line, lineOffset);
-            }
-        } else if(matchAndConsume('>')) {
-            if (matchAndConsume('=')) {
-                lineOffset++;
-                tokenList.addToken(GREATER_EQUAL, ">=", start, postion, line, lineOffset);
-            } else {
-                tokenList.addToken(GREATER, ">", start, postion, line, lineOffset);
+                consumeWhitespace();
+                tokenList.addToken(SLASH, start, postion, line, lineOffset);
+                if (!tokenizationEnd() && matchAndConsume('/')) {
+                    start++;
+                    tokenList.addToken(SLASH, start, postion, line, lineOffset);
+                    postion = src.skipToEnd(postion);
+                }
+                break;
+            case '!':
+                if (matchAndConsume('=')) {
+                    addSyntaxToken(BANG_EQUAL, start);
+                } else {
+                    lineOffset++;
+                }
+                break;
+            case '=':
+                addSyntaxToken(matchAndConsume('=') ? EQUAL_EQUAL : EQUAL, start);
+                break;
+            case '>':
+                addSyntaxToken(matchAndConsume('=') ? GREATER_EQUAL : GREATER, start);
+                break;
+            case '<':
+                addSyntaxToken(matchAndConsume('=') ? LESS_EQUAL : LESS, start);
+                break;
+            default:
+                if (isDigit(c)) {
+                    scanNumber(start);
+                } else if (isAlpha(c)) {
+                    scanIdentifier(start);
+                } else {
+                    addSyntaxToken(ERROR, start);
+                }
+        }
+    }
+
+    private void addSyntaxToken(TokenType type, int start) {
+        lineOffset += postion - start;
+        tokenList.addToken(type, start, postion, line, lineOffset);
+    }
+
+    private void scanString(int start) {
+        while(!matchAndConsume('"')) {
+            if(peek() == '\n' || tokenizationEnd()) {
+                if(peek() == '\n') { line++; }
+                lineOffset += postion - start;
+                tokenList.addToken(ERROR, start, postion, line, lineOffset);
+                return;
             }
-        } else if(matchAndConsume('<')) {
-            if (matchAndConsume('=')) {
-                lineOffset++;
-                tokenList.addToken(LESS_EQUAL, "<=", start, postion, line, lineOffset);
-            } else {
-                tokenList.addToken(LESS, "<", start, postion, line, lineOffset);
+            char currentChar = takeChar();
+            if (peek() == '"' && currentChar == '\\') {
+                takeChar();
             }
-        } else {
-            tokenList.addToken(ERROR, "<Unexpected Token: [" + takeChar() + "]>", start, postion, line, lineOffset);
         }
+        lineOffset += postion - start;
+        tokenList.addToken(STRING, start, postion, line, lineOffset);
+    }
+
+    private void scanIdentifier(int start) {
+        while (isAlphaNumeric(peek())) {
+            postion++;
+        }
+        lineOffset += postion - start;
+        tokenList.addToken(KEYWORD_TRIE.match(src, start, postion), start, postion, line, lineOffset);
+    }
+
+    private void scanNumber(int start) {
+        while (isDigit(peek())) {
+            postion++;
+        }
+        lineOffset += postion - start;
+        tokenList.addToken(INTEGER, start, postion, line, lineOffset);
     }
 
     private void consumeWhitespace() {
-        while (!tokenizationEnd()) {
-            char c = peek();
-            if (c == ' ') {
-                lineOffset++;
-                postion++;
-                continue;
-            } else if (c == '\r') {
-                lineOffset = 0;
-                postion++;
-                continue;
-            } else if (c == '\t') {
-                lineOffset += 4;
-                postion++;
-                continue;
-            } else if (c == '\n') {
-                lineOffset = 0;
-                line++;
-                postion++;
-                continue;
+        while (true) {
+            switch (peek()) {
+                case ' ':
+                    lineOffset++;
+                    break;
+                case '\r':
+                    lineOffset = 0;
+                    break;
+                case '\t':
+                    lineOffset += 4;
+                    break;
+                case '\n':
+                    lineOffset = 0;
+                    line++;
+                    addLineStart(postion + 1);
+                    break;
+                default:
+                    return;
             }
-            break;
+            postion++;
         }
     }
 
@@ -190,22 +425,19 @@ public class CatScriptTokenizer {
     //===============================================================
 
     private char peek() {
-        if (tokenizationEnd()) return '\0';
         return src.charAt(postion);
     }
 
     private boolean isAlpha(char c) {
-        return (c >= 'a' && c <= 'z') ||
-                (c >= 'A' && c <= 'Z') ||
-                c == '_';
+        return c < 128 && CHAR_CLASSES[c] == ALPHA;
     }
 
     private boolean isAlphaNumeric(char c) {
-        return isAlpha(c) || isDigit(c);
+        return c < 128 && CHAR_CLASSES[c] != OTHER;
     }
 
     private boolean isDigit(char c) {
-        return c >= '0' && c <= '9';
+        return c < 128 && CHAR_CLASSES[c] == DIGIT;
     }
 
     private char takeChar() {
@@ -215,7 +447,7 @@ public class CatScriptTokenizer {
     }
 
     private boolean tokenizationEnd() {
-        return postion >= src.length();
+        return src.isEnd(postion);
     }
 
     public boolean matchAndConsume(char c) {
@@ -230,14 +462,135 @@ public class CatScriptTokenizer {
         return tokenList;
     }
 
+    // string values are derived from the source span of a token, so they are only
+    // created when someone asks for them
+    String getStringValue(TokenType type, int start, int end) {
+        switch (type) {
+            case IDENTIFIER:
+            case INTEGER:
+                return src.substring(start, end);
+            case STRING:
+                return src.substring(start + 1, end - 1);
+            case ERROR:
+                return "<Unexpected Token: [" + src.substring(start, end) + "]>";
+            case EOF:
+                return "<EOF>";
+            case LEFT_PAREN: return "(";
+            case RIGHT_PAREN: return ")";
+            case LEFT_BRACE: return "{";
+            case RIGHT_BRACE: return "}";
+            case LEFT_BRACKET: return "[";
+            case RIGHT_BRACKET: return "]";
+            case COLON: return ":";
+            case COMMA: return ",";
+            case DOT: return ".";
+            case MINUS: return "-";
+            case PLUS: return "+";
+            case SLASH: return "/";
+            case STAR: return "*";
+            case BANG_EQUAL: return "!=";
+            case EQUAL: return "=";
+            case EQUAL_EQUAL: return "==";
+            case GREATER: return ">";
+            case GREATER_EQUAL: return ">=";
+            case LESS: return "<";
+            case LESS_EQUAL: return "<=";
+            default:
+                return src.substring(start, end);
+        }
+    }
+
+    private void addLineStart(int position) {
+        if (tokenList.isStreaming()) {
+            return;
+        }
+        if (lineCount == lineStarts.length) {
+            int[] newLineStarts = new int[lineCount * 2];
+            System.arraycopy(lineStarts, 0, newLineStarts, 0, lineCount - lineTail);
+            System.arraycopy(lineStarts, lineCount - lineTail, newLineStarts, newLineStarts.length - lineTail, lineTail);
+            lineStarts = newLineStarts;
+        }
+        lineStarts[lineCount - lineTail] = position;
+        lineCount++;
+    }
+
+    private void appendLineStarts(CatScriptTokenizer other, int from, int to, int delta) {
+        for (int i = from; i < to; i++) {
+            int position = other.lineStart(i) + delta;
+            if (position > lineStart(lineCount - 1)) {
+                addLineStart(position);
+            }
+        }
+    }
+
+    int lineStart(int index) {
+        int gap = lineCount - lineTail;
+        return index < gap ? lineStarts[index] : lineStarts[index - gap + lineStarts.length - lineTail] + lineTailDelta;
+    }
+
+    // makes the line at index the first of the tail
+    private void moveLineGap(int index) {
+        for (int gap = lineCount - lineTail; gap > index; gap--) {
+            lineTail++;
+            lineStarts[lineStarts.length - lineTail] = lineStarts[gap - 1] - lineTailDelta;
+        }
+        for (int gap = lineCount - lineTail; gap < index; gap++) {
+            lineStarts[gap] = lineStarts[lineStarts.length - lineTail] + lineTailDelta;
+            lineTail--;
+        }
+    }
+
+    private void dropLineTail() {
+        lineTail--;
+        lineCount--;
+    }
+
+    // the offset each line starts at, in order
+    int[] getLineStarts() {
+        int[] starts = new int[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            starts[i] = lineStart(i);
+        }
+        return starts;
+    }
+
+    // the zero based index of the line containing position
+    int getLineIndex(int position) {
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lineStart(mid) <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    String getLineContent(Token token) {
+        if (tokenList.isStreaming()) {
+            // streaming sources do not keep lines that have already been scanned
+            return "";
+        }
+        int start = lineStart(getLineIndex(token.getStart()));
+        int end = start;
+        while (!src.isEnd(end) && src.charAt(end) != '\n') {
+            end++;
+        }
+        return src.substring(start, end);
+    }
+
     @Override
     public String toString() {
-        if (tokenizationEnd()) {
-            return src + "-->[]<--";
+        String source = src.toString();
+        if (tokenizationEnd() || tokenList.isStreaming()) {
+            return source + "-->[]<--";
         } else {
-            return src.substring(0, postion) + "-->[" + peek() + "]<--" +
-                    ((postion == src.length() - 1) ? "" :
-                            src.substring(postion + 1, src.length() - 1));
+            return source.substring(0, postion) + "-->[" + peek() + "]<--" +
+                    ((postion == source.length() - 1) ? "" :
+                            source.substring(postion + 1, source.length() - 1));
         }
     }
 }
\ No newline at end of file
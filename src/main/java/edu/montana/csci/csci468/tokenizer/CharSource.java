@@ -0,0 +1,290 @@
+package edu.montana.csci.csci468.tokenizer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+// The characters the tokenizer scans.  Positions are always absolute offsets into the
+// source, so a streaming source can drop characters it will never be asked for again
+abstract class CharSource {
+
+    // returns '\0' past the end of the source
+    abstract char charAt(int position);
+
+    abstract boolean isEnd(int position);
+
+    abstract String substring(int start, int end);
+
+    // consumes the rest of the source, returning the end position
+    abstract int skipToEnd(int position);
+
+    // the characters before position will not be requested again
+    void release(int position) {
+    }
+
+    static CharSource of(CharSequence source) {
+        return new SequenceSource(source);
+    }
+
+    // the characters of source before end
+    static CharSource of(CharSequence source, int end) {
+        return new SequenceSource(source, end);
+    }
+
+    static CharSource of(Reader reader) {
+        return new ReaderSource(reader);
+    }
+
+    static CharSource of(Path file) {
+        try (FileChannel channel = FileChannel.open(file)) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ReaderSource(new MappedReader(bytes));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static class SequenceSource extends CharSource {
+        final CharSequence src;
+        private final int length;
+
+        SequenceSource(CharSequence src) {
+            this(src, src.length());
+        }
+
+        SequenceSource(CharSequence src, int length) {
+            this.src = src;
+            this.length = length;
+        }
+
+        @Override
+        char charAt(int position) {
+            if (position >= length) return '\0';
+            return src.charAt(position);
+        }
+
+        @Override
+        boolean isEnd(int position) {
+            return position >= length;
+        }
+
+        @Override
+        String substring(int start, int end) {
+            return src.subSequence(start, end).toString();
+        }
+
+        @Override
+        int skipToEnd(int position) {
+            return length;
+        }
+
+        @Override
+        public String toString() {
+            return src.toString();
+        }
+    }
+
+    // The source of an eager tokenizer once it has been edited, kept in a gap buffer with the
+    // gap at the last edit, so an edit only moves the characters between it and the last one
+    static class GapSource extends CharSource {
+        private char[] buffer;
+        private int gapStart;
+        private int gapEnd;
+
+        GapSource(String src) {
+            buffer = new char[src.length() + 64];
+            src.getChars(0, src.length(), buffer, 0);
+            gapStart = src.length();
+            gapEnd = buffer.length;
+        }
+
+        private int length() {
+            return buffer.length - (gapEnd - gapStart);
+        }
+
+        @Override
+        char charAt(int position) {
+            if (position >= length()) return '\0';
+            return buffer[position < gapStart ? position : position + gapEnd - gapStart];
+        }
+
+        @Override
+        boolean isEnd(int position) {
+            return position >= length();
+        }
+
+        @Override
+        String substring(int start, int end) {
+            if (end <= gapStart) {
+                return new String(buffer, start, end - start);
+            } else if (start >= gapStart) {
+                return new String(buffer, start + gapEnd - gapStart, end - start);
+            }
+            return new StringBuilder(end - start)
+                    .append(buffer, start, gapStart - start)
+                    .append(buffer, gapEnd, end - gapStart)
+                    .toString();
+        }
+
+        @Override
+        int skipToEnd(int position) {
+            return length();
+        }
+
+        // replaces removedLength characters at offset with text
+        void replace(int offset, int removedLength, String text) {
+            if (offset < gapStart) {
+                int moved = gapStart - offset;
+                System.arraycopy(buffer, offset, buffer, gapEnd - moved, moved);
+                gapStart = offset;
+                gapEnd -= moved;
+            } else if (offset > gapStart) {
+                int moved = offset - gapStart;
+                System.arraycopy(buffer, gapEnd, buffer, gapStart, moved);
+                gapStart = offset;
+                gapEnd += moved;
+            }
+            gapEnd += removedLength;
+            if (gapEnd - gapStart < text.length()) {
+                char[] newBuffer = new char[Math.max(buffer.length * 2, length() + text.length() + 64)];
+                int tail = buffer.length - gapEnd;
+                System.arraycopy(buffer, 0, newBuffer, 0, gapStart);
+                System.arraycopy(buffer, gapEnd, newBuffer, newBuffer.length - tail, tail);
+                buffer = newBuffer;
+                gapEnd = newBuffer.length - tail;
+            }
+            text.getChars(0, text.length(), buffer, gapStart);
+            gapStart += text.length();
+        }
+
+        @Override
+        public String toString() {
+            return substring(0, length());
+        }
+    }
+
+    // a sliding window over a reader, only the characters from the last released
+    // position onwards are kept in memory
+    static class ReaderSource extends CharSource {
+        private static final int BUFFER_SIZE = 8192;
+
+        private final Reader reader;
+        private char[] buffer = new char[BUFFER_SIZE];
+        private int offset = 0;
+        private int length = 0;
+        private boolean exhausted = false;
+
+        ReaderSource(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        char charAt(int position) {
+            int index = position - offset;
+            while (index >= length) {
+                if (!fill()) return '\0';
+            }
+            return buffer[index];
+        }
+
+        @Override
+        boolean isEnd(int position) {
+            while (position - offset >= length) {
+                if (!fill()) return true;
+            }
+            return false;
+        }
+
+        @Override
+        String substring(int start, int end) {
+            if (start < offset) {
+                throw new IllegalStateException("Position " + start + " has already been released");
+            }
+            isEnd(end - 1);
+            return new String(buffer, start - offset, end - start);
+        }
+
+        @Override
+        int skipToEnd(int position) {
+            release(position);
+            while (fill()) {
+                release(offset + length);
+            }
+            return offset + length;
+        }
+
+        @Override
+        void release(int position) {
+            int discard = position - offset;
+            if (discard > buffer.length / 2) {
+                System.arraycopy(buffer, discard, buffer, 0, length - discard);
+                offset = position;
+                length -= discard;
+            }
+        }
+
+        private boolean fill() {
+            if (exhausted) return false;
+            if (length == buffer.length) {
+                char[] newBuffer = new char[buffer.length * 2];
+                System.arraycopy(buffer, 0, newBuffer, 0, length);
+                buffer = newBuffer;
+            }
+            try {
+                int read = reader.read(buffer, length, buffer.length - length);
+                if (read < 0) {
+                    exhausted = true;
+                    reader.close();
+                    return false;
+                }
+                length += read;
+                return true;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return new String(buffer, 0, length);
+        }
+    }
+
+    // decodes a memory mapped file on demand, so only the window of the reader source
+    // is ever on the heap
+    static class MappedReader extends Reader {
+        private final ByteBuffer bytes;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        private boolean flushed = false;
+
+        MappedReader(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read(char[] chars, int off, int len) throws IOException {
+            if (flushed) return -1;
+            CharBuffer out = CharBuffer.wrap(chars, off, len);
+            CoderResult result = decoder.decode(bytes, out, true);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (!bytes.hasRemaining() && result.isUnderflow()) {
+                flushed = decoder.flush(out).isUnderflow();
+            }
+            int read = out.position() - off;
+            return (read == 0 && flushed) ? -1 : read;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
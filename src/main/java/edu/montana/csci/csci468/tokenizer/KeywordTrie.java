@@ -0,0 +1,55 @@
+package edu.montana.csci.csci468.tokenizer;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static edu.montana.csci.csci468.tokenizer.TokenType.IDENTIFIER;
+
+// A trie over the lower case letters of the keywords, so an identifier can be checked
+// against the keywords in place in the source, without creating a string for it
+class KeywordTrie {
+
+    private static final int WIDTH = 26;
+
+    // children[node * WIDTH + letter] is the child node, 0 means there is none
+    private int[] children = new int[WIDTH * 16];
+    private TokenType[] types = new TokenType[16];
+    private int nodeCount = 1;
+
+    KeywordTrie(Map<String, TokenType> keywords) {
+        for (Map.Entry<String, TokenType> keyword : keywords.entrySet()) {
+            put(keyword.getKey(), keyword.getValue());
+        }
+    }
+
+    private void put(String keyword, TokenType type) {
+        int node = 0;
+        for (int i = 0; i < keyword.length(); i++) {
+            int index = node * WIDTH + (keyword.charAt(i) - 'a');
+            if (children[index] == 0) {
+                if (nodeCount == types.length) {
+                    types = Arrays.copyOf(types, nodeCount * 2);
+                    children = Arrays.copyOf(children, nodeCount * 2 * WIDTH);
+                }
+                children[index] = nodeCount++;
+            }
+            node = children[index];
+        }
+        types[node] = type;
+    }
+
+    TokenType match(CharSource src, int start, int end) {
+        int node = 0;
+        for (int i = start; i < end; i++) {
+            int letter = src.charAt(i) - 'a';
+            if (letter < 0 || letter >= WIDTH) {
+                return IDENTIFIER;
+            }
+            node = children[node * WIDTH + letter];
+            if (node == 0) {
+                return IDENTIFIER;
+            }
+        }
+        return types[node] == null ? IDENTIFIER : types[node];
+    }
+}
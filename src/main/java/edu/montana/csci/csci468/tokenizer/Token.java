@@ -8,7 +8,10 @@ public class Token {
     int lineOffset;
     String stringValue;
     TokenType type;
-    private final CatScriptTokenizer tokenizer;
+    CatScriptTokenizer tokenizer;
+    // the edit of the tokenizer's source the position is for.  Tokens are only moved to later
+    // edits when they are read, so a reparse need not visit the statements it keeps
+    volatile int version;
 
     public Token(int start, int end, int line, int lineOffset, String stringValue, TokenType type, CatScriptTokenizer tokenizer) {
         this.start = start;
@@ -18,37 +21,56 @@ public class Token {
         this.stringValue = stringValue;
         this.type = type;
         this.tokenizer = tokenizer;
+        this.version = tokenizer == null ? 0 : tokenizer.version;
     }
 
     public int getStart() {
+        relocate();
         return start;
     }
 
     public int getEnd() {
+        relocate();
         return end;
     }
 
     public int getLine() {
+        relocate();
         return line;
     }
 
     public int getLineOffset() {
+        relocate();
         return lineOffset;
     }
 
     public String getStringValue() {
+        if (stringValue == null) {
+            relocate();
+            stringValue = tokenizer.getStringValue(type, start, end);
+        }
         return stringValue;
     }
 
+    private void relocate() {
+        if (tokenizer != null && version != tokenizer.version) {
+            synchronized (this) {
+                if (version != tokenizer.version) {
+                    tokenizer.getTokens().relocate(this);
+                }
+            }
+        }
+    }
+
     public TokenType getType() {
         return type;
     }
 
     @Override
     public String toString() {
-        return "Token(\"" + stringValue + "\"){" +
+        return "Token(\"" + getStringValue() + "\"){" +
                 "type=" + type +
-                ", start=" + start +
+                ", start=" + getStart() +
                 ", end=" + end +
                 ", line=" + line +
                 ", offset=" + lineOffset +
@@ -56,7 +78,6 @@ public class Token {
     }
 
     public String getLineContent() {
-        String[] lines = tokenizer.src.split("\n");
-        return lines[line - 1];
+        return tokenizer.getLineContent(this);
     }
 }
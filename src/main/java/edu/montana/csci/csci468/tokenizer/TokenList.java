@@ -1,40 +1,370 @@
 package edu.montana.csci.csci468.tokenizer;
 
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import static edu.montana.csci.csci468.tokenizer.TokenType.EOF;
 import static edu.montana.csci.csci468.tokenizer.TokenType.IDENTIFIER;
 
 public class TokenList implements Iterable<Token> {
 
-    private final CatScriptTokenizer tokenizer;
-    List<Token> tokens = new ArrayList<>();
+    // how many consumed tokens a streaming list keeps around for lastToken()
+    private static final int LOOKBEHIND = 16;
+
+    final CatScriptTokenizer tokenizer;
+    private final boolean streaming;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    // Tokens are stored by absolute index in parallel ring buffers, one slot per token, and
+    // tokens before first have been dropped by a streaming list.  An eager list that has been
+    // retokenized keeps the tail tokens after its last edit at the end of the buffers instead,
+    // with their positions off by tailDelta and their lines by tailLineDelta, so the next edit
+    // only moves the tokens between the two edits, see CatScriptTokenizer.retokenize
+    int[] types = new int[64];
+    int[] starts = new int[64];
+    int[] ends = new int[64];
+    int[] lines = new int[64];
+    int[] lineOffsets = new int[64];
+    String[] values = new String[64];
+    int size = 0;
+    int first = 0;
+    int gap = 0;
+    int tail = 0;
+    int tailDelta = 0;
+    int tailLineDelta = 0;
+    // the positions, from before the last retokenize, of the first token it scanned again and
+    // of the first one after that it kept
+    int keptBefore = Integer.MAX_VALUE;
+    int shiftedFrom = Integer.MAX_VALUE;
     int currentToken = 0;
+    boolean retainAll = true;
 
     public TokenList(CatScriptTokenizer tokenizer) {
+        this(tokenizer, false);
+    }
+
+    TokenList(CatScriptTokenizer tokenizer, boolean streaming) {
         this.tokenizer = tokenizer;
+        this.streaming = streaming;
+    }
+
+    void addToken(TokenType type, int start, int end, int line, int lineOffset) {
+        // a streaming source drops the characters, so the value has to be taken now
+        addToken(type, start, end, line, lineOffset, streaming ? tokenizer.getStringValue(type, start, end) : null);
+    }
+
+    void addToken(TokenType type, int start, int end, int line, int lineOffset, String value) {
+        if (size - first == types.length) {
+            grow();
+        }
+        int slot = gap & (types.length - 1);
+        types[slot] = type.ordinal();
+        starts[slot] = start;
+        ends[slot] = end;
+        lines[slot] = line;
+        lineOffsets[slot] = lineOffset - (end - start);
+        values[slot] = value;
+        gap++;
+        size++;
+    }
+
+    private void grow() {
+        int capacity = types.length * 2;
+        int[] newTypes = new int[capacity];
+        int[] newStarts = new int[capacity];
+        int[] newEnds = new int[capacity];
+        int[] newLines = new int[capacity];
+        int[] newLineOffsets = new int[capacity];
+        String[] newValues = new String[capacity];
+        for (int i = first; i < size; i++) {
+            int from = physical(i);
+            int to = i < gap ? i & (capacity - 1) : i - gap + capacity - tail;
+            newTypes[to] = types[from];
+            newStarts[to] = starts[from];
+            newEnds[to] = ends[from];
+            newLines[to] = lines[from];
+            newLineOffsets[to] = lineOffsets[from];
+            newValues[to] = values[from];
+        }
+        types = newTypes;
+        starts = newStarts;
+        ends = newEnds;
+        lines = newLines;
+        lineOffsets = newLineOffsets;
+        values = newValues;
+    }
+
+    // copies tokens [from, to) of another eager list, moving them down lineDelta lines
+    void appendShifted(TokenList other, int from, int to, int lineDelta) {
+        for (int i = from; i < to; i++) {
+            int start = other.start(i);
+            int end = other.end(i);
+            addToken(TYPES[other.type(i)], start, end, other.line(i) + lineDelta,
+                    other.lineOffset(i) + end - start, other.values[other.physical(i)]);
+        }
+    }
+
+    // the slot of a token of an eager list, which unlike a streaming one can have a tail
+    int physical(int index) {
+        return index < gap ? index & (types.length - 1) : index - gap + types.length - tail;
+    }
+
+    int type(int index) {
+        return types[physical(index)];
+    }
+
+    int start(int index) {
+        return index < gap ? starts[index & (types.length - 1)] : starts[physical(index)] + tailDelta;
+    }
+
+    int end(int index) {
+        return index < gap ? ends[index & (types.length - 1)] : ends[physical(index)] + tailDelta;
+    }
+
+    int line(int index) {
+        return index < gap ? lines[index & (types.length - 1)] : lines[physical(index)] + tailLineDelta;
     }
 
-    void addToken(TokenType eof, String stringValue, int start, int end, int line, int lineOffset) {
-        tokens.add(new Token(start, end, line, lineOffset - (end - start), stringValue, eof, tokenizer));
+    int lineOffset(int index) {
+        return lineOffsets[physical(index)];
+    }
+
+    // Makes the token at index the first of the tail, moving the tokens between it and the
+    // current gap across
+    void moveGap(int index) {
+        while (gap > index) {
+            gap--;
+            tail++;
+            move(gap & (types.length - 1), types.length - tail, -tailDelta, -tailLineDelta);
+        }
+        while (gap < index) {
+            move(types.length - tail, gap & (types.length - 1), tailDelta, tailLineDelta);
+            gap++;
+            tail--;
+        }
+    }
+
+    private void move(int from, int to, int delta, int lineDelta) {
+        types[to] = types[from];
+        starts[to] = starts[from] + delta;
+        ends[to] = ends[from] + delta;
+        lines[to] = lines[from] + lineDelta;
+        lineOffsets[to] = lineOffsets[from];
+        values[to] = values[from];
+        values[from] = null;
+    }
+
+    // drops the first token of the tail
+    void dropTail() {
+        values[types.length - tail] = null;
+        tail--;
+        size--;
+    }
+
+    // Moves the tail down lineDelta lines, and the tokens on its first line columnDelta
+    // columns right
+    void shiftTail(int lineDelta, int columnDelta) {
+        tailLineDelta += lineDelta;
+        for (int i = gap; i < size && columnDelta != 0 && !lineOffsetResetBefore(i); i++) {
+            lineOffsets[physical(i)] += columnDelta;
+        }
+    }
+
+    private boolean lineOffsetResetBefore(int index) {
+        if (type(index) == TokenType.EOF.ordinal() && type(index - 1) == TokenType.SLASH.ordinal()) {
+            // the rest of the source after a comment is skipped, not scanned as whitespace
+            return false;
+        }
+        CharSource src = tokenizer.src;
+        // a slash takes the whitespace after it into its own span
+        int end = type(index) == TokenType.SLASH.ordinal() ? end(index) : start(index);
+        for (int i = end(index - 1); i < end; i++) {
+            char c = src.charAt(i);
+            if (c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the index of the first token ending at or after position in an eager list
+    int firstEndingAtOrAfter(int position) {
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (end(mid) < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // the index of the token starting at position in an eager list, or -1
+    int indexOfStart(int position) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int start = start(mid);
+            if (start < position) {
+                low = mid + 1;
+            } else if (start > position) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // Whether the tokens from the one at start up to the one at next, positions from before
+    // the last retokenize, came through it unchanged apart from being moved, and the token at
+    // next still has its type.  The tokens the scanner went over again are not compared, so
+    // a run of tokens overlapping them never carries over
+    public boolean carriesOver(int start, int next) {
+        return next < keptBefore || start >= shiftedFrom;
+    }
+
+    // where a position before or after an edit ended up, or -1 if the edit replaced it
+    public static int movedPosition(int position, int offset, int removedLength, int delta) {
+        if (position < offset) {
+            return position;
+        } else if (position >= offset + removedLength) {
+            return position + delta;
+        } else {
+            return -1;
+        }
+    }
+
+    // Brings a token materialized before some edits up to date, by following its position
+    // through them to the token that starts there now.  A reparse only keeps the tokens that
+    // every edit since carried over, so this only finds nothing for tokens it dropped
+    void relocate(Token token) {
+        int position = token.start;
+        for (int version = token.version; version < tokenizer.version && position >= 0; version++) {
+            int[] edit = tokenizer.edits[version];
+            position = movedPosition(position, edit[0], edit[1], edit[2]);
+        }
+        int index = position < 0 ? -1 : indexOfStart(position);
+        if (index >= 0) {
+            token.start = start(index);
+            token.end = end(index);
+            token.line = line(index);
+            token.lineOffset = lineOffset(index);
+        }
+        token.version = tokenizer.version;
+    }
+
+    // makes the token starting at position of an eager list the current one
+    public void skipTo(int position) {
+        int index = indexOfStart(position);
+        if (index < 0) {
+            throw new IllegalArgumentException("No token starts at " + position);
+        }
+        currentToken = index;
+    }
+
+    // A second cursor over the tokens of an eager list, starting at its current token.  The
+    // tokens are shared, so parsers on several threads can each read the list through a fork
+    public TokenList fork() {
+        if (streaming) {
+            throw new IllegalStateException("Cannot fork a streaming token list");
+        }
+        TokenList fork = new TokenList(tokenizer, false);
+        fork.types = types;
+        fork.starts = starts;
+        fork.ends = ends;
+        fork.lines = lines;
+        fork.lineOffsets = lineOffsets;
+        fork.values = values;
+        fork.size = size;
+        fork.gap = gap;
+        fork.tail = tail;
+        fork.tailDelta = tailDelta;
+        fork.tailLineDelta = tailLineDelta;
+        fork.currentToken = currentToken;
+        return fork;
+    }
+
+    // A fork over the tokens from the one starting at start through the one starting at end,
+    // which it treats as its last token
+    public TokenList fork(int start, int end) {
+        TokenList fork = fork();
+        int from = indexOfStart(start);
+        int to = indexOfStart(end);
+        if (from < 0 || to < from) {
+            throw new IllegalArgumentException("No tokens from " + start + " to " + end);
+        }
+        fork.currentToken = from;
+        fork.size = to + 1;
+        return fork;
+    }
+
+    private boolean fill(int index) {
+        while (index >= size) {
+            if (!streaming || !tokenizer.scanNext()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int slot(int index) {
+        if (!fill(index)) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        if (index < first) {
+            throw new IllegalStateException("Token " + index + " is no longer buffered");
+        }
+        return physical(index);
+    }
+
+    private Token get(int index) {
+        int slot = slot(index);
+        return new Token(start(index), end(index), line(index), lineOffsets[slot], values[slot], TYPES[types[slot]], tokenizer);
+    }
+
+    public TokenType getCurrentType() {
+        return TYPES[types[slot(currentToken)]];
     }
 
     public Token getCurrentToken() {
-        return tokens.get(currentToken);
+        return get(currentToken);
     }
 
     public Token consumeToken() {
-        return tokens.get(currentToken++);
+        Token token = get(currentToken);
+        skipToken();
+        return token;
+    }
+
+    // consumes the current token without materializing it
+    public void skipToken() {
+        slot(currentToken++);
+        if (!retainAll && currentToken - LOOKBEHIND > first) {
+            first = currentToken - LOOKBEHIND;
+        }
+    }
+
+    public String getStringValue(int index) {
+        int slot = slot(index);
+        if (values[slot] == null) {
+            values[slot] = tokenizer.getStringValue(TYPES[types[slot]], start(index), end(index));
+        }
+        return values[slot];
     }
 
     public boolean matchAndConsume(TokenType... type) {
         if (match(type)) {
-            consumeToken();
+            skipToken();
             return true;
         } else {
             return false;
@@ -42,8 +372,8 @@ public class TokenList implements Iterable<Token> {
     }
 
     public boolean match(String identifier) {
-        if (getCurrentToken().getType().equals(IDENTIFIER) &&
-            getCurrentToken().getStringValue().equals(identifier)) {
+        if (types[slot(currentToken)] == IDENTIFIER.ordinal() &&
+            getStringValue(currentToken).equals(identifier)) {
             return true;
         } else {
             return false;
@@ -51,8 +381,9 @@ public class TokenList implements Iterable<Token> {
     }
 
     public boolean match(TokenType... type) {
+        int current = types[slot(currentToken)];
         for (TokenType tokenType : type) {
-            if (getCurrentToken().getType().equals(tokenType)) {
+            if (current == tokenType.ordinal()) {
                 return true;
             }
         }
@@ -60,45 +391,80 @@ public class TokenList implements Iterable<Token> {
     }
 
     public void reset() {
+        if (first > 0) {
+            throw new IllegalStateException("Cannot reset a token list that has been released");
+        }
         currentToken = 0;
     }
 
+    // A streaming list keeps every token until it is released, after which it only keeps
+    // a small window around the current token and can no longer be reset
+    public void release() {
+        if (streaming) {
+            retainAll = false;
+        }
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
     public boolean hasMoreTokens() {
-        return currentToken < tokens.size() - 1;
+        return fill(currentToken + 1);
     }
 
     public Token lastToken() {
-        return tokens.get(Math.max(0, currentToken - 1));
+        return get(Math.max(first, currentToken - 1));
     }
 
     public Stream<Token> stream() {
-        return tokens.stream();
+        return StreamSupport.stream(spliterator(), false);
     }
 
     @Override
     public Iterator<Token> iterator() {
-        return tokens.iterator();
+        return new Iterator<>() {
+            int index = first;
+
+            @Override
+            public boolean hasNext() {
+                return fill(index);
+            }
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(index++);
+            }
+        };
     }
 
     @Override
     public void forEach(Consumer action) {
-        tokens.forEach(action);
+        for (Token token : this) {
+            action.accept(token);
+        }
     }
 
     @Override
     public Spliterator<Token> spliterator() {
-        return tokens.spliterator();
+        if (streaming) {
+            return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED);
+        } else {
+            return Spliterators.spliterator(iterator(), size, Spliterator.ORDERED);
+        }
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < tokens.size(); i++) {
-            Token token = tokens.get(i);
+        for (int i = first; i < size; i++) {
             if (i == currentToken) {
                 sb.append("-->[");
             }
-            sb.append(token.getStringValue());
+            sb.append(getStringValue(i));
             if (i == currentToken) {
                 sb.append("]<--");
             }
@@ -0,0 +1,71 @@
+package edu.montana.csci.csci468.util;
+
+// An open addressing hash map keyed by atom ids
+public class AtomMap<V> {
+
+    // keys are stored as atom + 1 so that zero marks an empty slot
+    private int[] keys = new int[8];
+    private Object[] values = new Object[8];
+    private int size = 0;
+    // Fibonacci hashing: the top log2(keys.length) bits of the product pick the slot
+    private int shift = 32 - 3;
+
+    private int indexOf(int atom) {
+        int mask = keys.length - 1;
+        int index = (atom * 0x9E3779B9) >>> shift;
+        while (keys[index] != 0 && keys[index] != atom + 1) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    public boolean containsKey(int atom) {
+        return keys[indexOf(atom)] != 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int atom) {
+        return (V) values[indexOf(atom)];
+    }
+
+    public void put(int atom, V value) {
+        int index = indexOf(atom);
+        if (keys[index] == 0) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+                index = indexOf(atom);
+            }
+            keys[index] = atom + 1;
+            size++;
+        }
+        values[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public AtomMap<V> copy() {
+        AtomMap<V> copy = new AtomMap<>();
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.size = size;
+        copy.shift = shift;
+        return copy;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        shift--;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int index = indexOf(oldKeys[i] - 1);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package edu.montana.csci.csci468.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Interns identifiers into small integer ids, so symbol tables, scopes and local slots
+// can be keyed by an int instead of hashing and comparing strings on every lookup.  Each
+// program has its own table, see CatScriptProgram.getAtoms, which the parsers that work on
+// it share from several threads, and which goes away with the program
+public class Atoms {
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private int count = 0;
+
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            if (count == names.length) {
+                names = Arrays.copyOf(names, count * 2);
+            }
+            names[count] = name;
+            ids.put(name, count);
+            return count++;
+        }
+    }
+
+    public String name(int atom) {
+        return names[atom];
+    }
+}
@@ -0,0 +1,53 @@
+package edu.montana.csci.csci468.vm;
+
+// The opcodes of the VM.  Each instruction is its opcode followed by its operands in the same
+// int[], where i registers hold ints and booleans (as 0 or 1), o registers hold everything
+// else, and jump targets are indexes into the function's code
+public final class Instruction {
+
+    public static final int ICONST = 0;        // i, value
+    public static final int OCONST = 1;        // o, constant pool index
+    public static final int ONULL = 2;         // o
+    public static final int IMOVE = 3;         // i, i
+    public static final int OMOVE = 4;         // o, o
+    public static final int BOX_INT = 5;       // o, i
+    public static final int BOX_BOOLEAN = 6;   // o, i
+    public static final int UNBOX_INT = 7;     // i, o
+    public static final int UNBOX_BOOLEAN = 8; // i, o
+    public static final int GET_GLOBAL = 9;    // o, global index
+    public static final int SET_GLOBAL = 10;   // global index, o
+    public static final int IADD = 11;         // i, i, i
+    public static final int ISUB = 12;         // i, i, i
+    public static final int IMUL = 13;         // i, i, i
+    public static final int IDIV = 14;         // i, i, i
+    public static final int INEG = 15;         // i, i
+    public static final int NOT = 16;          // i, i
+    public static final int ILT = 17;          // i, i, i
+    public static final int ILE = 18;          // i, i, i
+    public static final int IGT = 19;          // i, i, i
+    public static final int IGE = 20;          // i, i, i
+    public static final int OEQ = 21;          // i, o, o
+    public static final int ONE = 22;          // i, o, o
+    public static final int CONCAT = 23;       // o, o, o
+    public static final int NEW_LIST = 24;     // o
+    public static final int LIST_ADD = 25;     // o list, o
+    public static final int LIST_SIZE = 26;    // i, o list
+    public static final int LIST_GET = 27;     // o, o list, i
+    public static final int IINC = 28;         // i, value
+    public static final int JUMP = 29;         // target
+    public static final int JUMP_IF_FALSE = 30; // i, target
+    public static final int JUMP_IF_LT = 31;   // i, i, target
+    public static final int JUMP_IF_LE = 32;   // i, i, target
+    public static final int JUMP_IF_GT = 33;   // i, i, target
+    public static final int JUMP_IF_GE = 34;   // i, i, target
+    public static final int PRINT = 35;        // o
+    // the result register is an i or o register depending on what the function returns, and
+    // the arguments are already in the kinds of register the parameters are
+    public static final int CALL = 36;         // result, function index, int count, i..., object count, o...
+    public static final int RETURN_INT = 37;   // i
+    public static final int RETURN_OBJECT = 38; // o
+    public static final int RETURN_VOID = 39;
+
+    private Instruction() {
+    }
+}
@@ -0,0 +1,213 @@
+package edu.montana.csci.csci468.vm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static edu.montana.csci.csci468.vm.Instruction.*;
+
+// Runs the code of a VmCatScriptProgram.  Each call gets fresh register files of the sizes its
+// function was compiled with, and globals are boxed values shared by every call
+final class VirtualMachine {
+
+    private final VmCatScriptProgram program;
+    private final VmFunction[] functions;
+    private final Object[] constants;
+    private final Object[] globals;
+    // the value of the last function returning an int or boolean
+    private int intResult;
+
+    VirtualMachine(VmCatScriptProgram program) {
+        this.program = program;
+        this.functions = program.functions;
+        this.constants = program.constants;
+        this.globals = new Object[program.globalCount];
+    }
+
+    int getIntResult() {
+        return intResult;
+    }
+
+    Object run(VmFunction function) {
+        return invoke(function, new int[function.intRegisters], new Object[function.objectRegisters]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object invoke(VmFunction function, int[] ints, Object[] objects) {
+        int[] code = function.code;
+        int pc = 0;
+        while (true) {
+            switch (code[pc]) {
+                case ICONST:
+                    ints[code[pc + 1]] = code[pc + 2];
+                    pc += 3;
+                    break;
+                case OCONST:
+                    objects[code[pc + 1]] = constants[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case ONULL:
+                    objects[code[pc + 1]] = null;
+                    pc += 2;
+                    break;
+                case IMOVE:
+                    ints[code[pc + 1]] = ints[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case OMOVE:
+                    objects[code[pc + 1]] = objects[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case BOX_INT:
+                    objects[code[pc + 1]] = ints[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case BOX_BOOLEAN:
+                    objects[code[pc + 1]] = ints[code[pc + 2]] != 0;
+                    pc += 3;
+                    break;
+                case UNBOX_INT:
+                    ints[code[pc + 1]] = (Integer) objects[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case UNBOX_BOOLEAN:
+                    ints[code[pc + 1]] = (Boolean) objects[code[pc + 2]] ? 1 : 0;
+                    pc += 3;
+                    break;
+                case GET_GLOBAL:
+                    objects[code[pc + 1]] = globals[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case SET_GLOBAL:
+                    globals[code[pc + 1]] = objects[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case IADD:
+                    ints[code[pc + 1]] = ints[code[pc + 2]] + ints[code[pc + 3]];
+                    pc += 4;
+                    break;
+                case ISUB:
+                    ints[code[pc + 1]] = ints[code[pc + 2]] - ints[code[pc + 3]];
+                    pc += 4;
+                    break;
+                case IMUL:
+                    ints[code[pc + 1]] = ints[code[pc + 2]] * ints[code[pc + 3]];
+                    pc += 4;
+                    break;
+                case IDIV:
+                    ints[code[pc + 1]] = ints[code[pc + 2]] / ints[code[pc + 3]];
+                    pc += 4;
+                    break;
+                case INEG:
+                    ints[code[pc + 1]] = -ints[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case NOT:
+                    ints[code[pc + 1]] = ints[code[pc + 2]] ^ 1;
+                    pc += 3;
+                    break;
+                case ILT:
+                    ints[code[pc + 1]] = ints[code[pc + 2]] < ints[code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case ILE:
+                    ints[code[pc + 1]] = ints[code[pc + 2]] <= ints[code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case IGT:
+                    ints[code[pc + 1]] = ints[code[pc + 2]] > ints[code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case IGE:
+                    ints[code[pc + 1]] = ints[code[pc + 2]] >= ints[code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case OEQ:
+                    ints[code[pc + 1]] = objects[code[pc + 2]] == objects[code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case ONE:
+                    ints[code[pc + 1]] = objects[code[pc + 2]] != objects[code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case CONCAT:
+                    objects[code[pc + 1]] = String.valueOf(objects[code[pc + 2]])
+                            .concat(String.valueOf(objects[code[pc + 3]]));
+                    pc += 4;
+                    break;
+                case NEW_LIST:
+                    objects[code[pc + 1]] = new ArrayList<>();
+                    pc += 2;
+                    break;
+                case LIST_ADD:
+                    ((List<Object>) objects[code[pc + 1]]).add(objects[code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case LIST_SIZE:
+                    ints[code[pc + 1]] = ((List<?>) objects[code[pc + 2]]).size();
+                    pc += 3;
+                    break;
+                case LIST_GET:
+                    objects[code[pc + 1]] = ((List<?>) objects[code[pc + 2]]).get(ints[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case IINC:
+                    ints[code[pc + 1]] += code[pc + 2];
+                    pc += 3;
+                    break;
+                case JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case JUMP_IF_FALSE:
+                    pc = ints[code[pc + 1]] == 0 ? code[pc + 2] : pc + 3;
+                    break;
+                case JUMP_IF_LT:
+                    pc = ints[code[pc + 1]] < ints[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                    break;
+                case JUMP_IF_LE:
+                    pc = ints[code[pc + 1]] <= ints[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                    break;
+                case JUMP_IF_GT:
+                    pc = ints[code[pc + 1]] > ints[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                    break;
+                case JUMP_IF_GE:
+                    pc = ints[code[pc + 1]] >= ints[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                    break;
+                case PRINT:
+                    program.print(objects[code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case CALL: {
+                    VmFunction callee = functions[code[pc + 2]];
+                    int[] calleeInts = new int[callee.intRegisters];
+                    Object[] calleeObjects = new Object[callee.objectRegisters];
+                    int arguments = pc + 3;
+                    int intCount = code[arguments++];
+                    for (int i = 0; i < intCount; i++) {
+                        calleeInts[i] = ints[code[arguments++]];
+                    }
+                    int objectCount = code[arguments++];
+                    for (int i = 0; i < objectCount; i++) {
+                        calleeObjects[i] = objects[code[arguments++]];
+                    }
+                    Object result = invoke(callee, calleeInts, calleeObjects);
+                    if (callee.returnsInt) {
+                        ints[code[pc + 1]] = intResult;
+                    } else {
+                        objects[code[pc + 1]] = result;
+                    }
+                    pc = arguments;
+                    break;
+                }
+                case RETURN_INT:
+                    intResult = ints[code[pc + 1]];
+                    return null;
+                case RETURN_OBJECT:
+                    return objects[code[pc + 1]];
+                case RETURN_VOID:
+                    return null;
+                default:
+                    throw new IllegalStateException("Bad opcode " + code[pc] + " at " + pc + " in " + function.name);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package edu.montana.csci.csci468.vm;
+
+import edu.montana.csci.csci468.eval.CatscriptRuntime;
+import edu.montana.csci.csci468.parser.CatscriptType;
+import edu.montana.csci.csci468.parser.statements.CatScriptProgram;
+
+// A program VmCompiler has compiled, which runs on the VM instead of walking a tree
+public class VmCatScriptProgram extends CatScriptProgram {
+
+    VmFunction main;
+    VmFunction[] functions;
+    Object[] constants;
+    int globalCount;
+    // the type of the expression of a program compiled from one, which main returns
+    CatscriptType expressionType;
+
+    public VmFunction getMain() {
+        return main;
+    }
+
+    public VmFunction[] getFunctions() {
+        return functions;
+    }
+
+    @Override
+    public void execute(CatscriptRuntime runtime) {
+        if (expressionType != null) {
+            print(evaluate(runtime));
+        } else {
+            new VirtualMachine(this).run(main);
+        }
+    }
+
+    // the value of a program compiled from an expression
+    public Object evaluate(CatscriptRuntime runtime) {
+        VirtualMachine machine = new VirtualMachine(this);
+        Object value = machine.run(main);
+        if (expressionType == CatscriptType.INT) {
+            return machine.getIntResult();
+        } else if (expressionType == CatscriptType.BOOLEAN) {
+            return machine.getIntResult() != 0;
+        }
+        return value;
+    }
+}
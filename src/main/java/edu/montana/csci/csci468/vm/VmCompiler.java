@@ -0,0 +1,680 @@
+package edu.montana.csci.csci468.vm;
+
+import edu.montana.csci.csci468.parser.CatscriptType;
+import edu.montana.csci.csci468.parser.expressions.*;
+import edu.montana.csci.csci468.parser.statements.*;
+import edu.montana.csci.csci468.util.AtomMap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static edu.montana.csci.csci468.vm.Instruction.*;
+
+// Compiles a verified program to code for the VM.  Ints and booleans live unboxed in i
+// registers and everything else in o registers, with values boxed where they are stored in a
+// global, put in a list, printed or compared, which is where compiled JVM code boxes them.
+//
+// Variables get registers by the depth and slot validation resolved them to, and temporaries
+// are allocated above the live variables and freed after each statement, so registers are
+// reused the way frame slots are
+public class VmCompiler {
+
+    private final CatScriptProgram program;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndexes = new HashMap<>();
+    private final AtomMap<Integer> globalIndexes = new AtomMap<>();
+    private final List<VmFunction> functions = new ArrayList<>();
+    private final Map<FunctionDefinitionStatement, Integer> functionIndexes = new IdentityHashMap<>();
+    private final Deque<FunctionDefinitionStatement> uncompiledFunctions = new ArrayDeque<>();
+
+    // the function being compiled, with the register of each variable by depth and slot, where
+    // an o register is stored as ~register
+    private FunctionDefinitionStatement definition;
+    private int[] code;
+    private int length;
+    private int nextInt;
+    private int nextObject;
+    private int maxInts;
+    private int maxObjects;
+    private final List<int[]> scopes = new ArrayList<>();
+
+    public VmCompiler(CatScriptProgram program) {
+        this.program = program;
+    }
+
+    public VmCatScriptProgram compile() {
+        VmCatScriptProgram compiled = new VmCatScriptProgram();
+        VmFunction main = new VmFunction("main");
+        begin(null);
+        if (program.isExpression()) {
+            Expression expression = program.getExpression();
+            compiled.expressionType = expression.getType();
+            if (isInt(expression.getType())) {
+                emit(RETURN_INT, compile(expression));
+            } else {
+                emit(RETURN_OBJECT, compile(expression));
+            }
+        } else {
+            block(program.getStatements());
+            emit(RETURN_VOID);
+        }
+        end(main);
+
+        while (!uncompiledFunctions.isEmpty()) {
+            compileFunction(uncompiledFunctions.pop());
+        }
+        compiled.main = main;
+        compiled.functions = functions.toArray(new VmFunction[0]);
+        compiled.constants = constants.toArray();
+        compiled.globalCount = globalIndexes.size();
+        return compiled;
+    }
+
+    private void compileFunction(FunctionDefinitionStatement function) {
+        VmFunction compiled = functions.get(functionIndexes.get(function));
+        // getting a lazy body parses and validates it, which sizes the frame
+        List<Statement> body = function.getBody();
+        begin(function);
+        int[] frame = new int[function.getFrameSize()];
+        scopes.add(frame);
+        for (int i = 0; i < function.getParameterCount(); i++) {
+            frame[i] = isInt(function.getParameterType(i)) ? newInt() : ~newObject();
+        }
+        compiled.intParameters = nextInt;
+        compiled.objectParameters = nextObject;
+        compiled.returnsInt = isInt(function.getType());
+        block(body);
+        if (compiled.returnsInt) {
+            int zero = newInt();
+            emit(ICONST, zero, 0);
+            emit(RETURN_INT, zero);
+        } else {
+            emit(RETURN_VOID);
+        }
+        end(compiled);
+    }
+
+    private void begin(FunctionDefinitionStatement function) {
+        definition = function;
+        code = new int[64];
+        length = 0;
+        nextInt = nextObject = maxInts = maxObjects = 0;
+        scopes.clear();
+        // the global scope, whose variables are not in registers
+        scopes.add(null);
+    }
+
+    private void end(VmFunction function) {
+        function.code = Arrays.copyOf(code, length);
+        function.intRegisters = maxInts;
+        function.objectRegisters = maxObjects;
+    }
+
+    //==============================================================
+    // Statements
+    //==============================================================
+
+    // An if or a for whose bodies are being compiled, or the block at the bottom of the stack
+    // when statement is null.  Bodies are compiled from an explicit stack rather than by
+    // recursion, so blocks can nest as deeply as the heap allows
+    private static final class PendingStatement {
+        final Statement statement;
+        // the registers to release once the statement is done, and once each scope it opens is
+        final int intMark;
+        final int objectMark;
+        int scopeIntMark;
+        int scopeObjectMark;
+        List<Statement> body = Collections.emptyList();
+        int next;
+        int step;
+        // the jump to patch once the body is done, and where a loop jumps back to
+        int jump;
+        int top;
+
+        PendingStatement(Statement statement, int intMark, int objectMark) {
+            this.statement = statement;
+            this.intMark = intMark;
+            this.objectMark = objectMark;
+        }
+    }
+
+    private void block(List<Statement> statements) {
+        Deque<PendingStatement> stack = new ArrayDeque<>();
+        PendingStatement block = new PendingStatement(null, nextInt, nextObject);
+        block.body = statements;
+        stack.push(block);
+        while (!stack.isEmpty()) {
+            PendingStatement pending = stack.peek();
+            if (pending.next < pending.body.size()) {
+                Statement statement = pending.body.get(pending.next++);
+                if (statement instanceof IfStatement || statement instanceof ForStatement) {
+                    stack.push(new PendingStatement(statement, nextInt, nextObject));
+                } else if (!(statement instanceof FunctionDefinitionStatement)) {
+                    // calls refer to functions by index, so definitions have no code where they are
+                    statement(statement);
+                }
+            } else if (pending.statement != null && step(pending)) {
+                pending.next = 0;
+            } else {
+                stack.pop();
+            }
+        }
+    }
+
+    private void statement(Statement statement) {
+        int intMark = nextInt;
+        int objectMark = nextObject;
+        if (statement instanceof VariableStatement) {
+            VariableStatement variable = (VariableStatement) statement;
+            if (variable.getDepth() == 0) {
+                emit(SET_GLOBAL, global(variable.getVariableAtom()), value(variable.getExpression(), CatscriptType.OBJECT));
+                release(intMark, objectMark);
+            } else {
+                // the variable's register stays allocated until its scope ends
+                declare(variable.getDepth(), variable.getSlot(), variable.getType(), variable.getExpression());
+            }
+            return;
+        } else if (statement instanceof PrintStatement) {
+            emit(PRINT, value(((PrintStatement) statement).getExpression(), CatscriptType.OBJECT));
+        } else if (statement instanceof AssignmentStatement) {
+            assign((AssignmentStatement) statement);
+        } else if (statement instanceof FunctionCallStatement) {
+            compile(((FunctionCallStatement) statement).getExpression());
+        } else if (statement instanceof ReturnStatement) {
+            returnCode((ReturnStatement) statement);
+        } else {
+            throw new IllegalStateException("Cannot compile " + statement.getClass().getName());
+        }
+        release(intMark, objectMark);
+    }
+
+    private void declare(int depth, int slot, CatscriptType type, Expression expression) {
+        int intMark = nextInt;
+        int objectMark = nextObject;
+        int value = value(expression, type);
+        release(intMark, objectMark);
+        if (isInt(type)) {
+            int register = newInt();
+            move(IMOVE, register, value);
+            scopes.get(depth)[slot] = register;
+        } else {
+            int register = newObject();
+            move(OMOVE, register, value);
+            scopes.get(depth)[slot] = ~register;
+        }
+    }
+
+    private void assign(AssignmentStatement assignment) {
+        if (assignment.getDepth() == 0) {
+            emit(SET_GLOBAL, global(assignment.getVariableAtom()), value(assignment.getExpression(), CatscriptType.OBJECT));
+            return;
+        }
+        int location = scopes.get(assignment.getDepth())[assignment.getSlot()];
+        if (location >= 0) {
+            // only null reaches an int or boolean variable as an object, which fails to unbox either way
+            move(IMOVE, location, value(assignment.getExpression(), CatscriptType.INT));
+        } else {
+            move(OMOVE, ~location, value(assignment.getExpression(), CatscriptType.OBJECT));
+        }
+    }
+
+    private void returnCode(ReturnStatement returnStatement) {
+        Expression expression = returnStatement.getExpression();
+        if (definition == null || expression == null) {
+            emit(RETURN_VOID);
+        } else if (isInt(definition.getType())) {
+            emit(RETURN_INT, value(expression, definition.getType()));
+        } else {
+            emit(RETURN_OBJECT, value(expression, CatscriptType.OBJECT));
+        }
+    }
+
+    // Compiles an if or a for up to its next body, returning false once the statement is done
+    private boolean step(PendingStatement pending) {
+        int step = pending.step++;
+        if (pending.statement instanceof IfStatement) {
+            IfStatement ifStatement = (IfStatement) pending.statement;
+            if (step == 0) {
+                pending.jump = jumpUnless(ifStatement.getExpression());
+                openScope(pending, ifStatement.getTrueStatements(), ifStatement.getTrueFrameSize());
+                return true;
+            }
+            closeScope(pending);
+            if (step == 1 && !ifStatement.getElseStatements().isEmpty()) {
+                emit(JUMP, -1);
+                int endJump = length - 1;
+                patch(pending.jump);
+                pending.jump = endJump;
+                openScope(pending, ifStatement.getElseStatements(), ifStatement.getElseFrameSize());
+                return true;
+            }
+            patch(pending.jump);
+        } else {
+            ForStatement forStatement = (ForStatement) pending.statement;
+            if (step == 0) {
+                forCode(forStatement, pending);
+                return true;
+            }
+            emit(JUMP, pending.top);
+            patch(pending.jump);
+            scopes.remove(scopes.size() - 1);
+        }
+        release(pending.intMark, pending.objectMark);
+        return false;
+    }
+
+    private void openScope(PendingStatement pending, List<Statement> statements, int frameSize) {
+        pending.scopeIntMark = nextInt;
+        pending.scopeObjectMark = nextObject;
+        scopes.add(new int[frameSize]);
+        pending.body = statements;
+    }
+
+    private void closeScope(PendingStatement pending) {
+        scopes.remove(scopes.size() - 1);
+        release(pending.scopeIntMark, pending.scopeObjectMark);
+    }
+
+    // Emits a jump taken when the condition is false and returns where its target goes.  A
+    // comparison jumps on its operands directly rather than making a boolean first
+    private int jumpUnless(Expression condition) {
+        condition = innermost(condition);
+        if (condition instanceof ComparisonExpression) {
+            ComparisonExpression comparison = (ComparisonExpression) condition;
+            int lhs = value(comparison.getLeftHandSide(), CatscriptType.INT);
+            int rhs = value(comparison.getRightHandSide(), CatscriptType.INT);
+            if (comparison.isLessThan()) {
+                emit(JUMP_IF_GE, lhs, rhs, -1);
+            } else if (comparison.isLessThanOrEqual()) {
+                emit(JUMP_IF_GT, lhs, rhs, -1);
+            } else if (comparison.isGreater()) {
+                emit(JUMP_IF_LE, lhs, rhs, -1);
+            } else {
+                emit(JUMP_IF_LT, lhs, rhs, -1);
+            }
+        } else {
+            emit(JUMP_IF_FALSE, value(condition, CatscriptType.BOOLEAN), -1);
+        }
+        return length - 1;
+    }
+
+    // the code of a for loop up to its body, which leaves the jump out of the loop to patch
+    private void forCode(ForStatement forStatement, PendingStatement pending) {
+        // the list is kept in its own register, since the body may assign the variable it came from
+        int values = value(forStatement.getExpression(), CatscriptType.OBJECT);
+        release(pending.intMark, pending.objectMark);
+        int list = newObject();
+        move(OMOVE, list, values);
+        int index = newInt();
+        emit(ICONST, index, 0);
+        int size = newInt();
+        emit(LIST_SIZE, size, list);
+
+        int[] frame = new int[forStatement.getFrameSize()];
+        scopes.add(frame);
+        CatscriptType listType = forStatement.getExpression().getType();
+        CatscriptType componentType = listType instanceof CatscriptType.ListType ?
+                ((CatscriptType.ListType) listType).getComponentType() : CatscriptType.OBJECT;
+        pending.top = length;
+        emit(JUMP_IF_GE, index, size, -1);
+        pending.jump = length - 1;
+        if (isInt(componentType)) {
+            int variable = newInt();
+            frame[forStatement.getSlot()] = variable;
+            int element = newObject();
+            emit(LIST_GET, element, list, index);
+            emit(componentType == CatscriptType.BOOLEAN ? UNBOX_BOOLEAN : UNBOX_INT, variable, element);
+        } else {
+            int variable = newObject();
+            frame[forStatement.getSlot()] = ~variable;
+            emit(LIST_GET, variable, list, index);
+        }
+        emit(IINC, index, 1);
+        pending.body = forStatement.getBody();
+    }
+
+    //==============================================================
+    // Expressions
+    //==============================================================
+
+    // what start returns for an expression whose operands have yet to be compiled
+    private static final int PENDING = -1;
+
+    // An expression whose operands are being compiled, with the registers they left their
+    // values in.  Operands are compiled from an explicit stack rather than by recursion, so
+    // expressions can nest as deeply as the heap allows
+    private static final class PendingExpression {
+        final Expression expression;
+        final List<Expression> operands;
+        final CatscriptType operandType;
+        final int[] registers;
+        // the terms of a chain of additions, outermost first
+        List<AdditiveExpression> spine;
+        // the register the value is built up in, for chains and lists
+        int result;
+        int intMark;
+        int objectMark;
+        int next;
+
+        PendingExpression(Expression expression, List<Expression> operands, CatscriptType operandType) {
+            this.expression = expression;
+            this.operands = operands;
+            this.operandType = operandType;
+            this.registers = new int[operands.size()];
+        }
+    }
+
+    // the register holding the value of the expression, converted to the kind of register type needs
+    private int value(Expression expression, CatscriptType type) {
+        return convert(compile(expression), expression.getType(), type);
+    }
+
+    private int convert(int register, CatscriptType expressionType, CatscriptType type) {
+        if (isInt(expressionType) == isInt(type)) {
+            return register;
+        } else if (isInt(type)) {
+            int unboxed = newInt();
+            emit(type == CatscriptType.BOOLEAN ? UNBOX_BOOLEAN : UNBOX_INT, unboxed, register);
+            return unboxed;
+        }
+        int boxed = newObject();
+        emit(expressionType == CatscriptType.BOOLEAN ? BOX_BOOLEAN : BOX_INT, boxed, register);
+        return boxed;
+    }
+
+    // the register holding the value of the expression, an i register if it is an int or boolean
+    private int compile(Expression expression) {
+        Deque<PendingExpression> stack = new ArrayDeque<>();
+        int register = start(expression, stack);
+        while (!stack.isEmpty()) {
+            PendingExpression pending = stack.peek();
+            if (register != PENDING) {
+                operand(pending, register);
+                pending.next++;
+            }
+            if (pending.next < pending.operands.size()) {
+                register = start(pending.operands.get(pending.next), stack);
+            } else {
+                stack.pop();
+                register = finish(pending);
+            }
+        }
+        return register;
+    }
+
+    // Compiles an expression without operands, returning its register, or else pushes it to
+    // have its operands compiled and returns PENDING
+    private int start(Expression expression, Deque<PendingExpression> stack) {
+        expression = innermost(expression);
+        PendingExpression pending;
+        if (expression instanceof IntegerLiteralExpression) {
+            int register = newInt();
+            emit(ICONST, register, ((IntegerLiteralExpression) expression).getValue());
+            return register;
+        } else if (expression instanceof BooleanLiteralExpression) {
+            int register = newInt();
+            emit(ICONST, register, ((BooleanLiteralExpression) expression).getValue() ? 1 : 0);
+            return register;
+        } else if (expression instanceof StringLiteralExpression) {
+            int register = newObject();
+            emit(OCONST, register, constant(((StringLiteralExpression) expression).getValue()));
+            return register;
+        } else if (expression instanceof NullLiteralExpression) {
+            int register = newObject();
+            emit(ONULL, register);
+            return register;
+        } else if (expression instanceof IdentifierExpression) {
+            return identifier((IdentifierExpression) expression);
+        } else if (expression instanceof AdditiveExpression) {
+            pending = chain((AdditiveExpression) expression);
+        } else if (expression instanceof FactorExpression || expression instanceof ComparisonExpression) {
+            BinaryExpression binary = (BinaryExpression) expression;
+            pending = new PendingExpression(binary, Arrays.asList(binary.getLeftHandSide(), binary.getRightHandSide()),
+                    CatscriptType.INT);
+        } else if (expression instanceof EqualityExpression) {
+            BinaryExpression binary = (BinaryExpression) expression;
+            pending = new PendingExpression(binary, Arrays.asList(binary.getLeftHandSide(), binary.getRightHandSide()),
+                    CatscriptType.OBJECT);
+        } else if (expression instanceof UnaryExpression) {
+            // a run of unary operators cancels out in pairs, so only the operand under it is compiled
+            Expression operand = expression;
+            while (operand instanceof UnaryExpression) {
+                operand = ((UnaryExpression) operand).getRightHandSide();
+            }
+            pending = new PendingExpression(expression, Collections.singletonList(operand),
+                    ((UnaryExpression) expression).isMinus() ? CatscriptType.INT : CatscriptType.BOOLEAN);
+        } else if (expression instanceof ListLiteralExpression) {
+            pending = new PendingExpression(expression, ((ListLiteralExpression) expression).getValues(), CatscriptType.OBJECT);
+            pending.result = newObject();
+            emit(NEW_LIST, pending.result);
+        } else if (expression instanceof FunctionCallExpression) {
+            pending = new PendingExpression(expression, ((FunctionCallExpression) expression).getArguments(), null);
+        } else {
+            throw new IllegalStateException("Cannot compile " + expression.getClass().getName());
+        }
+        pending.intMark = nextInt;
+        pending.objectMark = nextObject;
+        stack.push(pending);
+        return PENDING;
+    }
+
+    // Long chains of additions nest down their left hand side, so their terms are gathered from
+    // the spine and added up in one register
+    private PendingExpression chain(AdditiveExpression additive) {
+        boolean strings = additive.getType() == CatscriptType.STRING;
+        CatscriptType type = strings ? CatscriptType.STRING : CatscriptType.INT;
+        List<AdditiveExpression> spine = new ArrayList<>();
+        Expression expression = additive;
+        while (expression instanceof AdditiveExpression && expression.getType() == type) {
+            spine.add((AdditiveExpression) expression);
+            expression = ((AdditiveExpression) expression).getLeftHandSide();
+        }
+        List<Expression> terms = new ArrayList<>();
+        terms.add(expression);
+        for (int i = spine.size() - 1; i >= 0; i--) {
+            terms.add(spine.get(i).getRightHandSide());
+        }
+        PendingExpression pending = new PendingExpression(additive, terms, strings ? CatscriptType.OBJECT : CatscriptType.INT);
+        pending.spine = spine;
+        pending.result = strings ? newObject() : newInt();
+        return pending;
+    }
+
+    // takes the register of the next operand, converted to the type the expression needs it as
+    private void operand(PendingExpression pending, int register) {
+        int index = pending.next;
+        Expression operand = pending.operands.get(index);
+        CatscriptType type = pending.operandType;
+        if (pending.expression instanceof FunctionCallExpression) {
+            type = ((FunctionCallExpression) pending.expression).getFunction().getParameterType(index);
+        }
+        int value = convert(register, operand.getType(), type);
+        if (pending.spine != null) {
+            if (index > 0) {
+                AdditiveExpression addition = pending.spine.get(pending.spine.size() - index);
+                int opcode = addition.getType() == CatscriptType.STRING ? CONCAT : addition.isAdd() ? IADD : ISUB;
+                emit(opcode, pending.result, pending.registers[0], value);
+                pending.registers[0] = pending.result;
+                release(pending.intMark, pending.objectMark);
+            } else {
+                pending.registers[0] = value;
+            }
+        } else if (pending.expression instanceof ListLiteralExpression) {
+            emit(LIST_ADD, pending.result, value);
+            release(pending.intMark, pending.objectMark);
+        } else {
+            pending.registers[index] = value;
+        }
+    }
+
+    // the register of the expression once its operands are compiled
+    private int finish(PendingExpression pending) {
+        Expression expression = pending.expression;
+        int[] registers = pending.registers;
+        if (pending.spine != null || expression instanceof ListLiteralExpression) {
+            return pending.result;
+        } else if (expression instanceof UnaryExpression) {
+            UnaryExpression unary = (UnaryExpression) expression;
+            boolean apply = false;
+            for (Expression operand = unary; operand instanceof UnaryExpression;
+                 operand = ((UnaryExpression) operand).getRightHandSide()) {
+                apply = !apply;
+            }
+            if (!apply) {
+                return registers[0];
+            }
+            release(pending.intMark, pending.objectMark);
+            int result = newInt();
+            emit(unary.isMinus() ? INEG : NOT, result, registers[0]);
+            return result;
+        } else if (expression instanceof FunctionCallExpression) {
+            return call((FunctionCallExpression) expression, pending);
+        }
+        int opcode;
+        if (expression instanceof FactorExpression) {
+            opcode = ((FactorExpression) expression).isMultiply() ? IMUL : IDIV;
+        } else if (expression instanceof ComparisonExpression) {
+            ComparisonExpression comparison = (ComparisonExpression) expression;
+            opcode = comparison.isLessThan() ? ILT : comparison.isLessThanOrEqual() ? ILE :
+                    comparison.isGreater() ? IGT : IGE;
+        } else {
+            opcode = ((EqualityExpression) expression).isEqual() ? OEQ : ONE;
+        }
+        // both sides were converted to the operand type, with the result in an i register
+        release(pending.intMark, pending.objectMark);
+        int result = newInt();
+        emit(opcode, result, registers[0], registers[1]);
+        return result;
+    }
+
+    private int identifier(IdentifierExpression identifier) {
+        if (identifier.getDepth() == 0) {
+            int boxed = newObject();
+            emit(GET_GLOBAL, boxed, global(identifier.getAtom()));
+            if (!isInt(identifier.getType())) {
+                return boxed;
+            }
+            int unboxed = newInt();
+            emit(identifier.getType() == CatscriptType.BOOLEAN ? UNBOX_BOOLEAN : UNBOX_INT, unboxed, boxed);
+            return unboxed;
+        }
+        int location = scopes.get(identifier.getDepth())[identifier.getSlot()];
+        return location >= 0 ? location : ~location;
+    }
+
+    private int call(FunctionCallExpression call, PendingExpression pending) {
+        FunctionDefinitionStatement function = call.getFunction();
+        int[] registers = pending.registers;
+        int intCount = 0;
+        for (int i = 0; i < registers.length; i++) {
+            if (isInt(function.getParameterType(i))) {
+                intCount++;
+            }
+        }
+        release(pending.intMark, pending.objectMark);
+        int result = isInt(function.getType()) ? newInt() : newObject();
+
+        emit(CALL, result, functionIndex(function));
+        emit(intCount);
+        for (int i = 0; i < registers.length; i++) {
+            if (isInt(function.getParameterType(i))) {
+                emit(registers[i]);
+            }
+        }
+        emit(registers.length - intCount);
+        for (int i = 0; i < registers.length; i++) {
+            if (!isInt(function.getParameterType(i))) {
+                emit(registers[i]);
+            }
+        }
+        return result;
+    }
+
+    //==============================================================
+    // Implementation
+    //==============================================================
+
+    private static boolean isInt(CatscriptType type) {
+        return type == CatscriptType.INT || type == CatscriptType.BOOLEAN;
+    }
+
+    private static Expression innermost(Expression expression) {
+        while (expression instanceof ParenthesizedExpression) {
+            expression = ((ParenthesizedExpression) expression).getExpression();
+        }
+        return expression;
+    }
+
+    private int newInt() {
+        int register = nextInt++;
+        maxInts = Math.max(maxInts, nextInt);
+        return register;
+    }
+
+    private int newObject() {
+        int register = nextObject++;
+        maxObjects = Math.max(maxObjects, nextObject);
+        return register;
+    }
+
+    private void release(int intMark, int objectMark) {
+        nextInt = intMark;
+        nextObject = objectMark;
+    }
+
+    private void move(int opcode, int to, int from) {
+        if (to != from) {
+            emit(opcode, to, from);
+        }
+    }
+
+    private void emit(int... ints) {
+        if (length + ints.length > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, length + ints.length));
+        }
+        System.arraycopy(ints, 0, code, length, ints.length);
+        length += ints.length;
+    }
+
+    // points the jump target at index at the next instruction
+    private void patch(int index) {
+        code[index] = length;
+    }
+
+    private int constant(Object value) {
+        Integer index = constantIndexes.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndexes.put(value, index);
+        }
+        return index;
+    }
+
+    private int global(int atom) {
+        Integer index = globalIndexes.get(atom);
+        if (index == null) {
+            index = globalIndexes.size();
+            globalIndexes.put(atom, index);
+        }
+        return index;
+    }
+
+    private int functionIndex(FunctionDefinitionStatement function) {
+        Integer index = functionIndexes.get(function);
+        if (index == null) {
+            index = functions.size();
+            functions.add(new VmFunction(function.getName()));
+            functionIndexes.put(function, index);
+            uncompiledFunctions.add(function);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,31 @@
+package edu.montana.csci.csci468.vm;
+
+// A compiled function, or the top level of a program.  Parameters are the first registers of
+// their kind, in the order they are declared
+public final class VmFunction {
+
+    final String name;
+    int[] code;
+    int intRegisters;
+    int objectRegisters;
+    int intParameters;
+    int objectParameters;
+    boolean returnsInt;
+
+    VmFunction(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCodeLength() {
+        return code.length;
+    }
+
+    @Override
+    public String toString() {
+        return name + "[" + code.length + " ints, " + intRegisters + " i, " + objectRegisters + " o]";
+    }
+}
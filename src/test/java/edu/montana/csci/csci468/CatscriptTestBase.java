@@ -1,6 +1,8 @@
 package edu.montana.csci.csci468;
 
 import edu.montana.csci.csci468.bytecode.ByteCodeGenerator;
+import edu.montana.csci.csci468.closure.ClosureCatScriptProgram;
+import edu.montana.csci.csci468.closure.ClosureCompiler;
 import edu.montana.csci.csci468.eval.CatscriptRuntime;
 import edu.montana.csci.csci468.js.JSTranspiler;
 import edu.montana.csci.csci468.parser.CatScriptParser;
@@ -14,6 +16,8 @@ import edu.montana.csci.csci468.tokenizer.CatScriptTokenizer;
 import edu.montana.csci.csci468.tokenizer.Token;
 import edu.montana.csci.csci468.tokenizer.TokenList;
 import edu.montana.csci.csci468.tokenizer.TokenType;
+import edu.montana.csci.csci468.vm.VmCatScriptProgram;
+import edu.montana.csci.csci468.vm.VmCompiler;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -123,6 +127,47 @@ public class CatscriptTestBase {
         return catScriptProgram.getOutput();
     }
 
+    protected Object evaluateWithClosures(String src) {
+        final CatScriptParser parser = new CatScriptParser();
+        final CatScriptProgram program = parser.parse(src);
+        program.verify();
+        return new ClosureCompiler(program).compile().evaluate(new CatscriptRuntime());
+    }
+
+    protected String executeWithClosures(String src) {
+        final CatScriptParser parser = new CatScriptParser();
+        final CatScriptProgram program = parser.parse(src);
+        program.verify();
+        ClosureCatScriptProgram closureProgram = new ClosureCompiler(program).compile();
+        closureProgram.execute();
+        return closureProgram.getOutput();
+    }
+
+    protected Object evaluateWithVm(String src) {
+        final CatScriptParser parser = new CatScriptParser();
+        final CatScriptProgram program = parser.parse(src);
+        program.verify();
+        return new VmCompiler(program).compile().evaluate(new CatscriptRuntime());
+    }
+
+    protected String executeWithVm(String src) {
+        final CatScriptParser parser = new CatScriptParser();
+        final CatScriptProgram program = parser.parse(src);
+        program.verify();
+        VmCatScriptProgram vmProgram = new VmCompiler(program).compile();
+        vmProgram.execute();
+        return vmProgram.getOutput();
+    }
+
+    protected String executeTiered(String src, int compileThreshold) {
+        final CatScriptParser parser = new CatScriptParser();
+        final CatScriptProgram program = parser.parse(src);
+        program.verify();
+        program.setCompileThreshold(compileThreshold);
+        program.execute();
+        return program.getOutput();
+    }
+
     protected List<ParseError> getErrors(String src) {
         final CatScriptParser parser = new CatScriptParser();
         final CatScriptProgram program = parser.parse(src);
@@ -134,4 +179,22 @@ public class CatscriptTestBase {
         }
     }
 
+    // runs test on a thread with a 512k stack, well below the default, so that what still
+    // recurses per level of nesting overflows at the depths the tests use
+    protected void onSmallStack(Runnable test) throws Throwable {
+        Throwable[] thrown = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                test.run();
+            } catch (Throwable throwable) {
+                thrown[0] = throwable;
+            }
+        }, "small stack", 512 * 1024);
+        thread.start();
+        thread.join();
+        if (thrown[0] != null) {
+            throw thrown[0];
+        }
+    }
+
 }
@@ -0,0 +1,258 @@
+package edu.montana.csci.csci468.benchmark;
+
+import edu.montana.csci.csci468.tokenizer.TokenType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static edu.montana.csci.csci468.tokenizer.TokenType.*;
+
+// The scanner as it was before the token store and the table driven scanner, kept so that
+// TokenizerBenchmark can time it next to CatScriptTokenizer. It makes one object per token
+// in an ArrayList like the old TokenList did
+class BaselineTokenizer {
+
+    static class Token {
+        final int start, end, line, lineOffset;
+        final String stringValue;
+        final TokenType type;
+
+        Token(int start, int end, int line, int lineOffset, String stringValue, TokenType type) {
+            this.start = start;
+            this.end = end;
+            this.line = line;
+            this.lineOffset = lineOffset;
+            this.stringValue = stringValue;
+            this.type = type;
+        }
+    }
+
+    List<Token> tokenList = new ArrayList<>();
+    String src;
+    int postion = 0;
+    int line = 1;
+    int lineOffset = 0;
+
+    BaselineTokenizer(String source) {
+        src = source;
+        tokenize();
+    }
+
+    private void tokenize() {
+        consumeWhitespace();
+        while (!tokenizationEnd()) {
+            scanToken();
+            consumeWhitespace();
+        }
+        addToken(EOF, "<EOF>", postion, postion, line, lineOffset);
+    }
+
+    private void scanToken() {
+        if(scanNumber()) {
+            return;
+        }
+        if(scanString()) {
+            return;
+        }
+        if(scanIdentifier()) {
+            return;
+        }
+        scanSyntax();
+    }
+
+    private boolean scanString() {
+        int start = postion;
+        if(matchAndConsume('"')) {
+            while(!matchAndConsume('"')) {
+                if(peek() == '\n' || tokenizationEnd()) {
+                    if(peek() == '\n') { line++; }
+                    lineOffset += postion - start;
+                    addToken(ERROR, "<Unexpected Token: [" + src.substring(start, postion) + "]>", start, postion, line, lineOffset);
+                    return true;
+                }
+                char currentChar = takeChar();
+                if (peek() == '"' && currentChar == '\\') {
+                    takeChar();
+                }
+            }
+            lineOffset += postion - start;
+            addToken(STRING, src.substring(start + 1, postion - 1), start, postion, line, lineOffset);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean scanIdentifier() {
+        if( isAlpha(peek())) {
+            int start = postion;
+            while (isAlphaNumeric(peek())) {
+                takeChar();
+            }
+            String value = src.substring(start, postion);
+            if (KEYWORDS.containsKey(value)) {
+                lineOffset += postion - start;
+                addToken(KEYWORDS.get(value), value, start, postion, line, lineOffset);
+            } else {
+                lineOffset += postion - start;
+                addToken(IDENTIFIER, value, start, postion, line, lineOffset);
+            }
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private boolean scanNumber() {
+        if(isDigit(peek())) {
+            int start = postion;
+            while (isDigit(peek())) {
+                takeChar();
+            }
+            lineOffset += postion - start;
+            addToken(INTEGER, src.substring(start, postion), start, postion, line, lineOffset);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private void scanSyntax() {
+        int start = postion;
+        lineOffset++;
+        if (matchAndConsume('(')) {
+            addToken(LEFT_PAREN, "(", start, postion, line, lineOffset);
+        } else if(matchAndConsume(')')) {
+            addToken(RIGHT_PAREN, ")", start, postion, line, lineOffset);
+        } else if(matchAndConsume('{')) {
+            addToken(LEFT_BRACE, "{", start, postion, line, lineOffset);
+        } else if(matchAndConsume('}')) {
+            addToken(RIGHT_BRACE, "}", start, postion, line, lineOffset);
+        } else if(matchAndConsume('[')) {
+            addToken(LEFT_BRACKET, "[", start, postion, line, lineOffset);
+        } else if(matchAndConsume(']')) {
+            addToken(RIGHT_BRACKET, "]", start, postion, line, lineOffset);
+        } else if(matchAndConsume(':')) {
+            addToken(COLON, ":", start, postion, line, lineOffset);
+        } else if(matchAndConsume(',')) {
+            addToken(COMMA, ",", start, postion, line, lineOffset);
+        } else if(matchAndConsume('.')) {
+            addToken(DOT, ".", start, postion, line, lineOffset);
+        } else if(matchAndConsume('+')) {
+            addToken(PLUS, "+", start, postion, line, lineOffset);
+        } else if(matchAndConsume('-')) {
+            addToken(MINUS, "-", start, postion, line, lineOffset);
+        } else if(matchAndConsume('/')) {
+            consumeWhitespace();
+            addToken(SLASH, "/", start, postion, line, lineOffset);
+            if (postion < src.length() && matchAndConsume('/')) {
+                start++;
+                addToken(SLASH, "/", start, postion, line, lineOffset);
+                postion = src.length();
+            }
+        } else if(matchAndConsume('*')) {
+            addToken(STAR, "*", start, postion, line, lineOffset);
+        } else if(matchAndConsume('!')) {
+            if (matchAndConsume('=')) {
+                lineOffset++;
+                addToken(BANG_EQUAL, "!=", start, postion, line, lineOffset);
+            }
+        } else if(matchAndConsume('=')) {
+            if (matchAndConsume('=')) {
+                lineOffset++;
+                addToken(EQUAL_EQUAL, "==", start, postion, line, lineOffset);
+            } else {
+                addToken(EQUAL, "=", start, postion, line, lineOffset);
+            }
+        } else if(matchAndConsume('>')) {
+            if (matchAndConsume('=')) {
+                lineOffset++;
+                addToken(GREATER_EQUAL, ">=", start, postion, line, lineOffset);
+            } else {
+                addToken(GREATER, ">", start, postion, line, lineOffset);
+            }
+        } else if(matchAndConsume('<')) {
+            if (matchAndConsume('=')) {
+                lineOffset++;
+                addToken(LESS_EQUAL, "<=", start, postion, line, lineOffset);
+            } else {
+                addToken(LESS, "<", start, postion, line, lineOffset);
+            }
+        } else {
+            addToken(ERROR, "<Unexpected Token: [" + takeChar() + "]>", start, postion, line, lineOffset);
+        }
+    }
+
+    private void consumeWhitespace() {
+        while (!tokenizationEnd()) {
+            char c = peek();
+            if (c == ' ') {
+                lineOffset++;
+                postion++;
+                continue;
+            } else if (c == '\r') {
+                lineOffset = 0;
+                postion++;
+                continue;
+            } else if (c == '\t') {
+                lineOffset += 4;
+                postion++;
+                continue;
+            } else if (c == '\n') {
+                lineOffset = 0;
+                line++;
+                postion++;
+                continue;
+            }
+            break;
+        }
+    }
+
+    //===============================================================
+    // Utility functions
+    //===============================================================
+
+    private char peek() {
+        if (tokenizationEnd()) return '\0';
+        return src.charAt(postion);
+    }
+
+    private boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') ||
+                (c >= 'A' && c <= 'Z') ||
+                c == '_';
+    }
+
+    private boolean isAlphaNumeric(char c) {
+        return isAlpha(c) || isDigit(c);
+    }
+
+    private boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private char takeChar() {
+        char c = src.charAt(postion);
+        postion++;
+        return c;
+    }
+
+    private boolean tokenizationEnd() {
+        return postion >= src.length();
+    }
+
+    public boolean matchAndConsume(char c) {
+        if (peek() == c) {
+            takeChar();
+            return true;
+        }
+        return false;
+    }
+
+    private void addToken(TokenType type, String stringValue, int start, int end, int line, int lineOffset) {
+        tokenList.add(new Token(start, end, line, lineOffset - (end - start), stringValue, type));
+    }
+
+    List<Token> getTokens() {
+        return tokenList;
+    }
+}
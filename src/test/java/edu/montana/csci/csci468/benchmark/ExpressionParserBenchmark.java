@@ -0,0 +1,59 @@
+package edu.montana.csci.csci468.benchmark;
+
+import edu.montana.csci.csci468.parser.CatScriptParser;
+import edu.montana.csci.csci468.tokenizer.CatScriptTokenizer;
+import edu.montana.csci.csci468.tokenizer.TokenList;
+
+import java.util.Random;
+
+public class ExpressionParserBenchmark {
+
+    static String generateProgram(int statements) {
+        String[] operands = {"1", "x", "y", "(x + 2)", "-y", "f(x, 3)", "[1, 2, 3]", "true", "\"s\""};
+        String[] operators = {"==", "!=", "<", ">", "<=", ">=", "+", "-", "*", "/"};
+        Random random = new Random(468);
+        StringBuilder src = new StringBuilder();
+        for (int i = 0; i < statements; i++) {
+            src.append("var v").append(i).append(" = ").append(operands[random.nextInt(operands.length)]);
+            for (int j = 0; j < 12; j++) {
+                src.append(" ").append(operators[random.nextInt(operators.length)])
+                        .append(" ").append(operands[random.nextInt(operands.length)]);
+            }
+            src.append("\n");
+        }
+        return src.toString();
+    }
+
+    public static void main(String[] args) {
+        String src = generateProgram(5000);
+        System.out.printf("%d chars%n", src.length());
+        for (int round = 0; round < 3; round++) {
+            System.out.printf("recursive descent: %.1f ms per parse%n", run(src, false));
+            System.out.printf("precedence climbing: %.1f ms per parse%n", run(src, true));
+        }
+    }
+
+    // milliseconds per parse, not counting tokenization
+    private static double run(String src, boolean precedenceClimbing) {
+        for (int i = 0; i < 20; i++) {
+            parse(src, precedenceClimbing);
+        }
+        int iterations = 30;
+        long total = 0;
+        for (int i = 0; i < iterations; i++) {
+            total += parse(src, precedenceClimbing);
+        }
+        return total / 1e6 / iterations;
+    }
+
+    private static long parse(String src, boolean precedenceClimbing) {
+        TokenList tokens = new CatScriptTokenizer(src).getTokens();
+        CatScriptParser parser = new CatScriptParser();
+        parser.setPrecedenceClimbing(precedenceClimbing);
+        // keep the collection of the previous tree out of the measurement
+        System.gc();
+        long start = System.nanoTime();
+        parser.parse(tokens);
+        return System.nanoTime() - start;
+    }
+}
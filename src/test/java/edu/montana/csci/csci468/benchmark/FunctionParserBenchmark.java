@@ -0,0 +1,55 @@
+package edu.montana.csci.csci468.benchmark;
+
+import edu.montana.csci.csci468.parser.CatScriptParser;
+import edu.montana.csci.csci468.tokenizer.CatScriptTokenizer;
+import edu.montana.csci.csci468.tokenizer.TokenList;
+
+public class FunctionParserBenchmark {
+
+    static String generateProgram(int functions) {
+        StringBuilder src = new StringBuilder();
+        for (int i = 0; i < functions; i++) {
+            src.append("function f").append(i).append("(x : int, l : list<int>) : int {\n");
+            for (int j = 0; j < 20; j++) {
+                src.append("  var v").append(j).append(" = x * ").append(j).append(" + (x - 1) / 2\n");
+                src.append("  for (e in l) { if (e > v").append(j).append(") { print(e) } }\n");
+            }
+            src.append("  return x\n}\n");
+            src.append("print(f").append(i).append("(1, [1, 2, 3]))\n");
+        }
+        return src.toString();
+    }
+
+    public static void main(String[] args) {
+        String src = generateProgram(2000);
+        System.out.printf("%d chars, %d cores%n", src.length(), Runtime.getRuntime().availableProcessors());
+        for (int round = 0; round < 3; round++) {
+            System.out.printf("sequential: %.1f ms per parse%n", run(src, false));
+            System.out.printf("parallel: %.1f ms per parse%n", run(src, true));
+        }
+    }
+
+    // milliseconds per parse, not counting tokenization
+    private static double run(String src, boolean parallel) {
+        for (int i = 0; i < 10; i++) {
+            parse(src, parallel);
+        }
+        int iterations = 20;
+        long total = 0;
+        for (int i = 0; i < iterations; i++) {
+            total += parse(src, parallel);
+        }
+        return total / 1e6 / iterations;
+    }
+
+    private static long parse(String src, boolean parallel) {
+        TokenList tokens = new CatScriptTokenizer(src).getTokens();
+        CatScriptParser parser = new CatScriptParser();
+        parser.setParallel(parallel);
+        // keep the collection of the previous tree out of the measurement
+        System.gc();
+        long start = System.nanoTime();
+        parser.parse(tokens);
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,119 @@
+package edu.montana.csci.csci468.benchmark;
+
+import edu.montana.csci.csci468.bytecode.ByteCodeGenerator;
+import edu.montana.csci.csci468.closure.ClosureCompiler;
+import edu.montana.csci.csci468.parser.CatScriptParser;
+import edu.montana.csci.csci468.parser.statements.CatScriptProgram;
+import edu.montana.csci.csci468.vm.VmCompiler;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+public class InterpreterBenchmark {
+
+    private static final int COMPILE_THRESHOLD = 1000;
+
+    static String generateProgram(int listSize, int fib) {
+        StringBuilder src = new StringBuilder("var values = [");
+        for (int i = 0; i < listSize; i++) {
+            src.append(i == 0 ? "" : ", ").append(i);
+        }
+        src.append("]\n");
+        src.append("function work(l : list<int>) : int {\n" +
+                "  var total = 0\n" +
+                "  for (a in l) {\n" +
+                "    for (b in l) {\n" +
+                "      var t = a * b\n" +
+                "      if (t > 50) { total = total + t } else { total = total - 1 }\n" +
+                "    }\n" +
+                "  }\n" +
+                "  return total\n" +
+                "}\n");
+        src.append(generateFib(fib));
+        src.append("print(work(values))\n");
+        return src.toString();
+    }
+
+    // the JVM backend has no assignment, so it only runs this one
+    static String generateFib(int fib) {
+        return "function fib(n : int) : int {\n" +
+                "  if (n < 2) { return n }\n" +
+                "  return fib(n - 1) + fib(n - 2)\n" +
+                "}\n" +
+                "print(fib(" + fib + "))\n";
+    }
+
+    public static void main(String[] args) {
+        CatScriptProgram program = parse(generateProgram(300, 20));
+        CatScriptProgram closures = new ClosureCompiler(program).compile();
+        CatScriptProgram vm = new VmCompiler(program).compile();
+        CatScriptProgram tiered = parse(generateProgram(300, 20));
+        tiered.setCompileThreshold(COMPILE_THRESHOLD);
+        CatScriptProgram fib = parse(generateFib(25));
+        CatScriptProgram fibClosures = new ClosureCompiler(fib).compile();
+        CatScriptProgram fibVm = new VmCompiler(fib).compile();
+        CatScriptProgram fibJvm = compileQuietly(fib);
+        CatScriptProgram fibTiered = parse(generateFib(25));
+        fibTiered.setCompileThreshold(COMPILE_THRESHOLD);
+        for (int round = 0; round < 3; round++) {
+            System.out.printf("loops and fib(20), tree: %.1f ms per run%n", run(program));
+            System.out.printf("loops and fib(20), closures: %.1f ms per run%n", run(closures));
+            System.out.printf("loops and fib(20), vm: %.1f ms per run%n", run(vm));
+            System.out.printf("loops and fib(20), tiered: %.1f ms per run%n", run(tiered));
+            System.out.printf("fib(25), tree: %.1f ms per run%n", run(fib));
+            System.out.printf("fib(25), closures: %.1f ms per run%n", run(fibClosures));
+            System.out.printf("fib(25), vm: %.1f ms per run%n", run(fibVm));
+            System.out.printf("fib(25), jvm: %.1f ms per run%n", run(fibJvm));
+            System.out.printf("fib(25), tiered: %.1f ms per run%n", run(fibTiered));
+        }
+        // a fresh program each time, so the tiered runs include compiling the hot functions
+        System.out.printf("first run of fib(25), tree: %.1f ms%n", firstRun(generateFib(25), 0));
+        System.out.printf("first run of fib(25), tiered: %.1f ms%n", firstRun(generateFib(25), COMPILE_THRESHOLD));
+        System.out.printf("first run of fib(5), tree: %.2f ms%n", firstRun(generateFib(5), 0));
+        System.out.printf("first run of fib(5), tiered: %.2f ms%n", firstRun(generateFib(5), COMPILE_THRESHOLD));
+    }
+
+    private static CatScriptProgram parse(String src) {
+        CatScriptProgram program = new CatScriptParser().parse(src);
+        program.verify();
+        return program;
+    }
+
+    // the generator prints the class it makes, which is not what is being measured
+    private static CatScriptProgram compileQuietly(CatScriptProgram program) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            return new ByteCodeGenerator(program).compileToBytecode();
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    // milliseconds for one run of a new program, averaged over new programs
+    private static double firstRun(String src, int compileThreshold) {
+        int iterations = 20;
+        long total = 0;
+        for (int i = 0; i < iterations; i++) {
+            CatScriptProgram program = parse(src);
+            program.setCompileThreshold(compileThreshold);
+            long start = System.nanoTime();
+            program.execute();
+            total += System.nanoTime() - start;
+        }
+        return total / 1e6 / iterations;
+    }
+
+    // milliseconds per run of the already verified program
+    private static double run(CatScriptProgram program) {
+        for (int i = 0; i < 10; i++) {
+            program.execute();
+        }
+        int iterations = 20;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            program.execute();
+        }
+        return (System.nanoTime() - start) / 1e6 / iterations;
+    }
+}
@@ -0,0 +1,46 @@
+package edu.montana.csci.csci468.benchmark;
+
+import edu.montana.csci.csci468.tokenizer.CatScriptTokenizer;
+
+import java.util.function.Consumer;
+
+public class TokenizerBenchmark {
+
+    static String generateProgram(int functions) {
+        StringBuilder src = new StringBuilder();
+        for (int i = 0; i < functions; i++) {
+            src.append("function helper").append(i).append("(x : int, y : list<string>) : int {\n")
+                    .append("    var total = x * 2 + ").append(i).append("\n")
+                    .append("    for (item in y) {\n")
+                    .append("        if (total >= 10 != false) { print(\"item \" + item) } else { total = total - 1 }\n")
+                    .append("    }\n")
+                    .append("    return total / (3 + -x)\n")
+                    .append("}\n");
+        }
+        return src.toString();
+    }
+
+    public static void main(String[] args) {
+        String src = generateProgram(20000);
+        int tokens = (int) new CatScriptTokenizer(src).getTokens().stream().count();
+        System.out.printf("%d chars, %d tokens per run%n", src.length(), tokens);
+        for (int round = 0; round < 3; round++) {
+            System.out.printf("baseline: %.1f million tokens/second%n", tokens * run(src, BaselineTokenizer::new) / 1e6);
+            System.out.printf("sequential: %.1f million tokens/second%n", tokens * run(src, CatScriptTokenizer::new) / 1e6);
+            System.out.printf("parallel: %.1f million tokens/second%n", tokens * run(src, CatScriptTokenizer::parallel) / 1e6);
+        }
+    }
+
+    // runs per second
+    private static double run(String src, Consumer<String> tokenizer) {
+        for (int i = 0; i < 20; i++) {
+            tokenizer.accept(src);
+        }
+        int iterations = 50;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            tokenizer.accept(src);
+        }
+        return iterations / ((System.nanoTime() - start) / 1e9);
+    }
+}
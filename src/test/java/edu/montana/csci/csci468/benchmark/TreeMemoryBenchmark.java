@@ -0,0 +1,32 @@
+package edu.montana.csci.csci468.benchmark;
+
+import edu.montana.csci.csci468.parser.CatScriptParser;
+import edu.montana.csci.csci468.parser.statements.CatScriptProgram;
+import edu.montana.csci.csci468.tokenizer.CatScriptTokenizer;
+import edu.montana.csci.csci468.tokenizer.TokenList;
+
+public class TreeMemoryBenchmark {
+
+    public static void main(String[] args) {
+        String src = FunctionParserBenchmark.generateProgram(2000);
+        for (int round = 0; round < 3; round++) {
+            TokenList tokens = new CatScriptTokenizer(src).getTokens();
+            long before = usedMemory();
+            CatScriptProgram program = new CatScriptParser().parse(tokens);
+            long after = usedMemory();
+            int[] nodes = new int[1];
+            program.walk(element -> nodes[0]++);
+            // the tree's tokens are counted too, the token list itself is not
+            System.out.printf("%d nodes, %.1f MB, %.1f bytes per node%n", nodes[0],
+                    (after - before) / 1e6, (after - before) / (double) nodes[0]);
+        }
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,95 @@
+package edu.montana.csci.csci468.bytecode;
+
+import edu.montana.csci.csci468.parser.CatScriptParser;
+import edu.montana.csci.csci468.parser.statements.CatScriptProgram;
+import edu.montana.csci.csci468.parser.statements.FunctionDefinitionStatement;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// the eval tests, with every function that can be compiled compiled on its first call
+public class CatscriptFunctionArgsAndReturnTieredTest extends edu.montana.csci.csci468.eval.CatscriptFunctionArgsAndReturnEvalTest {
+
+    @Override
+    protected Object executeProgram(String src) {
+        return executeTiered(src, 1);
+    }
+
+    @Test
+    void functionIsCompiledOnceItIsCalledEnough() {
+        CatScriptProgram program = executeWithThreshold("function add(a : int, b : int) : int {\n" +
+                "  print(a)\n" +
+                "  return a + b\n" +
+                "}\n" +
+                "for (i in [1, 2, 3, 4]) { print(add(i, 10)) }", 3);
+        assertEquals("1\n11\n2\n12\n3\n13\n4\n14\n", program.getOutput());
+        assertTrue(function(program, "add").isCompiled());
+    }
+
+    @Test
+    void functionIsNotCompiledBeforeItIsHot() {
+        CatScriptProgram program = executeWithThreshold("function add(a : int, b : int) : int { return a + b }\n" +
+                "print(add(1, 2))", 3);
+        assertEquals("3\n", program.getOutput());
+        assertEquals(1, function(program, "add").getInvocationCount());
+        assertFalse(function(program, "add").isCompiled());
+    }
+
+    @Test
+    void loopIterationsMakeTheNextCallCompiled() {
+        CatScriptProgram program = executeWithThreshold("function sum(l : list<int>) : int {\n" +
+                "  var total = 0\n" +
+                "  for (x in l) { total = total + x }\n" +
+                "  return total\n" +
+                "}\n" +
+                "print(sum([1, 2, 3, 4, 5, 6]))\n" +
+                "print(sum([1, 2]))", 5);
+        assertEquals("21\n3\n", program.getOutput());
+        assertEquals(6, function(program, "sum").getBackEdgeCount());
+        assertTrue(function(program, "sum").isCompiled());
+    }
+
+    @Test
+    void functionUsingAGlobalStaysInterpreted() {
+        CatScriptProgram program = executeWithThreshold("var x = 10\n" +
+                "function addX(a : int) : int { return a + x }\n" +
+                "function twice(a : int) : int { return addX(addX(a)) }\n" +
+                "print(twice(1))\n" +
+                "print(twice(2))", 1);
+        assertEquals("21\n22\n", program.getOutput());
+        assertFalse(function(program, "addX").isCompiled());
+        assertFalse(function(program, "twice").isCompiled());
+    }
+
+    @Test
+    void compiledNotGivesTheSameResultAsInterpreted() {
+        CatScriptProgram program = executeWithThreshold("function f(x : int) : bool { return not (x > 3) }\n" +
+                "print(f(1))\n" +
+                "print(f(5))\n" +
+                "print(not f(1))", 1);
+        assertEquals("true\nfalse\nfalse\n", program.getOutput());
+        assertTrue(function(program, "f").isCompiled());
+    }
+
+    @Test
+    void functionTooBigForTheJvmStaysInterpreted() {
+        CatScriptProgram program = executeWithThreshold("function big() : int { return 1" + " + 1".repeat(40000) + " }\n" +
+                "print(big())", 1);
+        assertEquals("40001\n", program.getOutput());
+        assertFalse(function(program, "big").isCompiled());
+    }
+
+    private CatScriptProgram executeWithThreshold(String src, int compileThreshold) {
+        CatScriptProgram program = new CatScriptParser().parse(src);
+        program.verify();
+        program.setCompileThreshold(compileThreshold);
+        program.execute();
+        return program;
+    }
+
+    private FunctionDefinitionStatement function(CatScriptProgram program, String name) {
+        return program.getFunction(program.getAtoms().intern(name));
+    }
+}
@@ -0,0 +1,10 @@
+package edu.montana.csci.csci468.bytecode;
+
+// the eval tests, with every function that can be compiled compiled on its first call
+public class CatscriptStatementTieredTest extends edu.montana.csci.csci468.eval.CatscriptStatementExecutionTest {
+
+    @Override
+    protected Object executeProgram(String src) {
+        return executeTiered(src, 1);
+    }
+}
@@ -0,0 +1,17 @@
+package edu.montana.csci.csci468.closure;
+
+import edu.montana.csci.csci468.eval.CatscriptBasicExpressionEvalTest;
+
+// the same tests, run by the closure compiled program instead of the tree
+public class CatscriptBasicExpressionClosureTest extends CatscriptBasicExpressionEvalTest {
+
+    @Override
+    protected Object evaluateExpression(String src) {
+        return evaluateWithClosures(src);
+    }
+
+    @Override
+    protected Object executeProgram(String src) {
+        return executeWithClosures(src);
+    }
+}
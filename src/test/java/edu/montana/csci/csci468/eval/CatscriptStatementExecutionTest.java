@@ -93,5 +93,27 @@ public class CatscriptStatementExecutionTest extends CatscriptTestBase {
         ));
     }
 
+    @Test
+    void recursiveCallsKeepTheirOwnVariables() {
+        assertEquals("55\n", executeProgram(
+                "function fib(n : int) : int {\n" +
+                        "  if (n < 2) { return n }\n" +
+                        "  var a = fib(n - 1)\n" +
+                        "  var b = fib(n - 2)\n" +
+                        "  return a + b\n" +
+                        "}\n" +
+                        "print(fib(10))"
+        ));
+    }
+
+    @Test
+    void functionsCalledFromBlocksSeeGlobals() {
+        assertEquals("1\n3\n6\n", executeProgram(
+                "var total = 0\n" +
+                        "function add(x : int) { total = total + x print(total) }\n" +
+                        "for (x in [1, 2, 3]) { if (x > 0) { add(x) } }"
+        ));
+    }
+
 
 }
@@ -1,11 +1,17 @@
 package edu.montana.csci.csci468.parser;
 
 import edu.montana.csci.csci468.CatscriptTestBase;
+import edu.montana.csci.csci468.parser.statements.CatScriptProgram;
+import edu.montana.csci.csci468.parser.statements.FunctionDefinitionStatement;
+import edu.montana.csci.csci468.parser.statements.PrintStatement;
+import edu.montana.csci.csci468.parser.statements.SyntaxErrorStatement;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 public class CatscriptParserErrorsTest extends CatscriptTestBase {
@@ -16,6 +22,41 @@ public class CatscriptParserErrorsTest extends CatscriptTestBase {
         assertError(errors, 0, ErrorType.UNKNOWN_NAME, 1, 0);
     }
 
+    @Test
+    public void badRegionIsOneErrorUpToTheNextStatement() {
+        CatScriptProgram program = new CatScriptParser().parse("print(1)\n) ) ) 1 2 3 + x\nprint(2)");
+        assertEquals(3, program.getStatements().size());
+        assertTrue(program.getStatements().get(1) instanceof SyntaxErrorStatement);
+        assertTrue(program.getStatements().get(2) instanceof PrintStatement);
+        List<ParseError> errors = getErrors("print(1)\n) ) ) 1 2 3 + x\nprint(2)");
+        assertEquals(1, errors.size());
+        assertError(errors, 0, ErrorType.UNEXPECTED_TOKEN, 2, 0);
+    }
+
+    @Test
+    public void badRegionStopsAtTheClosingBrace() {
+        CatScriptProgram program = new CatScriptParser().parse("function f() { ) ) 1 }\nprint(1)");
+        assertEquals(2, program.getStatements().size());
+        FunctionDefinitionStatement function = (FunctionDefinitionStatement) program.getStatements().get(0);
+        assertEquals(1, function.getBody().size());
+        assertEquals(1, getErrors("function f() { ) ) 1 }\nprint(1)").size());
+    }
+
+    @Test
+    public void parsingAndVerificationStopAtTheMaximumErrorCount() {
+        StringBuilder src = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            src.append(") )\nprint(x").append(i).append(")\n");
+        }
+        CatScriptParser parser = new CatScriptParser();
+        parser.setMaxErrors(3);
+        CatScriptProgram program = parser.parse(src.toString());
+        assertEquals(5, program.getStatements().size());
+        ParseErrorException exception = assertThrows(ParseErrorException.class, program::verify);
+        assertEquals(3, exception.getErrors().size());
+        assertError(exception.getErrors(), 1, ErrorType.UNKNOWN_NAME, 2, 0);
+    }
+
     private void assertError(List<ParseError> errors, int errorIndex, ErrorType errorType) {
         assertError(errors, errorIndex, errorType, -1, -1);
     }
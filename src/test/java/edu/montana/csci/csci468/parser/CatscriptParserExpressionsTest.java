@@ -4,6 +4,9 @@ import edu.montana.csci.csci468.CatscriptTestBase;
 import edu.montana.csci.csci468.parser.expressions.*;
 import edu.montana.csci.csci468.parser.statements.CatScriptProgram;
 import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class CatscriptParserExpressionsTest extends CatscriptTestBase {
@@ -198,4 +201,79 @@ public class CatscriptParserExpressionsTest extends CatscriptTestBase {
         assertFalse(expr.isEqual());
     }
 
+    @Test
+    public void precedenceClimbingBuildsTheSameTreeAsRecursiveDescent() {
+        String[] operands = {"1", "x", "\"s\"", "true", "null", "-2", "not y", "(1 + 2)", "[1, 2]", "f(1, a * b)"};
+        String[] operators = {"==", "!=", "<", ">", "<=", ">=", "+", "-", "*", "/"};
+        java.util.Random random = new java.util.Random(468);
+        for (int i = 0; i < 500; i++) {
+            StringBuilder src = new StringBuilder(operands[random.nextInt(operands.length)]);
+            int count = random.nextInt(8);
+            for (int j = 0; j < count; j++) {
+                src.append(" ").append(operators[random.nextInt(operators.length)])
+                        .append(" ").append(operands[random.nextInt(operands.length)]);
+            }
+            CatScriptParser descent = new CatScriptParser();
+            descent.setPrecedenceClimbing(false);
+            assertEquals(describe(descent.parse(src.toString())),
+                    describe(new CatScriptParser().parse(src.toString())), src.toString());
+        }
+    }
+
+    private String describe(ParseElement element) {
+        StringBuilder sb = new StringBuilder(element.toString());
+        if (element.getStart() != null) {
+            sb.append("@").append(element.getStart().getStart());
+        }
+        if (element.getEnd() != null) {
+            sb.append("-").append(element.getEnd().getEnd());
+        }
+        sb.append("(");
+        for (ParseElement child : element.getChildren()) {
+            sb.append(describe(child)).append(" ");
+        }
+        return sb.append(")").toString();
+    }
+
+    @Test
+    public void deeplyNestedExpressionsDoNotOverflowTheStack() {
+        int depth = 100000;
+        assertEquals(1, evaluateExpression("1" + " * 1".repeat(depth)));
+        assertEquals(1, evaluateExpression("(".repeat(depth) + "1" + ")".repeat(depth)));
+        assertEquals(1, evaluateExpression("- ".repeat(depth) + "1"));
+
+        CatScriptProgram program = new CatScriptParser().parse("[".repeat(depth) + "1" + "]".repeat(depth));
+        int[] elements = new int[1];
+        program.walk(element -> elements[0]++);
+        assertEquals(depth + 2, elements[0]);
+
+        assertEquals(ErrorType.INCOMPATIBLE_TYPES, getParseError("(".repeat(depth) + "1 + 2 * true" + ")".repeat(depth)));
+    }
+
+    @Test
+    public void mixedNestingDoesNotOverflowASmallStack() throws Throwable {
+        int depth = 20000;
+        onSmallStack(() -> {
+            assertEquals(depth + 1, evaluateExpression("(1 + ".repeat(depth) + "1" + ")".repeat(depth)));
+            assertEquals(1, evaluateExpression("-(".repeat(depth) + "1" + ")".repeat(depth)));
+            assertEquals(ErrorType.INCOMPATIBLE_TYPES, getParseError("(1 + ".repeat(depth) + "true" + ")".repeat(depth)));
+
+            Object list = evaluateExpression("[".repeat(depth) + "1" + "]".repeat(depth));
+            int lists = 0;
+            while (list instanceof List) {
+                list = ((List<?>) list).get(0);
+                lists++;
+            }
+            assertEquals(depth, lists);
+            assertEquals(1, list);
+
+            String mixed = "print(" + "-(1 + ".repeat(depth) + "1" + ")".repeat(depth) + ")";
+            assertEquals("1\n", executeWithClosures(mixed));
+            assertEquals("1\n", executeWithVm(mixed));
+
+            // deep enough for recursion to overflow, shallow enough for the checks on the bytecode
+            assertEquals("3001\n", compile("(1 + ".repeat(3000) + "1" + ")".repeat(3000)));
+        });
+    }
+
 }
@@ -3,8 +3,17 @@ package edu.montana.csci.csci468.parser;
 import edu.montana.csci.csci468.CatscriptTestBase;
 import edu.montana.csci.csci468.parser.expressions.*;
 import edu.montana.csci.csci468.parser.statements.*;
+import edu.montana.csci.csci468.tokenizer.Token;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class CatscriptParserStatementsTest extends CatscriptTestBase {
@@ -194,4 +203,386 @@ public class CatscriptParserStatementsTest extends CatscriptTestBase {
         assertTrue(returnStmt.getExpression() instanceof IntegerLiteralExpression);
     }
 
+    @Test
+    public void programsStartingWithAnIdentifierReuseTheFirstExpression() {
+        CatScriptProgram program = new CatScriptParser().parse("x = foo(1)\nfoo(x)");
+        assertFalse(program.isExpression());
+        assertEquals(2, program.getStatements().size());
+        assertTrue(program.getStatements().get(0) instanceof AssignmentStatement);
+        assertTrue(program.getStatements().get(1) instanceof FunctionCallStatement);
+
+        program = new CatScriptParser().parse("foo(1) foo(2)");
+        assertEquals(2, program.getStatements().size());
+        assertTrue(program.getStatements().get(0) instanceof FunctionCallStatement);
+    }
+
+    @Test
+    public void statementKeywordsAreOnlyExpressionsWhenAnOperatorFollows() {
+        assertTrue(new CatScriptParser().parse("foo(1)").isExpression());
+        assertTrue(new CatScriptParser().parse("print").isExpression());
+        assertTrue(new CatScriptParser().parse("print + 1").isExpression());
+        assertFalse(new CatScriptParser().parse("print(1)").isExpression());
+        assertFalse(new CatScriptParser().parse("var x = 1").isExpression());
+    }
+
+    @Test
+    public void reparsingReusesUntouchedStatementsAndReverifiesCallers() {
+        String src = "function f(x : int) : int { return 1 }\n" +
+                "function g() : int { return f(1) }\n" +
+                "function h() { print(2) }\n" +
+                "print(g())\n";
+        CatScriptParser parser = new CatScriptParser();
+        CatScriptProgram program = parser.parse(src);
+        program.verify();
+        List<Statement> before = new ArrayList<>(program.getStatements());
+
+        int offset = src.indexOf("int");
+        CatScriptProgram edited = parser.reparse(program, offset, 3, "string");
+        List<Statement> after = edited.getStatements();
+        assertEquals(4, after.size());
+        assertNotSame(before.get(0), after.get(0));
+        assertSame(before.get(1), after.get(1));
+        assertSame(before.get(2), after.get(2));
+        assertSame(before.get(3), after.get(3));
+        assertEquals(src.indexOf("function g") + 3, after.get(1).getStart().getStart());
+        assertEquals(2, after.get(1).getStart().getLine());
+
+        // g calls f, so it is validated again while h is not
+        assertFalse(((FunctionDefinitionStatement) after.get(1)).isVerified());
+        assertTrue(((FunctionDefinitionStatement) after.get(2)).isVerified());
+        ParseErrorException exception = assertThrows(ParseErrorException.class, edited::verify);
+        assertEquals(1, exception.getErrors().size());
+        assertEquals(ErrorType.INCOMPATIBLE_TYPES, exception.getErrors().get(0).getErrorType());
+        assertEquals(2, exception.getErrors().get(0).getLocation().getLine());
+    }
+
+    @Test
+    public void reusedStatementsFollowSeveralEditsUntilTheyAreRead() {
+        CatScriptParser parser = new CatScriptParser();
+        CatScriptProgram program = parser.parse("print(1)\nvar b : int = true\n");
+        Statement last = program.getStatements().get(1);
+        for (int i = 0; i < 3; i++) {
+            program = parser.reparse(program, 0, 0, "var a" + i + " = 1\n");
+        }
+        assertSame(last, program.getStatements().get(4));
+        String src = "var a2 = 1\nvar a1 = 1\nvar a0 = 1\nprint(1)\nvar b : int = true\n";
+        assertEquals(src.indexOf("var b"), last.getStart().getStart());
+        assertEquals(5, last.getStart().getLine());
+        ParseErrorException exception = assertThrows(ParseErrorException.class, program::verify);
+        assertEquals(5, exception.getErrors().get(0).getLocation().getLine());
+    }
+
+    @Test
+    public void reparsingMatchesParsingFromScratch() {
+        String base = "var total = 0\n" +
+                "function add(a : int, b : int) : int { return a + b }\n" +
+                "function twice(x : int) : int { return add(x, x) }\n" +
+                "for (i in [1, 2, 3]) { total = add(total, twice(i)) }\n" +
+                "if (total > 5) { print(total) } else { print(\"small\") }\n" +
+                "print(twice(total))\n";
+        String[] insertions = {"", " ", "\n", "1", "x", "+", "(", ")", "{", "}", "\"", "/", "total",
+                "print(1)\n", "var y = 2\n", "function z() { }\n", "twice(2)\n"};
+        Random random = new Random(468);
+        CatScriptParser parser = new CatScriptParser();
+        String src = base;
+        CatScriptProgram program = parser.parse(src);
+        for (int i = 0; i < 2000; i++) {
+            int offset = random.nextInt(src.length() + 1);
+            int removedLength = random.nextInt(Math.min(4, src.length() - offset) + 1);
+            String inserted = insertions[random.nextInt(insertions.length)];
+            String edited = src.substring(0, offset) + inserted + src.substring(offset + removedLength);
+
+            CatScriptProgram expected;
+            String expectedErrors;
+            try {
+                expected = new CatScriptParser().parse(edited);
+                expectedErrors = verificationErrors(expected);
+            } catch (RuntimeException e) {
+                // some malformed programs crash the parser or validation outright
+                src = base;
+                program = parser.parse(src);
+                continue;
+            }
+            program = parser.reparse(program, offset, removedLength, inserted);
+            src = edited;
+            assertEquals(expectedErrors, verificationErrors(program), src);
+            assertEquals(describe(expected), describe(program), src);
+        }
+    }
+
+    @Test
+    public void parallelParsingMatchesSequentialParsing() {
+        String base = "var total = 0\n" +
+                "function add(a : int, b : int) : int { return a + b }\n" +
+                "function twice(x : int) : int { if (x > 1) { return add(x, x) } else { return x } }\n" +
+                "for (i in [1, 2, 3]) { total = add(total, twice(i)) }\n" +
+                "function nested() { function inner(l : list<int>) { print(l) } inner([1]) }\n" +
+                "return 1\n" +
+                "print(twice(total))\n";
+        String[] insertions = {"", " ", "{", "}", "(", ")", "function", "return", "x"};
+        Random random = new Random(468);
+        for (int i = 0; i < 500; i++) {
+            int offset = random.nextInt(base.length() + 1);
+            int removedLength = random.nextInt(Math.min(4, base.length() - offset) + 1);
+            String src = base.substring(0, offset) + insertions[random.nextInt(insertions.length)] +
+                    base.substring(offset + removedLength);
+
+            String expected = null;
+            RuntimeException failure = null;
+            try {
+                expected = describe(new CatScriptParser().parse(src));
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            CatScriptParser parser = new CatScriptParser();
+            parser.setParallel(true, 1);
+            if (failure == null) {
+                assertEquals(expected, describe(parser.parse(src)), src);
+            } else {
+                // the parallel parse has to fail the same way
+                assertThrows(failure.getClass(), () -> parser.parse(src), src);
+            }
+        }
+    }
+
+    @Test
+    public void lazyFunctionBodiesAreParsedAndValidatedOnFirstCall() {
+        CatScriptParser parser = new CatScriptParser();
+        parser.setLazyFunctionBodies(true);
+        CatScriptProgram program = parser.parse("var y = 2\n" +
+                "function used(x : int) : int { return x + y }\n" +
+                "function unused() { print(1 + \"a\" }\n" +
+                "function broken() : int { return \"a\" }\n" +
+                "print(used(1))\n");
+        program.verify();
+        FunctionDefinitionStatement used = (FunctionDefinitionStatement) program.getStatements().get(1);
+        FunctionDefinitionStatement unused = (FunctionDefinitionStatement) program.getStatements().get(2);
+        assertFalse(used.isBodyParsed());
+
+        program.execute();
+        assertEquals("3\n", program.getOutput());
+        assertTrue(used.isBodyParsed());
+        assertFalse(unused.isBodyParsed());
+
+        FunctionDefinitionStatement broken = (FunctionDefinitionStatement) program.getStatements().get(3);
+        ParseErrorException exception = assertThrows(ParseErrorException.class, broken::getBody);
+        assertEquals(ErrorType.INCOMPATIBLE_TYPES, exception.getErrors().get(0).getErrorType());
+    }
+
+    @Test
+    public void aLazyBodyThatFailsValidationFailsOnEveryCall() {
+        CatScriptParser parser = new CatScriptParser();
+        parser.setLazyFunctionBodies(true);
+        CatScriptProgram program = parser.parse("function f() { print(nope) }\nf()\n");
+        program.verify();
+        for (int i = 0; i < 2; i++) {
+            ParseErrorException exception = assertThrows(ParseErrorException.class, program::execute);
+            assertEquals(ErrorType.UNKNOWN_NAME, exception.getErrors().get(0).getErrorType());
+        }
+        assertEquals("", program.getOutput());
+        assertFalse(((FunctionDefinitionStatement) program.getStatements().get(0)).isBodyParsed());
+    }
+
+    @Test
+    public void aLazyBodyIsParsedOnceWhenThreadsCallItFirstTogether() throws Exception {
+        CatScriptParser parser = new CatScriptParser();
+        parser.setLazyFunctionBodies(true);
+        CatScriptProgram program = parser.parse("function f(x : int) { var y = x print(y) }\n");
+        program.verify();
+        FunctionDefinitionStatement function = (FunctionDefinitionStatement) program.getStatements().get(0);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Object[]>> frames = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            frames.add(executor.submit(() -> {
+                start.await();
+                return function.newFrame();
+            }));
+        }
+        start.countDown();
+        for (Future<Object[]> frame : frames) {
+            assertEquals(2, frame.get().length);
+        }
+        executor.shutdown();
+        assertEquals(2, function.getBody().size());
+    }
+
+    @Test
+    public void lazyFunctionBodiesParseTheSameAsEagerOnes() {
+        String src = "function add(a : int, b : int) : int { return a + b }\n" +
+                "function nested() { function inner(l : list<int>) { for (e in l) { print(e) } } inner([1]) }\n" +
+                "function empty() {}\n" +
+                "function f(x : int) : int { if (x > 1) { return 1 } return 2 }\n" +
+                "print(add(1, 2))\n" +
+                "print(f(3))\n";
+        CatScriptParser parser = new CatScriptParser();
+        parser.setLazyFunctionBodies(true);
+        CatScriptProgram program = parser.parse(src);
+        for (int i = 0; i < 3; i++) {
+            program.walk(element -> {
+                if (element instanceof FunctionDefinitionStatement) {
+                    ((FunctionDefinitionStatement) element).getBody();
+                }
+            });
+        }
+        assertEquals(describe(new CatScriptParser().parse(src)), describe(program));
+
+        // verified first, so each body is validated when it is parsed
+        String executable = "function f(x : int) : int { if (x > 1) { return 1 } return 2 }\n" +
+                "print(f(3))\n" +
+                "print(f(0))\n";
+        CatScriptProgram verified = parser.parse(executable);
+        verified.verify();
+        verified.execute();
+        CatScriptProgram eager = new CatScriptParser().parse(executable);
+        eager.verify();
+        eager.execute();
+        assertEquals(eager.getOutput(), verified.getOutput());
+    }
+
+    @Test
+    public void childrenAreKeptInOrderAndErrorsOnlyWhereAdded() {
+        IfStatement ifStatement = parseStatement("if(true){ print(1) print(2) } else { print(3) }");
+        List<ParseElement> children = ifStatement.getChildren();
+        assertEquals(4, children.size());
+        assertSame(ifStatement.getExpression(), children.get(0));
+        assertEquals(ifStatement.getTrueStatements(), children.subList(1, 3));
+        assertEquals(ifStatement.getElseStatements(), children.subList(3, 4));
+        assertThrows(UnsupportedOperationException.class, () -> children.add(ifStatement));
+
+        ParseElement leaf = ifStatement.getExpression();
+        assertTrue(leaf.getChildren().isEmpty());
+        assertFalse(leaf.hasErrors());
+        assertTrue(leaf.getErrors().isEmpty());
+        leaf.addError(ErrorType.INCOMPATIBLE_TYPES);
+        assertTrue(leaf.hasErrors());
+        assertFalse(ifStatement.hasErrors());
+        ifStatement.clearValidationErrors();
+        assertFalse(leaf.hasErrors());
+    }
+
+    @Test
+    public void variablesResolveToTheirDepthAndSlot() {
+        CatScriptProgram program = new CatScriptParser().parse("var g = 1\n" +
+                "function f(a : int, b : int) {\n" +
+                "  var c = a\n" +
+                "  for (e in [b]) { var d = e g = c + d }\n" +
+                "}\n");
+        program.verify();
+        List<String> addresses = new ArrayList<>();
+        program.walk(element -> {
+            if (element instanceof IdentifierExpression) {
+                IdentifierExpression identifier = (IdentifierExpression) element;
+                addresses.add(identifier.getName() + " " + identifier.getDepth() + " " + identifier.getSlot());
+            } else if (element instanceof VariableStatement) {
+                VariableStatement variable = (VariableStatement) element;
+                addresses.add("var " + variable.getVariableName() + " " + variable.getDepth() + " " + variable.getSlot());
+            } else if (element instanceof AssignmentStatement) {
+                AssignmentStatement assignment = (AssignmentStatement) element;
+                addresses.add(assignment.getVariableName() + " = " + assignment.getDepth() + " " + assignment.getSlot());
+            } else if (element instanceof ForStatement) {
+                ForStatement forStatement = (ForStatement) element;
+                addresses.add("for " + forStatement.getVariableName() + " " + forStatement.getDepth() + " " + forStatement.getSlot());
+            }
+        });
+        // the parameters come first in the function's scope
+        assertEquals(List.of("var g 0 0", "var c 1 2", "a 1 0", "for e 2 0", "b 1 1",
+                "var d 2 1", "e 2 0", "g = 0 0", "c 1 2", "d 2 1"), addresses);
+    }
+
+    @Test
+    public void globalSlotsAreDenseAndKeptAcrossReparses() {
+        String src = "var a = 1\nvar b = 2\nprint(a + b)\n";
+        CatScriptParser parser = new CatScriptParser();
+        CatScriptProgram program = parser.parse(src);
+        program.verify();
+        assertEquals(0, ((VariableStatement) program.getStatements().get(0)).getSlot());
+        assertEquals(1, ((VariableStatement) program.getStatements().get(1)).getSlot());
+        assertEquals(2, program.getGlobalCount());
+
+        // a new global gets the next slot and the reused statements keep theirs
+        CatScriptProgram edited = parser.reparse(program, 0, 0, "var c = 3\n");
+        edited.verify();
+        assertEquals(2, ((VariableStatement) edited.getStatements().get(0)).getSlot());
+        assertEquals(0, ((VariableStatement) edited.getStatements().get(1)).getSlot());
+        assertEquals(1, ((VariableStatement) edited.getStatements().get(2)).getSlot());
+        assertEquals(3, edited.getGlobalCount());
+        edited.execute();
+        assertEquals("3\n", edited.getOutput());
+    }
+
+    @Test
+    public void eachProgramHasItsOwnAtoms() {
+        CatScriptParser parser = new CatScriptParser();
+        CatScriptProgram first = parser.parse("var x = 1\nprint(x)\n");
+        CatScriptProgram second = parser.parse("var y = 1\n");
+        assertNotSame(first.getAtoms(), second.getAtoms());
+        assertEquals(0, second.getAtoms().intern("y"));
+        // the names in a program are the strings its atoms keep
+        VariableStatement variable = (VariableStatement) first.getStatements().get(0);
+        assertSame(first.getAtoms().name(variable.getVariableAtom()), variable.getVariableName());
+        // a reparse keeps the atoms its reused statements were resolved with
+        assertSame(first.getAtoms(), parser.reparse(first, 0, 0, "var z = 2\n").getAtoms());
+    }
+
+    private String describe(ParseElement root) {
+        StringBuilder description = new StringBuilder();
+        root.walk(element -> {
+            description.append(element).append(' ')
+                    .append(describe(element.getStart())).append(' ')
+                    .append(describe(element.getEnd()));
+            for (ParseError error : element.getErrors()) {
+                description.append(' ').append(error.getErrorType()).append(describe(error.getLocation()));
+            }
+            description.append('\n');
+        });
+        return description.toString();
+    }
+
+    private String describe(Token token) {
+        return token == null ? "-" : token.getStart() + ":" + token.getEnd() + "@" + token.getLine() + "," + token.getLineOffset();
+    }
+
+    private String verificationErrors(CatScriptProgram program) {
+        try {
+            program.verify();
+            return "";
+        } catch (ParseErrorException e) {
+            StringBuilder description = new StringBuilder();
+            for (ParseError error : e.getErrors()) {
+                Token location = error.getLocation();
+                description.append(error.getErrorType()).append(describe(location))
+                        .append(location == null ? "" : location.getLineContent()).append('\n');
+            }
+            return description.toString();
+        }
+    }
+
+    @Test
+    public void blocksNestDeeplyWithoutOverflowingTheStack() throws Throwable {
+        onSmallStack(() -> {
+            assertEquals("1\n", executeProgram(nestedBlocks(5000)));
+            assertEquals("1\n", executeWithClosures(nestedBlocks(5000)));
+            assertEquals("1\n", executeWithVm(nestedBlocks(5000)));
+            // kept low for ASM's bytecode checks and the JVM's limit on the size of a method
+            assertEquals("1\n", compile(nestedBlocks(1000)));
+
+            String function = "function f(): int { " + "if (true) { ".repeat(5000) + "return 3" +
+                    " }".repeat(5000) + " return 0 } print(f())";
+            assertEquals("3\n", executeProgram(function));
+            assertEquals("3\n", executeWithClosures(function));
+            assertEquals("3\n", executeWithVm(function));
+        });
+    }
+
+    // blocks nesting depth deep, going through for loops and both branches of ifs, that print 1
+    private static String nestedBlocks(int depth) {
+        StringBuilder src = new StringBuilder();
+        for (int i = 0; i < depth / 2; i++) {
+            src.append(i % 3 == 0 ? "if (false) { print(0) } else { " : "if (true) { ");
+            src.append("for (x").append(i).append(" in [").append(i).append("]) { ");
+        }
+        return src.append("print(x0 + x1)").append(" } }".repeat(depth / 2)).toString();
+    }
+
 }
@@ -7,6 +7,14 @@ import edu.montana.csci.csci468.parser.statements.PrintStatement;
 import edu.montana.csci.csci468.parser.statements.Statement;
 import edu.montana.csci.csci468.parser.statements.VariableStatement;
 import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class CatscriptParserTypeCheckingTest extends CatscriptTestBase {
@@ -77,5 +85,87 @@ public class CatscriptParserTypeCheckingTest extends CatscriptTestBase {
         assertEquals(ErrorType.INCOMPATIBLE_TYPES, getParseError("1 > true"));
     }
 
+    @Test
+    void longAdditionChainsAreCheckedInLinearTime() {
+        // working a chain's type out again at every addition would take minutes at this length
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertEquals(CatscriptType.INT, parseExpression(chain("1", 100_000, "")).getType());
+            assertEquals(CatscriptType.STRING, parseExpression(chain("\"a\"", 100_000, "")).getType());
+            assertEquals(CatscriptType.STRING, parseExpression(chain("1", 100_000, " + \"a\"")).getType());
+        });
+    }
+
+    @Test
+    void parallelVerifyFindsTheSameErrorsInTheSameOrder() {
+        StringBuilder src = new StringBuilder("var before = 1\n");
+        for (int i = 0; i < 50; i++) {
+            src.append("function f").append(i).append("(a : int) : int {\n")
+                    .append("  var x = before + a\n")
+                    .append(i % 3 == 0 ? "  var y : string = x\n" : "")
+                    .append(i % 5 == 0 ? "  print(after)\n" : "")
+                    .append("  return x\n}\n");
+        }
+        src.append("var after = f1(2)\nvar bad : bool = 1\n");
+
+        List<String> sequential = verifyErrors(src.toString(), false);
+        List<String> parallel = verifyErrors(src.toString(), true);
+        assertEquals(17 + 10 + 1, sequential.size());
+        assertEquals(sequential, parallel);
+    }
+
+    private List<String> verifyErrors(String src, boolean parallelVerify) {
+        CatScriptProgram program = new CatScriptParser().parse(src);
+        program.setParallelVerify(parallelVerify);
+        ParseErrorException exception = assertThrows(ParseErrorException.class, program::verify);
+        List<String> errors = new ArrayList<>();
+        for (ParseError error : exception.getErrors()) {
+            errors.add(error.getErrorType() + "@" + error.getLocation().getStart());
+        }
+        return errors;
+    }
+
+    @Test
+    void listTypesAreCanonicalAcrossThreads() throws Exception {
+        CatscriptType[] components = {CatscriptType.INT, CatscriptType.STRING, CatscriptType.BOOLEAN,
+                CatscriptType.OBJECT, CatscriptType.NULL};
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<CatscriptType>>> results = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                results.add(executor.submit(() -> {
+                    List<CatscriptType> types = new ArrayList<>();
+                    for (CatscriptType component : components) {
+                        CatscriptType type = component;
+                        for (int depth = 0; depth < 4; depth++) {
+                            type = CatscriptType.getListType(type);
+                            types.add(type);
+                        }
+                    }
+                    return types;
+                }));
+            }
+            List<CatscriptType> first = results.get(0).get();
+            for (Future<List<CatscriptType>> result : results) {
+                List<CatscriptType> types = result.get();
+                for (int i = 0; i < first.size(); i++) {
+                    assertSame(first.get(i), types.get(i));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        CatscriptType nested = CatscriptType.getListType(CatscriptType.getListType(CatscriptType.INT));
+        assertSame(CatscriptType.getListType(CatscriptType.INT), ((CatscriptType.ListType) nested).getComponentType());
+        assertNotSame(CatscriptType.getListType(CatscriptType.INT), CatscriptType.getListType(CatscriptType.OBJECT));
+    }
+
+    private String chain(String first, int terms, String last) {
+        StringBuilder src = new StringBuilder(first);
+        for (int i = 0; i < terms; i++) {
+            src.append(" + 1");
+        }
+        return src.append(last).toString();
+    }
+
 
 }
@@ -0,0 +1,159 @@
+package edu.montana.csci.csci468.snapshot;
+
+import edu.montana.csci.csci468.CatscriptTestBase;
+import edu.montana.csci.csci468.bytecode.ByteCodeGenerator;
+import edu.montana.csci.csci468.parser.CatScriptParser;
+import edu.montana.csci.csci468.parser.ParseElement;
+import edu.montana.csci.csci468.parser.expressions.*;
+import edu.montana.csci.csci468.parser.statements.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProgramSnapshotTest extends CatscriptTestBase {
+
+    private static final String PROGRAM = "var names : list<string> = [\"a\", \"b\"]\n" +
+            "var count = 0\n" +
+            "var nothing : object = null\n" +
+            "function describe(name : string, flags : list<bool>, extra) : string {\n" +
+            "  if (count > 1 == true) { return name + \"!\" } else { return name }\n" +
+            "}\n" +
+            "function bump() { count = count + 1 * (2 - 1) / 1 }\n" +
+            "function done() { return }\n" +
+            "for (n in names) { bump() print(describe(n, [true, false], 1)) }\n" +
+            "if (not (count >= 2) == (count <= -1 != false)) { print(1) }\n" +
+            "print(count)\n";
+
+    @Test
+    public void programsRoundTripWithTheirTypes() {
+        CatScriptProgram program = new CatScriptParser().parse(PROGRAM);
+        program.verify();
+        CatScriptProgram loaded = ProgramSnapshot.read(ProgramSnapshot.write(program));
+
+        assertEquals(describe(program), describe(loaded));
+        program.execute();
+        loaded.execute();
+        assertEquals(program.getOutput(), loaded.getOutput());
+
+        // every kind of statement and expression the snapshot writes is covered
+        Set<Class<?>> classes = new HashSet<>();
+        loaded.walk(element -> classes.add(element.getClass()));
+        assertTrue(classes.containsAll(Arrays.asList(CatScriptProgram.class, PrintStatement.class, ForStatement.class,
+                IfStatement.class, VariableStatement.class, AssignmentStatement.class, FunctionCallStatement.class,
+                FunctionDefinitionStatement.class, ReturnStatement.class, AdditiveExpression.class,
+                ComparisonExpression.class, EqualityExpression.class, FactorExpression.class, UnaryExpression.class,
+                ParenthesizedExpression.class, ListLiteralExpression.class, FunctionCallExpression.class,
+                IdentifierExpression.class, IntegerLiteralExpression.class, StringLiteralExpression.class,
+                BooleanLiteralExpression.class, NullLiteralExpression.class)), classes.toString());
+    }
+
+    @Test
+    public void expressionProgramsRoundTrip() {
+        CatScriptProgram program = new CatScriptParser().parse("1 + 2 * -3");
+        program.verify();
+        CatScriptProgram loaded = ProgramSnapshot.read(ProgramSnapshot.write(program));
+        assertTrue(loaded.isExpression());
+        assertEquals(describe(program), describe(loaded));
+        loaded.execute();
+        assertEquals("-5\n", loaded.getOutput());
+    }
+
+    @Test
+    public void loadedProgramsCompile() {
+        String src = "function add(a : int, b : int) : int { return a + b }\n" +
+                "var x = add(1, 2)\n" +
+                "print(x)\n";
+        CatScriptProgram program = new CatScriptParser().parse(src);
+        program.verify();
+        CatScriptProgram loaded = ProgramSnapshot.read(ProgramSnapshot.write(program));
+        CatScriptProgram compiled = new ByteCodeGenerator(loaded).compileToBytecode();
+        compiled.execute();
+        assertEquals(compile(src), compiled.getOutput());
+    }
+
+    @Test
+    public void deeplyNestedExpressionsRoundTrip() {
+        StringBuilder src = new StringBuilder("print(1");
+        for (int i = 0; i < 100_000; i++) {
+            src.append(" + 1");
+        }
+        src.append(")");
+        CatScriptProgram program = new CatScriptParser().parse(src.toString());
+        program.verify();
+        CatScriptProgram loaded = ProgramSnapshot.read(ProgramSnapshot.write(program));
+        loaded.execute();
+        assertEquals("100001\n", loaded.getOutput());
+    }
+
+    @Test
+    public void badSnapshotsAreRejected() {
+        CatScriptProgram program = new CatScriptParser().parse("print(1)");
+        program.verify();
+        byte[] snapshot = ProgramSnapshot.write(program);
+
+        byte[] badMagic = snapshot.clone();
+        badMagic[0] = 0;
+        assertThrows(IllegalArgumentException.class, () -> ProgramSnapshot.read(badMagic));
+        byte[] newerVersion = snapshot.clone();
+        newerVersion[4] = ProgramSnapshot.VERSION + 1;
+        assertThrows(IllegalArgumentException.class, () -> ProgramSnapshot.read(newerVersion));
+        assertThrows(IllegalArgumentException.class,
+                () -> ProgramSnapshot.read(Arrays.copyOf(snapshot, snapshot.length - 1)));
+
+        CatScriptProgram invalid = new CatScriptParser().parse("print(x)");
+        assertThrows(IllegalArgumentException.class, () -> {
+            try {
+                invalid.verify();
+            } catch (RuntimeException e) {
+                // the errors stay on the tree
+            }
+            ProgramSnapshot.write(invalid);
+        });
+
+        CatScriptProgram unverified = new CatScriptParser().parse("function f(x : int) : int { var y = x + 1 return y }\n" +
+                "print(f(1))");
+        assertThrows(IllegalArgumentException.class, () -> ProgramSnapshot.write(unverified));
+    }
+
+    private String describe(ParseElement root) {
+        StringBuilder description = new StringBuilder();
+        root.walk(element -> {
+            description.append(element);
+            if (element instanceof Expression) {
+                description.append(' ').append(((Expression) element).getType());
+                if (element instanceof IdentifierExpression) {
+                    IdentifierExpression identifier = (IdentifierExpression) element;
+                    description.append(' ').append(identifier.getDepth()).append(' ').append(identifier.getSlot());
+                }
+            } else if (element instanceof VariableStatement) {
+                VariableStatement variableStatement = (VariableStatement) element;
+                description.append(' ').append(variableStatement.getVariableName())
+                        .append(' ').append(variableStatement.getType())
+                        .append(' ').append(variableStatement.getDepth()).append(' ').append(variableStatement.getSlot());
+            } else if (element instanceof AssignmentStatement) {
+                AssignmentStatement assignment = (AssignmentStatement) element;
+                description.append(' ').append(assignment.getDepth()).append(' ').append(assignment.getSlot());
+            } else if (element instanceof ForStatement) {
+                ForStatement forStatement = (ForStatement) element;
+                description.append(' ').append(forStatement.getDepth()).append(' ').append(forStatement.getSlot())
+                        .append(' ').append(forStatement.getFrameSize());
+            } else if (element instanceof IfStatement) {
+                IfStatement ifStatement = (IfStatement) element;
+                description.append(' ').append(ifStatement.getTrueFrameSize())
+                        .append(' ').append(ifStatement.getElseFrameSize());
+            } else if (element instanceof FunctionDefinitionStatement) {
+                FunctionDefinitionStatement function = (FunctionDefinitionStatement) element;
+                description.append(' ').append(function.getName()).append(' ').append(function.getDescriptor())
+                        .append(' ').append(function.getFrameSize());
+            } else if (element instanceof ReturnStatement) {
+                description.append(' ').append(((ReturnStatement) element).getFunctionDefinition().getName());
+            }
+            description.append('\n');
+        });
+        return description.toString();
+    }
+}
@@ -3,7 +3,11 @@ package edu.montana.csci.csci468.tokenizer;
 import edu.montana.csci.csci468.CatscriptTestBase;
 import org.junit.jupiter.api.Test;
 
+import java.io.StringReader;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
 
 import static edu.montana.csci.csci468.tokenizer.TokenType.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -70,6 +74,13 @@ public class CatScriptTokenizerTest extends CatscriptTestBase {
                 PRINT, RETURN, TRUE, VAR, EOF);
     }
 
+    @Test
+    public void keywordPrefixesAndSuffixesAreIdentifiers(){
+        assertTokensAre("f fo forr iff i inn Print var_ nul null1 retur functions",
+                IDENTIFIER, IDENTIFIER, IDENTIFIER, IDENTIFIER, IDENTIFIER, IDENTIFIER,
+                IDENTIFIER, IDENTIFIER, IDENTIFIER, IDENTIFIER, IDENTIFIER, IDENTIFIER, EOF);
+    }
+
     @Test
     public void basicSyntax(){
         assertTokensAre("( ) { } [ ] : , . - + / * != = == > >= < <=",
@@ -146,5 +157,168 @@ public class CatScriptTokenizerTest extends CatscriptTestBase {
                 VAR, IDENTIFIER, EQUAL, INTEGER, EOF);
     }
 
+    @Test
+    public void streamingTokensMatchEagerTokens() {
+        String src = "var x = \"hello\"\n  print(x + 1 >= 2)\n\tfoo([1, 2], true) \"unterminated\n / // comment";
+        List<String> expected = getTokensAsList(src).stream().map(Token::toString).collect(Collectors.toList());
+        List<String> streamed = CatScriptTokenizer.streaming(new StringReader(src)).getTokens()
+                .stream().map(Token::toString).collect(Collectors.toList());
+        assertEquals(expected, streamed);
+    }
+
+    @Test
+    public void streamingTokenListKeepsABoundedWindow() {
+        StringBuilder src = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            src.append("print(").append(i).append(")\n");
+        }
+        TokenList tokens = CatScriptTokenizer.streaming(new StringReader(src.toString())).getTokens();
+        tokens.release();
+        int count = 0;
+        while (tokens.hasMoreTokens()) {
+            tokens.consumeToken();
+            count++;
+        }
+        assertEquals(400000, count);
+        assertEquals(EOF, tokens.getCurrentToken().getType());
+        assertEquals(100001, tokens.getCurrentToken().getLine());
+        assertTrue(tokens.types.length <= 64);
+    }
+
+    @Test
+    public void tokenValuesAreOnlyCreatedWhenRequested() {
+        TokenList tokens = getTokenList("var x = \"foo\" print(x)");
+        for (int i = 0; i < tokens.size; i++) {
+            assertNull(tokens.values[i]);
+        }
+        assertTrue(tokens.match(VAR));
+        assertTrue(tokens.matchAndConsume(VAR));
+        assertTrue(tokens.match("x"));
+        assertEquals("x", tokens.values[1]);
+        assertNull(tokens.values[3]);
+        assertEquals("foo", tokens.getStringValue(3));
+    }
+
+    @Test
+    public void lineContentIsCorrect() {
+        List<Token> tokenList = getTokensAsList("a\n b c\n\n  d\n");
+        assertEquals("a", tokenList.get(0).getLineContent());
+        assertEquals(" b c", tokenList.get(1).getLineContent());
+        assertEquals(" b c", tokenList.get(2).getLineContent());
+        assertEquals("  d", tokenList.get(3).getLineContent());
+        assertEquals("", tokenList.get(4).getLineContent());
+    }
+
+    @Test
+    public void retokenizingAnEditMatchesTokenizingFromScratch() {
+        String src = "function foo(x : int) : int {\n" +
+                "\tvar y = x * 2 + \"str\\\"ing\"\r\n" +
+                "  if (y >= 10 != false) { print(\"unterminated\n" +
+                "  } else { y = y - 1 ! 3 }\n" +
+                "  return [1, 2, 3]\n" +
+                "}\n" +
+                "print(foo(42)) / / done";
+        String[] insertions = {"", "a", "1", "\"", "\n", " ", "\t", "=", "/", "var z = 1\n", "}\n{", "// comment"};
+        Random random = new Random(468);
+        for (int i = 0; i < 2000; i++) {
+            int offset = random.nextInt(src.length() + 1);
+            int removed = random.nextInt(Math.min(6, src.length() - offset) + 1);
+            String inserted = insertions[random.nextInt(insertions.length)];
+            String edited = src.substring(0, offset) + inserted + src.substring(offset + removed);
 
+            TokenList previous = getTokenList(src);
+            TokenList retokenized = CatScriptTokenizer.retokenize(previous, offset, removed, inserted);
+            CatScriptTokenizer expected = new CatScriptTokenizer(edited);
+            assertEquals(expected.getTokens().stream().map(Token::toString).collect(Collectors.toList()),
+                    retokenized.stream().map(Token::toString).collect(Collectors.toList()), edited);
+            assertEquals(Arrays.toString(Arrays.copyOf(expected.lineStarts, expected.lineCount)),
+                    Arrays.toString(retokenized.tokenizer.getLineStarts()), edited);
+            if (i % 10 == 0) {
+                src = edited;
+            }
+        }
+    }
+
+    @Test
+    public void retokenizingEditsTheTokensInPlace() {
+        String src = "function foo(x : int) : int {\n" +
+                "\tvar y = x * 2 + \"str\\\"ing\"\r\n" +
+                "  if (y >= 10 != false) { print(\"unterminated\n" +
+                "  } else { y = y - 1 ! 3 }\n" +
+                "  return [1, 2, 3]\n" +
+                "}\n" +
+                "print(foo(42)) / / done";
+        String[] insertions = {"", "a", "1", "\"", "\n", " ", "=", "/", "var z = 1\n", "}\n{", "// comment"};
+        Random random = new Random(468);
+        TokenList tokens = getTokenList(src);
+        for (int i = 0; i < 2000; i++) {
+            // edits cluster around a point that wanders, as they would in an editor
+            int offset = Math.min(src.length(), Math.max(0, src.length() / 2 + random.nextInt(41) - 20));
+            int removed = random.nextInt(Math.min(6, src.length() - offset) + 1);
+            String inserted = insertions[random.nextInt(insertions.length)];
+            if (src.length() > 400) {
+                inserted = "";
+            }
+            src = src.substring(0, offset) + inserted + src.substring(offset + removed);
+
+            assertSame(tokens, CatScriptTokenizer.retokenize(tokens, offset, removed, inserted));
+            CatScriptTokenizer expected = new CatScriptTokenizer(src);
+            assertEquals(expected.getTokens().stream().map(Token::toString).collect(Collectors.toList()),
+                    tokens.stream().map(Token::toString).collect(Collectors.toList()), src);
+            assertEquals(Arrays.toString(Arrays.copyOf(expected.lineStarts, expected.lineCount)),
+                    Arrays.toString(tokens.tokenizer.getLineStarts()), src);
+            assertEquals(expected.getTokens().stream().map(Token::getLineContent).collect(Collectors.toList()),
+                    tokens.stream().map(Token::getLineContent).collect(Collectors.toList()), src);
+        }
+        // an edit that does not add tokens leaves the buffers where they are
+        tokens = getTokenList("print(foo(42))\n");
+        int[] starts = tokens.starts;
+        CatScriptTokenizer.retokenize(tokens, 7, 1, "xy");
+        assertSame(starts, tokens.starts);
+        assertEquals("fxyo", tokens.getStringValue(2));
+    }
+
+    @Test
+    public void tokensCatchUpWithEditsWhenTheyAreRead() {
+        TokenList tokens = getTokenList("var x = 1\nprint(x)\n");
+        tokens.skipTo(10);
+        Token print = tokens.getCurrentToken();
+        CatScriptTokenizer.retokenize(tokens, 0, 0, "var y = 2\n");
+        CatScriptTokenizer.retokenize(tokens, 4, 1, "yy");
+        CatScriptTokenizer.retokenize(tokens, 0, 0, "\n");
+        assertEquals(0, print.version);
+        assertEquals(22, print.getStart());
+        assertEquals(4, print.getLine());
+        assertEquals(3, print.version);
+        assertEquals("print(x)", print.getLineContent());
+    }
+
+    @Test
+    public void retokenizingFromANewSourceFindsTheEdit() {
+        TokenList previous = getTokenList("var x = 1\nprint(x)\n");
+        TokenList retokenized = CatScriptTokenizer.retokenize(previous, "var xyz = 1\nprint(xyz)\n");
+        assertEquals(getTokensAsList("var xyz = 1\nprint(xyz)\n").stream().map(Token::toString).collect(Collectors.toList()),
+                retokenized.stream().map(Token::toString).collect(Collectors.toList()));
+    }
+
+
+    @Test
+    public void parallelTokenizingMatchesSequentialTokenizing() {
+        String[] pieces = {"var x = 1\n", "print(\"a string\")\n", "\"unterminated\n", "x / \n y\n",
+                "foo != bar\r\n", "\t{ [1, 2] }\n", "\n\n", "!\n", "a /\n\n/ comment\n", "if (x >= 10) {\n"};
+        Random random = new Random(468);
+        for (int i = 0; i < 500; i++) {
+            StringBuilder src = new StringBuilder();
+            int count = random.nextInt(40);
+            for (int j = 0; j < count; j++) {
+                src.append(pieces[random.nextInt(pieces.length)]);
+            }
+            CatScriptTokenizer expected = new CatScriptTokenizer(src);
+            CatScriptTokenizer parallel = CatScriptTokenizer.parallel(src, 1 + random.nextInt(40));
+            assertEquals(expected.getTokens().stream().map(Token::toString).collect(Collectors.toList()),
+                    parallel.getTokens().stream().map(Token::toString).collect(Collectors.toList()), src.toString());
+            assertEquals(Arrays.toString(Arrays.copyOf(expected.lineStarts, expected.lineCount)),
+                    Arrays.toString(Arrays.copyOf(parallel.lineStarts, parallel.lineCount)), src.toString());
+        }
+    }
 }
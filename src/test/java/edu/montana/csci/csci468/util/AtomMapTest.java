@@ -0,0 +1,33 @@
+package edu.montana.csci.csci468.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AtomMapTest {
+
+    @Test
+    void manySequentialAtomsStayFast() {
+        // with only some of the hash bits used, this many keys made probing quadratic
+        int count = 200000;
+        AtomMap<Integer> map = new AtomMap<>();
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (int atom = 0; atom < count; atom++) {
+                map.put(atom, atom * 2);
+            }
+            for (int atom = 0; atom < count; atom++) {
+                assertEquals(atom * 2, map.get(atom));
+            }
+        });
+        assertEquals(count, map.size());
+        assertFalse(map.containsKey(count));
+
+        AtomMap<Integer> copy = map.copy();
+        copy.put(count, 0);
+        assertEquals(0, copy.get(count));
+        assertEquals(2, copy.get(1));
+        assertFalse(map.containsKey(count));
+    }
+}
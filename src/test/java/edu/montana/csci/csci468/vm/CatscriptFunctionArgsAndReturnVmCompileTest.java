@@ -0,0 +1,10 @@
+package edu.montana.csci.csci468.vm;
+
+// the compile tests, run on the VM instead of as JVM bytecode
+public class CatscriptFunctionArgsAndReturnVmCompileTest extends edu.montana.csci.csci468.bytecode.CatscriptFunctionArgsAndReturnCompileTest {
+
+    @Override
+    protected String compile(String src) {
+        return executeWithVm(src);
+    }
+}
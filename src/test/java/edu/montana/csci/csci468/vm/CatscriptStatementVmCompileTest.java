@@ -0,0 +1,10 @@
+package edu.montana.csci.csci468.vm;
+
+// the compile tests, run on the VM instead of as JVM bytecode
+public class CatscriptStatementVmCompileTest extends edu.montana.csci.csci468.bytecode.CatscriptStatementExecutionTest {
+
+    @Override
+    protected String compile(String src) {
+        return executeWithVm(src);
+    }
+}
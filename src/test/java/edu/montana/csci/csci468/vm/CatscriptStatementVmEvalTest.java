@@ -0,0 +1,15 @@
+package edu.montana.csci.csci468.vm;
+
+// the eval tests, run on the VM instead of the tree
+public class CatscriptStatementVmEvalTest extends edu.montana.csci.csci468.eval.CatscriptStatementExecutionTest {
+
+    @Override
+    protected Object evaluateExpression(String src) {
+        return evaluateWithVm(src);
+    }
+
+    @Override
+    protected Object executeProgram(String src) {
+        return executeWithVm(src);
+    }
+}